@@ -7,7 +7,10 @@ import java.util.SortedSet;
 import fi.solita.utils.functional.Function2;
 import fi.solita.utils.functional.Option;
 import fi.solita.utils.functional.Tuple3;
+import fi.solita.utils.query.db.AdaptiveInClauseStrategy;
 import fi.solita.utils.query.db.TableInClauseOptimization;
+import fi.solita.utils.query.metrics.QueryMetricsListener;
+import fi.solita.utils.query.metrics.SlowQueryLog;
 
 public interface Configuration {
     public String getAliasPrefix();
@@ -16,18 +19,54 @@ public interface Configuration {
 
     public int getMinValuesForMemberOfRestriction();
     
+    /**
+     * @return Minimum length of a run of consecutive integral values to be restricted with a single <i>between</i> instead of an in-list.
+     */
+    public int getMinValuesForRangeRestriction();
+    
     public SortedSet<Integer> getInClauseValuesAmounts();
     
+    /**
+     * @return Whether the database accepts row value constructors in in-lists, <code>(a, b) IN ((?, ?), ...)</code>.
+     *         If so, multi column ids are bucketed by tuple count like single column ids. Otherwise they are restricted
+     *         with or:ed equalities, and only half of the in-list sizes are used. There is no two-column table path for them,
+     *         since the table types and the temporary table hold a single value column.
+     */
+    public boolean supportsRowValueConstructorSyntaxInInList();
+    
     public Option<String> wrapComparedNumbersWithFunction();
 
     public boolean makeProjectionQueriesDistinct();
     
+    /**
+     * @return Whether the additional queries of unpaged projections are restricted with a subquery of the original query
+     *         instead of the ids of its result. See {@link ProjectWithSubqueryInClause} to choose this per entity.
+     */
+    public boolean useSubqueryForAdditionalQueries();
+    
     public Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection,?,?>>> getRegisteredTableTypes();
     
     public Option<TableInClauseOptimization> getTableInClauseProvider();
+    
+    /**
+     * @return Chooser overriding the min/max values for member-of by observed execution times, or None to use the static limits.
+     *         Must return the same instance on every call.
+     */
+    public Option<AdaptiveInClauseStrategy> getAdaptiveInClauseStrategy();
 
     /**
      * @return Value used to pad in-lists to reduce hard-parsing. Return None to pad with the last real value in the list.
      */
     public Option<Object> getInListPadValue(Class<?> valueType);
+
+    /**
+     * @return Listener receiving the timings of the executed queries and projections, or None to not measure.
+     *         See {@link fi.solita.utils.query.metrics.QueryMetricsAggregator} for a listener aggregating them in memory.
+     */
+    public Option<QueryMetricsListener> getQueryMetricsListener();
+    
+    /**
+     * @return Log capturing the sql, bind values and call site of the queries slower than its threshold, or None to not capture.
+     */
+    public Option<SlowQueryLog> getSlowQueryLog();
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package fi.solita.utils.query;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -24,6 +25,9 @@ import fi.solita.utils.query.execution.QLQueries;
 import fi.solita.utils.query.generation.NativeQuery;
 import fi.solita.utils.query.generation.QLQuery;
 import fi.solita.utils.query.meta.MetaJpaConstructor;
+import fi.solita.utils.query.metrics.QueryBudget;
+import fi.solita.utils.query.metrics.QueryTrace;
+import fi.solita.utils.query.projection.ProjectionPlan;
 
 public class Dao {
 
@@ -45,6 +49,40 @@ public class Dao {
         this.qlQueries = qlQueries;
     }
 
+    /**
+     * Starts recording the tree of queries executed in the current thread, until the returned trace is closed.
+     */
+    public QueryTrace trace(String name) {
+        return QueryTrace.start(name);
+    }
+
+    /**
+     * Starts counting the statements executed in the current thread. Closing the returned budget fails
+     * if more than <i>maxStatements</i> were executed.
+     */
+    public QueryBudget budget(String name, int maxStatements) {
+        return QueryBudget.start(name, maxStatements, QueryBudget.Mode.FAIL);
+    }
+
+    public QueryBudget budget(String name, int maxStatements, QueryBudget.Mode mode) {
+        return QueryBudget.start(name, maxStatements, mode);
+    }
+
+    /**
+     * Describe what {@link #getMany(CriteriaQuery, MetaJpaConstructor, Page)} would do, without executing any queries:
+     * the selected columns, joins, how each parameter is resolved and the expected round trips.
+     */
+    public <E> ProjectionPlan explain(CriteriaQuery<E> query, MetaJpaConstructor<? super E,?,?> constructor, Page page) {
+        return explain(query, constructor, page, false);
+    }
+
+    /**
+     * @param includeDatabasePlan whether to include the plan of the database for the root query, which executes an <i>EXPLAIN</i>.
+     */
+    public <E> ProjectionPlan explain(CriteriaQuery<E> query, MetaJpaConstructor<? super E,?,?> constructor, Page page, boolean includeDatabasePlan) {
+        return jpaProjectionQueries.explain(query, constructor, page, includeDatabasePlan);
+    }
+
     public <E extends IEntity<?> & Identifiable<? extends Id<?>>> Id<E> persist(E entity) {
         return jpaBasicQueries.persist(entity);
     }
@@ -270,6 +308,23 @@ public class Dao {
         return jpaProjectionQueries.getMany(query, projection, page, lock);
     }
 
+    /**
+     * Get all rows of <i>query</i>, projecting the results. The additional queries of the projection are restricted
+     * with a subquery of <i>query</i> instead of its resulting ids, as with {@link Configuration#useSubqueryForAdditionalQueries()}.
+     */
+    public <E,R> List<R> getManyUsingSubquery(CriteriaQuery<E> query, MetaJpaConstructor<? super E,? extends R, ?> constructor) {
+        List<Order<? super E,?>> noOrdering = Collections.emptyList();
+        return getManyUsingSubquery(query, constructor, Page.NoPaging, noOrdering);
+    }
+
+    /**
+     * Like {@link #getManyUsingSubquery(CriteriaQuery, MetaJpaConstructor)} considering <i>page</i>. A paged query still restricts
+     * the additional queries with its resulting ids, since a page cannot be expressed as a subquery.
+     */
+    public <E,R> List<R> getManyUsingSubquery(CriteriaQuery<E> query, MetaJpaConstructor<? super E,? extends R, ?> constructor, Page page, Iterable<? extends Order<? super E,?>> ordering) {
+        return jpaProjectionQueries.getManyUsingSubquery(query, constructor, page, ordering, LockModeType.NONE);
+    }
+
     /**
      * Get all rows of <i>query</i>, projecting the results
      */
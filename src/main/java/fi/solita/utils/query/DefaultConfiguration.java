@@ -12,7 +12,10 @@ import java.util.SortedSet;
 import fi.solita.utils.functional.Function2;
 import fi.solita.utils.functional.Option;
 import fi.solita.utils.functional.Tuple3;
+import fi.solita.utils.query.db.AdaptiveInClauseStrategy;
 import fi.solita.utils.query.db.TableInClauseOptimization;
+import fi.solita.utils.query.metrics.QueryMetricsListener;
+import fi.solita.utils.query.metrics.SlowQueryLog;
 
 public class DefaultConfiguration implements Configuration {
     public String getAliasPrefix() {
@@ -27,12 +30,22 @@ public class DefaultConfiguration implements Configuration {
         return 6;
     }
     
+    public int getMinValuesForRangeRestriction() {
+        return 100;
+    }
+    
     @Override
     public SortedSet<Integer> getInClauseValuesAmounts() {
         // ora has a limit of 1000. Don't know of other db verndors.
         return newSortedSet(Some(1000));
     }
     
+    @Override
+    public boolean supportsRowValueConstructorSyntaxInInList() {
+        // ora does, but not all vendors.
+        return false;
+    }
+    
     public Option<String> wrapComparedNumbersWithFunction() {
         return None();
     }
@@ -40,6 +53,11 @@ public class DefaultConfiguration implements Configuration {
     public boolean makeProjectionQueriesDistinct() {
         return false;
     }
+    
+    @Override
+    public boolean useSubqueryForAdditionalQueries() {
+        return false;
+    }
 
     public Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> getRegisteredTableTypes() {
         return emptyMap();
@@ -49,8 +67,23 @@ public class DefaultConfiguration implements Configuration {
         return None();
     }
     
+    @Override
+    public Option<AdaptiveInClauseStrategy> getAdaptiveInClauseStrategy() {
+        return None();
+    }
+    
     @Override
     public Option<Object> getInListPadValue(Class<?> valueType) {
         return None();
     }
+    
+    @Override
+    public Option<QueryMetricsListener> getQueryMetricsListener() {
+        return None();
+    }
+    
+    @Override
+    public Option<SlowQueryLog> getSlowQueryLog() {
+        return None();
+    }
 }
\ No newline at end of file
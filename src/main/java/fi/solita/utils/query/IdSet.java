@@ -0,0 +1,174 @@
+package fi.solita.utils.query;
+
+import static fi.solita.utils.functional.Collections.newList;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import fi.solita.utils.functional.Apply;
+
+/**
+ * Compact set of {@link LongValuedId}s, backed by a sorted array of distinct longs.
+ * Id objects are created only while iterating, so large sets can be passed to restrictions
+ * without holding a boxed object per id.
+ *
+ * Immutable.
+ */
+public final class IdSet<E> extends AbstractSet<Id<E>> implements Serializable {
+
+    private final long[] values;
+    private final int from;
+    private final int to;
+    private final Apply<Long, ? extends Id<E>> toId;
+
+    /**
+     * @param toId creates an id of the long value.
+     */
+    public static <E> IdSet<E> of(Apply<Long, ? extends Id<E>> toId, long... values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; ++i) {
+            if (i == 0 || sorted[i] != sorted[size-1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new IdSet<E>(size == sorted.length ? sorted : Arrays.copyOf(sorted, size), 0, size, toId);
+    }
+
+    /**
+     * @param ids must all be {@link LongValuedId}s.
+     */
+    public static <E> IdSet<E> copyOf(Apply<Long, ? extends Id<E>> toId, Iterable<? extends Id<E>> ids) {
+        if (ids instanceof IdSet) {
+            IdSet<?> other = (IdSet<?>) ids;
+            return new IdSet<E>(other.values, other.from, other.to, toId);
+        }
+        long[] values = new long[16];
+        int size = 0;
+        for (Id<E> id: ids) {
+            if (!(id instanceof LongValuedId)) {
+                throw new IllegalArgumentException("Not a LongValuedId: " + id);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = ((LongValuedId<E>) id).longValue();
+        }
+        return of(toId, Arrays.copyOf(values, size));
+    }
+
+    private IdSet(long[] values, int from, int to, Apply<Long, ? extends Id<E>> toId) {
+        this.values = values;
+        this.from = from;
+        this.to = to;
+        this.toId = toId;
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return values[from + index];
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    /**
+     * @return the long values, boxed one at a time while iterating.
+     */
+    public Iterable<Long> longValues() {
+        return new Iterable<Long>() {
+            @Override
+            public Iterator<Long> iterator() {
+                return new Iterator<Long>() {
+                    private int next = from;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < to;
+                    }
+
+                    @Override
+                    public Long next() {
+                        if (next >= to) {
+                            throw new NoSuchElementException();
+                        }
+                        return values[next++];
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return view of the ids between the indexes.
+     */
+    public IdSet<E> subSet(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException(fromIndex + "-" + toIndex);
+        }
+        return new IdSet<E>(values, from + fromIndex, from + toIndex, toId);
+    }
+
+    /**
+     * @return consecutive views of at most <i>groupSize</i> ids.
+     */
+    public List<IdSet<E>> grouped(int groupSize) {
+        List<IdSet<E>> ret = newList();
+        for (int i = 0; i < size(); i += groupSize) {
+            ret.add(subSet(i, Math.min(size(), i + groupSize)));
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof LongValuedId)) {
+            return false;
+        }
+        int index = Arrays.binarySearch(values, from, to, ((LongValuedId<?>) o).longValue());
+        return index >= 0 && toId.apply(values[index]).equals(o);
+    }
+
+    @Override
+    public Iterator<Id<E>> iterator() {
+        return new Iterator<Id<E>>() {
+            private int next = from;
+
+            @Override
+            public boolean hasNext() {
+                return next < to;
+            }
+
+            @Override
+            public Id<E> next() {
+                if (next >= to) {
+                    throw new NoSuchElementException();
+                }
+                return toId.apply(values[next++]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -20,6 +20,7 @@ import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Selection;
+import javax.persistence.criteria.Subquery;
 import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.CollectionAttribute;
 import javax.persistence.metamodel.ListAttribute;
@@ -54,7 +55,7 @@ public class JpaCriteriaCopy {
         for (Root<?> root : from.getRoots()) {
             Root<?> r = to.from(root.getJavaType());
             copyAlias(root, r, ++counter);
-            counter = copyJoins(root, r, ++counter);
+            counter = copyJoins(root, r, ++counter, true);
         }
         to.distinct(from.isDistinct());
         if (from.getGroupList() != null) {
@@ -83,6 +84,29 @@ public class JpaCriteriaCopy {
         }
     }
 
+    /**
+     * Copies the roots, joins and restrictions of an executed query to a subquery. Aliases are copied,
+     * so that the expressions of <i>from</i> can be selected in the subquery.
+     */
+    public void copyCriteriaWithoutSelect(CriteriaQuery<?> from, Subquery<?> to) {
+        int counter = findLatestCustomAlias(from).getOrElse(0);
+        for (Root<?> root : from.getRoots()) {
+            Root<?> r = to.from(root.getJavaType());
+            copyAlias(root, r, ++counter);
+            // fetches are not allowed in subqueries
+            counter = copyJoins(root, r, ++counter, false);
+        }
+        if (from.getGroupList() != null) {
+            to.groupBy(from.getGroupList());
+        }
+        if (from.getGroupRestriction() != null) {
+            to.having(from.getGroupRestriction());
+        }
+        if (from.getRestriction() != null) {
+            to.where(from.getRestriction());
+        }
+    }
+
     public void createMissingAliases(CriteriaQuery<?> query) {
         int counter = findLatestCustomAlias(query).getOrElse(0);
         for (Root<?> root : query.getRoots()) {
@@ -91,6 +115,18 @@ public class JpaCriteriaCopy {
         }
     }
     
+    /**
+     * Creates the missing aliases of <i>query</i> after the aliases of <i>nested</i>, so that they don't clash
+     * when the criteria of <i>nested</i> are copied to a subquery of <i>query</i>.
+     */
+    public void createMissingAliasesAfter(CriteriaQuery<?> nested, CriteriaQuery<?> query) {
+        int counter = Math.max(findLatestCustomAlias(nested).getOrElse(0), findLatestCustomAlias(query).getOrElse(0));
+        for (Root<?> root : query.getRoots()) {
+            getOrCreateAlias(root, ++counter);
+            counter = createMissingAliases(root, ++counter);
+        }
+    }
+    
     private Option<Integer> findLatestCustomAlias(CriteriaQuery<?> query) {
         Iterable<String> allAliases = flatMap(JpaCriteriaCopy_.getAliases, query.getRoots());
         Iterable<Integer> allCustomAliases = map(JpaCriteriaCopy_.toInt.ap(this), filter(JpaCriteriaCopy_.isCustomAlias.ap(this), allAliases));
@@ -135,7 +171,7 @@ public class JpaCriteriaCopy {
     /**
      * @return last possibly used alias
      */
-    private int copyJoins(From<?, ?> from, From<?, ?> to, int counter) {
+    private int copyJoins(From<?, ?> from, From<?, ?> to, int counter, boolean withFetches) {
         for (Join<?, ?> join : from.getJoins()) {
             Attribute<?, ?> attr = join.getAttribute();
             // Hibern fails with String-bases api; Join.join(String, JoinType)
@@ -147,9 +183,11 @@ public class JpaCriteriaCopy {
                 attr instanceof MapAttribute ? to.join((MapAttribute) join.getAttribute(), join.getJoinType()) :
                 to.join((CollectionAttribute) join.getAttribute(), join.getJoinType());
             copyAlias(join, j, ++counter);
-            counter = copyJoins(join, j, ++counter);
+            counter = copyJoins(join, j, ++counter, withFetches);
+        }
+        if (withFetches) {
+            copyFetches(from, to);
         }
-        copyFetches(from, to);
         return counter;
     }
 
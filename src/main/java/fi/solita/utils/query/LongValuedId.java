@@ -0,0 +1,8 @@
+package fi.solita.utils.query;
+
+/**
+ * Identifier backed by a single long value. Such identifiers can be collected to an {@link IdSet}.
+ */
+public interface LongValuedId<T> extends Id<T> {
+    long longValue();
+}
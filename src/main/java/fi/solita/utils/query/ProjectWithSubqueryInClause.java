@@ -0,0 +1,11 @@
+package fi.solita.utils.query;
+
+/**
+ * Restrict the additional queries of projections with this view with a subquery of the original query
+ * ( IN (SELECT id FROM ...) ) instead of the ids of the original result ( IN (:1, :2, :3, ...) ).
+ * Useful when the original query is cheap to re-run but returns lots of rows.
+ * Paged queries still use the ids, since a page cannot be expressed in a subquery.
+ */
+public interface ProjectWithSubqueryInClause {
+
+}
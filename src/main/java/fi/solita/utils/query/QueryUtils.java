@@ -2,8 +2,8 @@ package fi.solita.utils.query;
 
 import static fi.solita.utils.functional.Collections.newArray;
 import static fi.solita.utils.functional.Collections.newList;
-import static fi.solita.utils.functional.Collections.newListOfSize;
 import static fi.solita.utils.functional.Collections.newSet;
+import static fi.solita.utils.functional.Collections.newSortedSet;
 import static fi.solita.utils.functional.Functional.concat;
 import static fi.solita.utils.functional.Functional.cons;
 import static fi.solita.utils.functional.Functional.filter;
@@ -11,11 +11,14 @@ import static fi.solita.utils.functional.Functional.flatMap;
 import static fi.solita.utils.functional.Functional.forall;
 import static fi.solita.utils.functional.Functional.grouped;
 import static fi.solita.utils.functional.Functional.head;
+import static fi.solita.utils.functional.Functional.headOption;
 import static fi.solita.utils.functional.Functional.isEmpty;
 import static fi.solita.utils.functional.Functional.last;
 import static fi.solita.utils.functional.Functional.map;
 import static fi.solita.utils.functional.Functional.repeat;
+import static fi.solita.utils.functional.Option.Some;
 import static fi.solita.utils.functional.Predicates.greaterThanOrEqualTo;
+import static fi.solita.utils.functional.Predicates.lessThanOrEqualTo;
 import static fi.solita.utils.query.attributes.AttributeProxy.unwrap;
 
 import java.lang.reflect.AnnotatedElement;
@@ -23,11 +26,13 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.sql.Connection;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
 
 import javax.persistence.Basic;
 import javax.persistence.Column;
@@ -68,10 +73,14 @@ import fi.solita.utils.query.attributes.AdditionalQueryPerformingAttribute;
 import fi.solita.utils.query.attributes.JoiningAttribute;
 import fi.solita.utils.query.attributes.OptionalAttribute;
 import fi.solita.utils.query.attributes.PseudoAttribute;
+import fi.solita.utils.query.db.AdaptiveInClauseStrategy;
+import fi.solita.utils.query.db.InClauseStrategy;
 import fi.solita.utils.query.db.TableInClauseOptimization;
+import fi.solita.utils.query.db.TableValueBinder;
 import fi.solita.utils.query.entities.Table;
 import fi.solita.utils.query.entities.Table_;
 import fi.solita.utils.query.meta.MetaJpaConstructor;
+import fi.solita.utils.query.metrics.QueryMetrics;
 import fi.solita.utils.query.projection.Constructors.TransparentProjection;
 
 public class QueryUtils {
@@ -102,11 +111,20 @@ public class QueryUtils {
             return ProjectWithRegularInClause.class.isAssignableFrom(candidate);
         }
     };
+    
+    public static final fi.solita.utils.functional.Predicate<Class<?>> ImplementsProjectWithSubqueryInClause = new fi.solita.utils.functional.Predicate<Class<?>>() {
+        @Override
+        public boolean accept(Class<?> candidate) {
+            return ProjectWithSubqueryInClause.class.isAssignableFrom(candidate);
+        }
+    };
 
     private final Configuration config;
+    private final QueryMetrics metrics;
     
     public QueryUtils(Configuration config) {
         this.config = config;
+        this.metrics = new QueryMetrics(config);
     }
 
     @SuppressWarnings("unchecked")
@@ -218,20 +236,133 @@ public class QueryUtils {
     }
     
     public final boolean wouldUseInClauseOptimizations(Set<?> vals) {
-        return config.getTableInClauseProvider().isDefined() && (useTableForInClause(vals) || useMemberOfForInClause(vals));
+        Option<TableInClauseOptimization> provider = config.getTableInClauseProvider();
+        return provider.isDefined() && (useTableForInClause(vals) || supportsMemberOf(provider.get()) && useMemberOfForInClause(vals));
+    }
+    
+    /**
+     * Strategy of an in-restriction of <i>size</i> values by the static limits, without the adaptive chooser.
+     */
+    public final InClauseStrategy staticInClauseStrategy(int size, boolean enableOptimizations) {
+        Option<TableInClauseOptimization> provider = config.getTableInClauseProvider();
+        if (!enableOptimizations || !provider.isDefined()) {
+            return InClauseStrategy.IN_LIST;
+        } else if (size > config.getMaxValuesForMemberOfRestriction()) {
+            return InClauseStrategy.TABLE;
+        } else if (supportsMemberOf(provider.get()) && size > config.getMinValuesForMemberOfRestriction()) {
+            return InClauseStrategy.MEMBER_OF;
+        }
+        return InClauseStrategy.IN_LIST;
+    }
+    
+    /**
+     * @return number of in-lists of the maximum size needed for <i>size</i> single column values.
+     */
+    public final int inClauseChunks(int size) {
+        SortedSet<Integer> amounts = config.getInClauseValuesAmounts();
+        return amounts.isEmpty() || size == 0 ? 1 : (size + amounts.last() - 1) / amounts.last();
+    }
+    
+    /**
+     * In-list sizes to use for <i>vals</i>. Without row value constructors multi column ids get expanded
+     * to or:ed equalities, so leave out amounts more than half of the max value.
+     */
+    public final SortedSet<Integer> inClauseValuesAmounts(Iterable<?> vals) {
+        SortedSet<Integer> amounts = config.getInClauseValuesAmounts();
+        if (!amounts.isEmpty() && !config.supportsRowValueConstructorSyntaxInInList() && headOption(vals).getOrElse(null) instanceof MultiColumnId) {
+            SortedSet<Integer> halved = newSortedSet(filter(lessThanOrEqualTo(amounts.last() / 2), amounts));
+            amounts = halved.isEmpty() ? newSortedSet(Some(Math.max(1, amounts.last() / 2))) : halved;
+        }
+        return amounts;
+    }
+    
+    /**
+     * Providers binding the values themselves do not produce collection types usable with member-of.
+     */
+    static boolean supportsMemberOf(TableInClauseOptimization provider) {
+        return !(provider instanceof TableValueBinder);
+    }
+    
+    /**
+     * Strategy by the static limits, possibly overridden by the configured adaptive chooser.
+     */
+    final InClauseStrategy chooseInClauseStrategy(Expression<?> path, Set<?> vals, TableInClauseOptimization provider) {
+        InClauseStrategy prior = useTableForInClause(vals) ? InClauseStrategy.TABLE
+                               : supportsMemberOf(provider) && useMemberOfForInClause(vals) ? InClauseStrategy.MEMBER_OF
+                               : InClauseStrategy.IN_LIST;
+        Option<AdaptiveInClauseStrategy> adaptive = config.getAdaptiveInClauseStrategy();
+        if (!adaptive.isDefined()) {
+            return prior;
+        }
+        Set<InClauseStrategy> available = supportsMemberOf(provider) ? EnumSet.allOf(InClauseStrategy.class) : EnumSet.of(InClauseStrategy.IN_LIST, InClauseStrategy.TABLE);
+        return adaptive.get().choose(targetEntity(path), vals.size(), prior, available);
+    }
+    
+    static Class<?> targetEntity(Expression<?> path) {
+        if (path instanceof Path && ((Path<?>)path).getParentPath() != null) {
+            return ((Path<?>)path).getParentPath().getJavaType();
+        }
+        return path.getJavaType();
+    }
+
+    /**
+     * Sorts the values if they are mutually comparable, so that in-list chunks target contiguous index ranges.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static <T> List<T> sortedIfComparable(Iterable<T> values) {
+        List<T> ret = newList(values);
+        for (T v: ret) {
+            if (!(v instanceof Comparable)) {
+                return ret;
+            }
+        }
+        try {
+            Collections.sort((List<Comparable>)ret);
+        } catch (ClassCastException e) {
+            // not mutually comparable, keep as is.
+        }
+        return ret;
+    }
+    
+    static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+    
+    /**
+     * Collapses runs of at least <i>minRun</i> consecutive values of the sorted integral <i>values</i> to <i>between</i> predicates.
+     * 
+     * @return the range predicates, and the remaining values to restrict with in-lists.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static List<Predicate> collapseRanges(Expression<?> path, List<?> sortedValues, int minRun, List<Object> remaining, CriteriaBuilder cb) {
+        List<Predicate> ret = newList();
+        int start = 0;
+        for (int i = 1; i <= sortedValues.size(); ++i) {
+            if (i == sortedValues.size() || ((Number)sortedValues.get(i)).longValue() != ((Number)sortedValues.get(i-1)).longValue() + 1) {
+                if (i - start >= minRun) {
+                    ret.add(cb.between((Expression)path, (Comparable)sortedValues.get(start), (Comparable)sortedValues.get(i-1)));
+                } else {
+                    remaining.addAll(sortedValues.subList(start, i));
+                }
+                start = i;
+            }
+        }
+        return ret;
     }
 
     @SuppressWarnings("unchecked")
     public final Predicate inExpr(Expression<?> path, Set<?> values, CriteriaBuilder cb, boolean enableOptimizations) {
-        Set<?> vals = newSet(values);
+        // IdSets are already distinct, don't copy them
+        Set<?> vals = values instanceof IdSet ? values : newSet(values);
         if (vals.size() == 1) {
             return cb.equal(path, head(values));
         } else if (vals.isEmpty()) {
             return cb.or();
         }
         
-        List<? extends List<?>> groups;
+        List<? extends Collection<?>> groups;
         List<Predicate> preds = null;
+        InClauseStrategy strategy = InClauseStrategy.IN_LIST;
         
         if (enableOptimizations) {
             for (TableInClauseOptimization provider: config.getTableInClauseProvider()) {
@@ -240,10 +371,11 @@ public class QueryUtils {
                     throw new IllegalArgumentException("No tabletype registered (see fi.solita.utils.query.DefaultConfiguration.getRegisteredTableTypes()) for type " + head(vals).getClass());
                 }
                 // only use table-expression for large sets since ora performs better with regular in-clause.
-                if (useTableForInClause(vals)) {
+                strategy = chooseInClauseStrategy(path, vals, provider);
+                if (strategy == InClauseStrategy.TABLE) {
                     // use 'table' for huge sets since member-of starts to perform badly
                     preds = newList(path.in(cb.function("table", Collection.class, cb.literal(Table.of(vals)))));
-                } else if (useMemberOfForInClause(vals)) {
+                } else if (strategy == InClauseStrategy.MEMBER_OF) {
                     // use member-of
                     // return type doesn't seem to make a difference, so just set to boolean...
                     preds = newList(cb.isMember((Expression<Object>)path, (Expression<Collection<Object>>)(Object)cb.function(MEMBER_OF_CAST + targetType.get()._1, Collection.class, cb.literal(Table.of(vals)))));
@@ -252,18 +384,42 @@ public class QueryUtils {
         }
         
         if (preds == null) {
-            // Use regular in-clause.
-            if (config.getInClauseValuesAmounts().isEmpty()) {
-                groups = Arrays.asList(newList(vals));
+            // Use regular in-clause, sorted so that each group targets a contiguous range.
+            Collection<?> inValues;
+            preds = newList();
+            
+            if (vals instanceof IdSet) {
+                // already sorted
+                inValues = vals;
+            } else {
+                List<?> sorted = sortedIfComparable(vals);
+                inValues = sorted;
+                
+                int minRun = config.getMinValuesForRangeRestriction();
+                if (sorted.size() >= minRun && forall(QueryUtils_.isIntegral, sorted)) {
+                    // dense runs of (surrogate) numbers are cheaper to send as between-restrictions
+                    List<Object> remaining = newList();
+                    preds.addAll(collapseRanges(path, sorted, minRun, remaining, cb));
+                    inValues = remaining;
+                }
+            }
+            
+            SortedSet<Integer> amounts = inClauseValuesAmounts(vals);
+            if (inValues.isEmpty()) {
+                groups = Collections.<Collection<?>>emptyList();
+            } else if (amounts.isEmpty()) {
+                groups = Collections.<Collection<?>>singletonList(inValues);
+            } else if (inValues instanceof IdSet) {
+                // views of the backing array instead of copies
+                groups = ((IdSet<?>)inValues).grouped(amounts.last());
             } else {
-                groups = newList(grouped(config.getInClauseValuesAmounts().last(), vals));
+                groups = newList(grouped(amounts.last(), inValues));
             }
-            preds = newListOfSize(groups.size());
             
-            for (List<?> g: groups) {
-                if (!config.getInClauseValuesAmounts().isEmpty() && g.size() < config.getInClauseValuesAmounts().last()) {
+            for (Collection<?> g: groups) {
+                if (!amounts.isEmpty() && g.size() < amounts.last()) {
                     // pad in-list to the next specified size, to avoid excessive hard parsing
-                    int targetSize = head(filter(greaterThanOrEqualTo(g.size()), config.getInClauseValuesAmounts()));
+                    int targetSize = head(filter(greaterThanOrEqualTo(g.size()), amounts));
                     Object valueToRepeat = config.getInListPadValue(last(g).getClass()).getOrElse(last(g));
                     preds.add(path.in(newList(concat(g, repeat(valueToRepeat, targetSize-g.size())))));
                 } else {
@@ -271,6 +427,7 @@ public class QueryUtils {
                 }
             }
         }
+        metrics.inClause(vals.size(), strategy);
         
         if (preds.size() == 1) {
             return head(preds);
@@ -0,0 +1,44 @@
+package fi.solita.utils.query.attributes;
+
+import javax.persistence.metamodel.SingularAttribute;
+
+import fi.solita.utils.functional.Option;
+
+/**
+ * 
+ * Do not use this class directly.
+ * 
+ * An aggregate function over the rows of a grouped query.
+ *
+ */
+public interface AggregateAttribute extends PseudoAttribute {
+    
+    /**
+     * Do not use these directly. Use class fi.solita.utils.query.projection.Aggregate instead.
+     */
+    public static class Constructors {
+        public static <E> SingularAttribute<E,Long> count() {
+            return new AggregateFunctionAttribute<E,Long,Object>(AggregateFunctionAttribute.Function.COUNT, null, Long.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        public static <E,N extends Number> SingularAttribute<E,Option<N>> sum(SingularAttribute<? super E,N> attribute) {
+            return new AggregateFunctionAttribute<E,Option<N>,N>(AggregateFunctionAttribute.Function.SUM, attribute, (Class<Option<N>>)(Object)Option.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        public static <E,N extends Number> SingularAttribute<E,Option<Double>> avg(SingularAttribute<? super E,N> attribute) {
+            return new AggregateFunctionAttribute<E,Option<Double>,N>(AggregateFunctionAttribute.Function.AVG, attribute, (Class<Option<Double>>)(Object)Option.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        public static <E,N extends Number> SingularAttribute<E,Option<N>> min(SingularAttribute<? super E,N> attribute) {
+            return new AggregateFunctionAttribute<E,Option<N>,N>(AggregateFunctionAttribute.Function.MIN, attribute, (Class<Option<N>>)(Object)Option.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        public static <E,N extends Number> SingularAttribute<E,Option<N>> max(SingularAttribute<? super E,N> attribute) {
+            return new AggregateFunctionAttribute<E,Option<N>,N>(AggregateFunctionAttribute.Function.MAX, attribute, (Class<Option<N>>)(Object)Option.class);
+        }
+    }
+}
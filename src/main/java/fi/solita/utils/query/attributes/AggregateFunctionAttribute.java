@@ -0,0 +1,71 @@
+package fi.solita.utils.query.attributes;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.metamodel.SingularAttribute;
+
+import fi.solita.utils.functional.Option;
+
+class AggregateFunctionAttribute<E,R,N> extends SingularAttributeProxy<E,R> implements AggregateAttribute {
+    
+    enum Function {
+        COUNT, SUM, AVG, MIN, MAX
+    }
+    
+    private final Function function;
+    private final SingularAttribute<? super E,N> attribute;
+    private final Class<R> javaType;
+
+    AggregateFunctionAttribute(Function function, SingularAttribute<? super E,N> attribute, Class<R> javaType) {
+        super(null);
+        this.function = function;
+        this.attribute = attribute;
+        this.javaType = javaType;
+    }
+    
+    @Override
+    public Class<R> getJavaType() {
+        return javaType;
+    }
+    
+    @Override
+    public Class<R> getBindableJavaType() {
+        return javaType;
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public Expression<?> getSelectionForQuery(EntityManager em, Path<?> currentSelection) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        if (function == Function.COUNT) {
+            return cb.count(currentSelection);
+        }
+        Expression<? extends Number> e = ((Path<E>)currentSelection).get((SingularAttribute<E,? extends Number>)attribute);
+        switch (function) {
+            case SUM: return cb.sum(e);
+            case AVG: return cb.avg(e);
+            case MIN: return cb.min(e);
+            case MAX: return cb.max(e);
+            default: throw new IllegalStateException("Unknown aggregate: " + function);
+        }
+    }
+    
+    @Override
+    public Object getValueToReplaceResult(Object resultFromDb) {
+        switch (function) {
+            case COUNT:
+                return resultFromDb;
+            case AVG:
+                return resultFromDb == null ? Option.None() : Option.Some(((Number)resultFromDb).doubleValue());
+            default:
+                return resultFromDb == null ? Option.None() : Option.Some(AggregateSingularAttribute.toValueType((Number)resultFromDb, attribute.getJavaType()));
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + function + (attribute == null ? "" : " " + attribute.getName()) + ")";
+    }
+}
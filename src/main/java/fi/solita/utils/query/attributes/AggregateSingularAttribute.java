@@ -0,0 +1,149 @@
+package fi.solita.utils.query.attributes;
+
+import static fi.solita.utils.functional.Collections.emptyList;
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Functional.head;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+class AggregateSingularAttribute<E,R> extends SingularAttributeProxy<E,R> implements AggregatingAttribute {
+    
+    enum Function {
+        COUNT, EXISTS, SUM, MIN, MAX
+    }
+    
+    private final PluralAttribute<E,?,?> relation;
+    private final Function function;
+    private final SingularAttribute<?,? extends Number> value;
+    private final Class<R> javaType;
+
+    AggregateSingularAttribute(PluralAttribute<E,?,?> relation, Function function, SingularAttribute<?,? extends Number> value, Class<R> javaType) {
+        super(null);
+        this.relation = relation;
+        this.function = function;
+        this.value = value;
+        this.javaType = javaType;
+    }
+    
+    @Override
+    public Attribute<?, ?> getRelation() {
+        return relation;
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public Expression<?> getAggregateForQuery(CriteriaBuilder cb, Path<?> element) {
+        switch (function) {
+            case COUNT:
+            case EXISTS:
+                return cb.count(element);
+            case SUM:
+                return cb.sum(element.get((SingularAttribute<Object,? extends Number>)value));
+            case MIN:
+                return cb.min(element.get((SingularAttribute<Object,? extends Number>)value));
+            case MAX:
+                return cb.max(element.get((SingularAttribute<Object,? extends Number>)value));
+        }
+        throw new IllegalStateException("Unknown aggregate: " + function);
+    }
+    
+    @Override
+    public List<Object> getValueToReplaceResult(List<Object> resultsFromDb) {
+        switch (function) {
+            case COUNT:
+                return newList(resultsFromDb.isEmpty() ? (Object)0L : head(resultsFromDb));
+            case EXISTS:
+                return newList((Object)!resultsFromDb.isEmpty());
+            default:
+                // no rows -> None
+                if (resultsFromDb.isEmpty() || head(resultsFromDb) == null) {
+                    return emptyList();
+                }
+                return newList(toValueType((Number)head(resultsFromDb), value.getJavaType()));
+        }
+    }
+    
+    /**
+     * The database may widen the type of a sum, e.g. integers to longs.
+     */
+    static Object toValueType(Number n, Class<?> type) {
+        if (type.isInstance(n)) {
+            return n;
+        } else if (type == Integer.class || type == int.class) {
+            return n.intValue();
+        } else if (type == Long.class || type == long.class) {
+            return n.longValue();
+        } else if (type == Short.class || type == short.class) {
+            return n.shortValue();
+        } else if (type == Double.class || type == double.class) {
+            return n.doubleValue();
+        } else if (type == Float.class || type == float.class) {
+            return n.floatValue();
+        } else if (type == BigDecimal.class) {
+            return new BigDecimal(n.toString());
+        } else if (type == BigInteger.class) {
+            return new BigDecimal(n.toString()).toBigInteger();
+        }
+        return n;
+    }
+    
+    @Override
+    public String getName() {
+        return relation.getName();
+    }
+    
+    @Override
+    public ManagedType<E> getDeclaringType() {
+        return relation.getDeclaringType();
+    }
+    
+    @Override
+    public PersistentAttributeType getPersistentAttributeType() {
+        return PersistentAttributeType.BASIC;
+    }
+    
+    @Override
+    public Class<R> getJavaType() {
+        return javaType;
+    }
+    
+    @Override
+    public Class<R> getBindableJavaType() {
+        return javaType;
+    }
+    
+    @Override
+    public boolean isOptional() {
+        return function != Function.COUNT && function != Function.EXISTS;
+    }
+    
+    @Override
+    public boolean isAssociation() {
+        return false;
+    }
+    
+    @Override
+    public boolean isId() {
+        return false;
+    }
+    
+    @Override
+    public boolean isVersion() {
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + function + " " + relation + (value == null ? "" : "." + value.getName()) + ")";
+    }
+}
@@ -0,0 +1,66 @@
+package fi.solita.utils.query.attributes;
+
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+import fi.solita.utils.functional.Option;
+
+/**
+ * 
+ * Do not use this class directly.
+ * 
+ * An aggregate of a related collection, queried with a single grouped
+ * additional query without loading the elements themselves.
+ *
+ */
+public interface AggregatingAttribute {
+    
+    /**
+     * @return the collection to aggregate.
+     */
+    public Attribute<?,?> getRelation();
+    
+    /**
+     * @param element an element of the relation, joined and grouped by its source.
+     */
+    public Expression<?> getAggregateForQuery(CriteriaBuilder cb, Path<?> element);
+    
+    /**
+     * @param resultsFromDb the aggregate of a single source, or empty if the source had no related rows.
+     */
+    public List<Object> getValueToReplaceResult(List<Object> resultsFromDb);
+    
+    /**
+     * Do not use these directly. Use class fi.solita.utils.query.projection.Related instead.
+     */
+    public static class Constructors {
+        public static <E> SingularAttribute<E,Long> count(PluralAttribute<E,?,?> relation) {
+            return new AggregateSingularAttribute<E,Long>(relation, AggregateSingularAttribute.Function.COUNT, null, Long.class);
+        }
+        
+        public static <E> SingularAttribute<E,Boolean> exists(PluralAttribute<E,?,?> relation) {
+            return new AggregateSingularAttribute<E,Boolean>(relation, AggregateSingularAttribute.Function.EXISTS, null, Boolean.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        public static <E,R,N extends Number> SingularAttribute<E,Option<N>> sum(PluralAttribute<E,?,R> relation, SingularAttribute<? super R,N> value) {
+            return new AggregateSingularAttribute<E,Option<N>>(relation, AggregateSingularAttribute.Function.SUM, value, (Class<Option<N>>)(Object)Option.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        public static <E,R,N extends Number> SingularAttribute<E,Option<N>> min(PluralAttribute<E,?,R> relation, SingularAttribute<? super R,N> value) {
+            return new AggregateSingularAttribute<E,Option<N>>(relation, AggregateSingularAttribute.Function.MIN, value, (Class<Option<N>>)(Object)Option.class);
+        }
+        
+        @SuppressWarnings("unchecked")
+        public static <E,R,N extends Number> SingularAttribute<E,Option<N>> max(PluralAttribute<E,?,R> relation, SingularAttribute<? super R,N> value) {
+            return new AggregateSingularAttribute<E,Option<N>>(relation, AggregateSingularAttribute.Function.MAX, value, (Class<Option<N>>)(Object)Option.class);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package fi.solita.utils.query.attributes;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Bindable;
+import javax.persistence.metamodel.CollectionAttribute;
+import javax.persistence.metamodel.ListAttribute;
+import javax.persistence.metamodel.SetAttribute;
+
+import fi.solita.utils.query.Order;
+
+/**
+ * 
+ * Do not use this class directly.
+ * 
+ * A collection attribute, of which only the first <i>limit</i> elements
+ * by the given ordering are to be fetched for each parent.
+ *
+ */
+public interface LimitingAttribute {
+    public abstract int getLimit();
+    
+    public abstract Order<?,?> getOrdering();
+    
+    public static class Constructors {
+        public static <E,R,A extends Attribute<E, Set<R>> & Bindable<R>> SetAttribute<E,R> set(SetAttribute<E,R> attribute, int limit, Order<? super R,?> ordering) {
+            return new LimitingSetAttribute<E,R,A>(attribute, limit, ordering);
+        }
+        
+        public static <E,R,A extends Attribute<E, List<R>> & Bindable<R>> ListAttribute<E,R> list(ListAttribute<E,R> attribute, int limit, Order<? super R,?> ordering) {
+            return new LimitingListAttribute<E,R,A>(attribute, limit, ordering);
+        }
+        
+        public static <E,R,A extends Attribute<E, Collection<R>> & Bindable<R>> CollectionAttribute<E,R> collection(CollectionAttribute<E,R> attribute, int limit, Order<? super R,?> ordering) {
+            return new LimitingCollectionAttribute<E,R,A>(attribute, limit, ordering);
+        }
+    }
+}
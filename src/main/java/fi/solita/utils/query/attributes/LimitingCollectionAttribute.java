@@ -0,0 +1,35 @@
+package fi.solita.utils.query.attributes;
+
+import java.util.Collection;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Bindable;
+import javax.persistence.metamodel.CollectionAttribute;
+
+import fi.solita.utils.query.Order;
+
+class LimitingCollectionAttribute<E, R, A extends Attribute<E, Collection<R>> & Bindable<R>> extends PluralAttributeProxy<E, Collection<R>, R, A> implements CollectionAttribute<E,R>, LimitingAttribute {
+    
+    private final int limit;
+    private final Order<?,?> ordering;
+
+    @SuppressWarnings("unchecked")
+    LimitingCollectionAttribute(CollectionAttribute<E,R> attribute, int limit, Order<? super R,?> ordering) {
+        super((A)attribute, CollectionType.COLLECTION, attribute.getElementType());
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must be non-negative: " + limit);
+        }
+        this.limit = limit;
+        this.ordering = ordering;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+    
+    @Override
+    public Order<?,?> getOrdering() {
+        return ordering;
+    }
+}
@@ -0,0 +1,35 @@
+package fi.solita.utils.query.attributes;
+
+import java.util.List;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Bindable;
+import javax.persistence.metamodel.ListAttribute;
+
+import fi.solita.utils.query.Order;
+
+class LimitingListAttribute<E, R, A extends Attribute<E, List<R>> & Bindable<R>> extends PluralAttributeProxy<E, List<R>, R, A> implements ListAttribute<E,R>, LimitingAttribute {
+    
+    private final int limit;
+    private final Order<?,?> ordering;
+
+    @SuppressWarnings("unchecked")
+    LimitingListAttribute(ListAttribute<E,R> attribute, int limit, Order<? super R,?> ordering) {
+        super((A)attribute, CollectionType.LIST, attribute.getElementType());
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must be non-negative: " + limit);
+        }
+        this.limit = limit;
+        this.ordering = ordering;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+    
+    @Override
+    public Order<?,?> getOrdering() {
+        return ordering;
+    }
+}
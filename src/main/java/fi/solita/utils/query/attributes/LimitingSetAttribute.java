@@ -0,0 +1,35 @@
+package fi.solita.utils.query.attributes;
+
+import java.util.Set;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Bindable;
+import javax.persistence.metamodel.SetAttribute;
+
+import fi.solita.utils.query.Order;
+
+class LimitingSetAttribute<E, R, A extends Attribute<E, Set<R>> & Bindable<R>> extends PluralAttributeProxy<E, Set<R>, R, A> implements SetAttribute<E,R>, LimitingAttribute {
+    
+    private final int limit;
+    private final Order<?,?> ordering;
+
+    @SuppressWarnings("unchecked")
+    LimitingSetAttribute(SetAttribute<E,R> attribute, int limit, Order<? super R,?> ordering) {
+        super((A)attribute, CollectionType.SET, attribute.getElementType());
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must be non-negative: " + limit);
+        }
+        this.limit = limit;
+        this.ordering = ordering;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+    
+    @Override
+    public Order<?,?> getOrdering() {
+        return ordering;
+    }
+}
@@ -0,0 +1,12 @@
+package fi.solita.utils.query.attributes;
+
+/**
+ * 
+ * Do not use this class directly.
+ * 
+ * A pseudo attribute whose value is known without the query,
+ * so it need not be selected from the database at all.
+ *
+ */
+public interface LiteralAttribute extends PseudoAttribute {
+}
@@ -10,7 +10,7 @@ import javax.persistence.metamodel.Bindable;
 import javax.persistence.metamodel.CollectionAttribute;
 
 
-class LiteralCollectionAttribute<X, Y, A extends Attribute<X, Collection<Y>> & Bindable<Y>> extends PluralAttributeProxy<X, Collection<Y>, Y, A> implements CollectionAttribute<X, Y>, PseudoAttribute {
+class LiteralCollectionAttribute<X, Y, A extends Attribute<X, Collection<Y>> & Bindable<Y>> extends PluralAttributeProxy<X, Collection<Y>, Y, A> implements CollectionAttribute<X, Y>, LiteralAttribute {
 
     private final Collection<Y> value;
 
@@ -10,7 +10,7 @@ import javax.persistence.metamodel.Bindable;
 import javax.persistence.metamodel.ListAttribute;
 
 
-class LiteralListAttribute<X, Y, A extends Attribute<X, List<Y>> & Bindable<Y>> extends PluralAttributeProxy<X, List<Y>, Y, A> implements ListAttribute<X, Y>, PseudoAttribute {
+class LiteralListAttribute<X, Y, A extends Attribute<X, List<Y>> & Bindable<Y>> extends PluralAttributeProxy<X, List<Y>, Y, A> implements ListAttribute<X, Y>, LiteralAttribute {
 
     private final List<Y> value;
 
@@ -11,7 +11,7 @@ import javax.persistence.metamodel.Bindable;
 import javax.persistence.metamodel.SetAttribute;
 
 
-class LiteralSetAttribute<X, Y, A extends Attribute<X, Set<Y>> & Bindable<Y>> extends PluralAttributeProxy<X, Set<Y>, Y, A> implements SetAttribute<X, Y>, PseudoAttribute {
+class LiteralSetAttribute<X, Y, A extends Attribute<X, Set<Y>> & Bindable<Y>> extends PluralAttributeProxy<X, Set<Y>, Y, A> implements SetAttribute<X, Y>, LiteralAttribute {
 
     private final Set<Y> value;
 
@@ -4,7 +4,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Path;
 
-class LiteralSingularAttribute<X, T> extends SingularAttributeProxy<X, T> implements PseudoAttribute {
+class LiteralSingularAttribute<X, T> extends SingularAttributeProxy<X, T> implements LiteralAttribute {
     private final T value;
 
     public LiteralSingularAttribute(T value) {
@@ -0,0 +1,29 @@
+package fi.solita.utils.query.backend;
+
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaQuery;
+
+/**
+ * Optionally implemented by a {@link JpaCriteriaQueryExecutor} to describe queries without executing them.
+ */
+public interface JpaCriteriaQueryExplainer {
+    /**
+     * @return the query in the query language of the backend.
+     */
+    String getQueryString(CriteriaQuery<?> query);
+
+    /**
+     * @return the sql of the query.
+     */
+    String getSql(CriteriaQuery<?> query);
+
+    /**
+     * <i>EXPLAIN</i> is not standard sql, so only some databases can be supported,
+     * e.g. H2, PostgreSQL and MySQL with {@link fi.solita.utils.query.backend.hibernate.HibernateQueryExecutor}.
+     * 
+     * @return the rows of the plan the database gives for <i>EXPLAIN</i> of the sql of the query, with all parameters null,
+     *         or an empty list if the database is not supported.
+     */
+    List<String> explain(CriteriaQuery<?> query);
+}
@@ -0,0 +1,63 @@
+package fi.solita.utils.query.backend.hibernate;
+
+import java.util.List;
+
+import org.hibernate.QueryException;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+
+/**
+ * "table" function for {@link fi.solita.utils.query.db.ArraySupport}. Renders a subselect
+ * unnesting the single array parameter.
+ */
+public final class ArrayTableFunction implements SQLFunction {
+    
+    /**
+     * H2: <code>SELECT tt.x FROM TABLE(x BIGINT = ?) tt</code>
+     */
+    public static ArrayTableFunction h2(String elementSqlType) {
+        return new ArrayTableFunction("SELECT tt.x FROM TABLE(x " + elementSqlType + " = ", ") tt");
+    }
+    
+    /**
+     * PostgreSQL: <code>SELECT unnest(?)</code>
+     */
+    public static ArrayTableFunction postgreSQL() {
+        return new ArrayTableFunction("SELECT unnest(", ")");
+    }
+    
+    private final String prefix;
+    private final String suffix;
+    
+    public ArrayTableFunction(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+    
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public boolean hasParenthesesIfNoArguments() {
+        return true;
+    }
+
+    @Override
+    public Type getReturnType(Type columnType, Mapping mapping) throws QueryException {
+        return StandardBasicTypes.INTEGER;
+    }
+
+    @Override
+    public String render(Type columnType, @SuppressWarnings("rawtypes") List args, SessionFactoryImplementor factory) throws QueryException {
+        if ( args.size()!=1 ) {
+            throw new QueryException("table requires one argument");
+        }
+        
+        return prefix + args.get(0) + suffix;
+    }
+}
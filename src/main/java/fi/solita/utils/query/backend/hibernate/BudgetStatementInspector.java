@@ -0,0 +1,18 @@
+package fi.solita.utils.query.backend.hibernate;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import fi.solita.utils.query.metrics.QueryBudget;
+
+/**
+ * Counts every statement prepared by Hibernate, including lazy loading, to the active {@link QueryBudget}
+ * of the thread. Register with <i>hibernate.session_factory.statement_inspector</i>.
+ */
+public class BudgetStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        QueryBudget.inspected(sql);
+        return sql;
+    }
+}
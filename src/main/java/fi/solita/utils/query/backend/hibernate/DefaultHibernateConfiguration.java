@@ -1,9 +1,47 @@
 package fi.solita.utils.query.backend.hibernate;
 
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import fi.solita.utils.functional.ApplyZero;
+import fi.solita.utils.functional.Option;
 import fi.solita.utils.query.DefaultConfiguration;
 
 public class DefaultHibernateConfiguration extends DefaultConfiguration {
+    
+    private final Option<ApplyZero<EntityManager>> em;
+    
+    private volatile Boolean supportsRowValueConstructorSyntaxInInList;
+    
     public DefaultHibernateConfiguration() {
+        this.em = None();
         OracleTableValueType.config = this;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Resolves the database specific settings from the Dialect of the session factory.
+     */
+    public DefaultHibernateConfiguration(ApplyZero<EntityManager> em) {
+        this.em = Some(em);
+        OracleTableValueType.config = this;
+    }
+    
+    @Override
+    public boolean supportsRowValueConstructorSyntaxInInList() {
+        if (!em.isDefined()) {
+            return super.supportsRowValueConstructorSyntaxInInList();
+        }
+        // resolved lazily, since the entity manager is not usable while the context starts
+        Boolean ret = supportsRowValueConstructorSyntaxInInList;
+        if (ret == null) {
+            ret = ((SessionFactoryImplementor)em.get().get().unwrap(Session.class).getSessionFactory()).getDialect().supportsRowValueConstructorSyntaxInInList();
+            supportsRowValueConstructorSyntaxInInList = ret;
+        }
+        return ret;
+    }
+}
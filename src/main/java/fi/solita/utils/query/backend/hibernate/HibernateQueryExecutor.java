@@ -4,22 +4,43 @@ import static fi.solita.utils.functional.Collections.newArray;
 import static fi.solita.utils.functional.Collections.newList;
 import static fi.solita.utils.functional.Functional.head;
 import static fi.solita.utils.functional.Functional.map;
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.Parameter;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
 
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
 import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jpa.HibernateQuery;
 import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.transform.ResultTransformer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import fi.solita.utils.functional.ApplyZero;
 import fi.solita.utils.functional.Option;
@@ -29,38 +50,62 @@ import fi.solita.utils.query.Configuration;
 import fi.solita.utils.query.JpaCriteriaCopy;
 import fi.solita.utils.query.Page;
 import fi.solita.utils.query.backend.JpaCriteriaQueryExecutor;
+import fi.solita.utils.query.backend.JpaCriteriaQueryExplainer;
 import fi.solita.utils.query.backend.NativeQueryExecutor;
 import fi.solita.utils.query.backend.QLQueryExecutor;
 import fi.solita.utils.query.backend.Type;
 import fi.solita.utils.query.backend.TypeProvider;
+import fi.solita.utils.query.db.AdaptiveInClauseStrategy;
 import fi.solita.utils.query.generation.NativeQuery;
 import fi.solita.utils.query.generation.QLQuery;
+import fi.solita.utils.query.metrics.QueryMeasurement.Phase;
+import fi.solita.utils.query.metrics.QueryMetrics;
+import fi.solita.utils.query.metrics.SlowQueryLog;
 
-public class HibernateQueryExecutor implements JpaCriteriaQueryExecutor, NativeQueryExecutor, QLQueryExecutor {
+public class HibernateQueryExecutor implements JpaCriteriaQueryExecutor, JpaCriteriaQueryExplainer, NativeQueryExecutor, QLQueryExecutor {
 
+    private static final Logger logger = LoggerFactory.getLogger(HibernateQueryExecutor.class);
+    
     private final ApplyZero<EntityManager> em;
     private final TypeProvider typeProvider;
     private final JpaCriteriaCopy jpaCriteriaCopy;
+    private final Configuration config;
+    private final QueryMetrics metrics;
     
     public HibernateQueryExecutor(ApplyZero<EntityManager> em, TypeProvider typeProvider, Configuration config) {
         this.em = em;
         this.typeProvider = typeProvider;
         this.jpaCriteriaCopy = new JpaCriteriaCopy(config);
+        this.config = config;
+        this.metrics = new QueryMetrics(config);
     }
     
     @Override
     public <T> T get(CriteriaQuery<T> query, LockModeType lock) {
-        jpaCriteriaCopy.createMissingAliases(query);
-        return replaceProxy(em.get().createQuery(query).setLockMode(lock).getSingleResult());
+        long building = System.nanoTime();
+        final TypedQuery<T> q = create(query, lock);
+        String fingerprint = fingerprint(q);
+        metrics.measured(Phase.BUILD, fingerprint, building, Option.<Integer>None());
+        return measured(fingerprint, new CriteriaExecution<T>(q) {
+            @Override
+            protected T execute() {
+                return replaceProxy(q.getSingleResult());
+            }
+            @Override
+            protected int rows(T result) {
+                return 1;
+            }
+        });
     }
 
     @Override
-    public <T> List<T> getMany(CriteriaQuery<T> query, Page page, LockModeType lock) {
-        jpaCriteriaCopy.createMissingAliases(query);
-        
-        TypedQuery<T> q = em.get().createQuery(query).setLockMode(lock);
-        int originalFirstResult = q.getFirstResult();
-        int originalMaxResults = q.getMaxResults();
+    public <T> List<T> getMany(CriteriaQuery<T> query, final Page page, LockModeType lock) {
+        long building = System.nanoTime();
+        final TypedQuery<T> q = create(query, lock);
+        String fingerprint = fingerprint(q);
+        metrics.measured(Phase.BUILD, fingerprint, building, Option.<Integer>None());
+        final int originalFirstResult = q.getFirstResult();
+        final int originalMaxResults = q.getMaxResults();
         
         if (page != Page.NoPaging) {
             if (page.getFirstResult() != 0) {
@@ -70,15 +115,271 @@ public class HibernateQueryExecutor implements JpaCriteriaQueryExecutor, NativeQ
                 q.setMaxResults(page.getMaxResults());
             }
         }
+        return measured(fingerprint, new CriteriaExecution<List<T>>(q) {
+            @Override
+            protected List<T> execute() {
+                return newList(map(HibernateQueryExecutor_.<T>replaceProxy(), q.getResultList()));
+            }
+            @Override
+            protected int rows(List<T> result) {
+                return result.size();
+            }
+            @Override
+            protected void finished() {
+                if (page != Page.NoPaging) {
+                    if (page.getFirstResult() != 0) {
+                        q.setFirstResult(originalFirstResult);
+                    }
+                    if (page.getMaxResults() != Integer.MAX_VALUE) {
+                        q.setMaxResults(originalMaxResults);
+                    }
+                }
+            }
+        });
+    }
+    
+    private final <T> TypedQuery<T> create(CriteriaQuery<T> query, LockModeType lock) {
+        try {
+            jpaCriteriaCopy.createMissingAliases(query);
+            return em.get().createQuery(query).setLockMode(lock);
+        } catch (RuntimeException e) {
+            // the in-clause choices of a query failing to compile are never executed
+            discarded();
+            throw e;
+        }
+    }
+    
+    @Override
+    public String getQueryString(CriteriaQuery<?> query) {
+        try {
+            jpaCriteriaCopy.createMissingAliases(query);
+            return em.get().createQuery(query).unwrap(Query.class).getQueryString();
+        } finally {
+            // only inspected, not executed
+            discarded();
+        }
+    }
+    
+    @Override
+    public String getSql(CriteriaQuery<?> query) {
+        return sql(getQueryString(query));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private final String sql(String ql) {
+        SessionFactoryImplementor factory = (SessionFactoryImplementor) em.get().unwrap(Session.class).getSessionFactory();
+        // compiled through the query plan cache, as it would be when executed
+        return factory.getQueryPlanCache().getHQLQueryPlan(ql, false, Collections.EMPTY_MAP).getSqlStrings()[0];
+    }
+    
+    /**
+     * Supported only with H2, PostgreSQL and MySQL, which return the plan as the result of <i>EXPLAIN</i>.
+     * Returns an empty plan for other dialects.
+     */
+    @Override
+    public List<String> explain(CriteriaQuery<?> query) {
+        Dialect dialect = ((SessionFactoryImplementor) em.get().unwrap(Session.class).getSessionFactory()).getDialect();
+        if (!(dialect instanceof H2Dialect || dialect instanceof PostgreSQL81Dialect || dialect instanceof MySQLDialect)) {
+            logger.debug("EXPLAIN not supported for {}", dialect);
+            return newList();
+        }
+        final String sql = getSql(query);
+        return em.get().unwrap(Session.class).doReturningWork(new ReturningWork<List<String>>() {
+            @Override
+            public List<String> execute(Connection connection) throws SQLException {
+                PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql);
+                try {
+                    int parameterCount = ps.getParameterMetaData().getParameterCount();
+                    for (int i = 1; i <= parameterCount; ++i) {
+                        ps.setNull(i, Types.NULL);
+                    }
+                    List<String> ret = newList();
+                    ResultSet rs = ps.executeQuery();
+                    try {
+                        while (rs.next()) {
+                            ret.add(rs.getString(1));
+                        }
+                    } finally {
+                        rs.close();
+                    }
+                    return ret;
+                } finally {
+                    ps.close();
+                }
+            }
+        });
+    }
+    
+    /**
+     * A query execution measured by {@link #measured}.
+     */
+    private abstract class Execution<T> {
+        protected abstract T execute();
+        
+        protected abstract int rows(T result);
+        
+        /**
+         * Records the execution since <i>startNanos</i> to the slow query log, if configured and slow.
+         */
+        protected abstract void logIfSlow(long startNanos);
+        
+        protected void succeeded(long startNanos) {
+        }
+        
+        protected void aborted(long startNanos, RuntimeException e) {
+        }
+        
+        /**
+         * Called after the execution, whether it succeeded or not.
+         */
+        protected void finished() {
+        }
+    }
+    
+    private abstract class CriteriaExecution<T> extends Execution<T> {
+        private final TypedQuery<?> q;
+        
+        CriteriaExecution(TypedQuery<?> q) {
+            this.q = q;
+        }
+        
+        @Override
+        protected void logIfSlow(long startNanos) {
+            slow(startNanos, q);
+        }
+        
+        @Override
+        protected void succeeded(long startNanos) {
+            executed(startNanos);
+        }
+        
+        @Override
+        protected void aborted(long startNanos, RuntimeException e) {
+            failed(startNanos, e);
+        }
+    }
+    
+    private abstract class StringExecution<T> extends Execution<T> {
+        private final String query;
+        private final boolean ql;
+        private final Map<String, Pair<?, Option<Type<?>>>> params;
+        
+        StringExecution(String query, boolean ql, Map<String, Pair<?, Option<Type<?>>>> params) {
+            this.query = query;
+            this.ql = ql;
+            this.params = params;
+        }
+        
+        @Override
+        protected void logIfSlow(long startNanos) {
+            slow(startNanos, query, ql, params);
+        }
+    }
+    
+    /**
+     * Executes <i>execution</i> recording its duration and rows to the metrics, and to the slow query log if slow.
+     */
+    private final <T> T measured(String fingerprint, Execution<T> execution) {
+        long start = System.nanoTime();
+        Option<Integer> rows = None();
         try {
-            return newList(map(HibernateQueryExecutor_.<T>replaceProxy(), q.getResultList()));
+            T ret = execution.execute();
+            rows = Some(execution.rows(ret));
+            execution.succeeded(start);
+            return ret;
+        } catch (RuntimeException e) {
+            execution.aborted(start, e);
+            throw e;
         } finally {
-            if (page != Page.NoPaging) {
-                if (page.getFirstResult() != 0) {
-                    q.setFirstResult(originalFirstResult);
+            execution.finished();
+            metrics.measured(Phase.EXECUTE, fingerprint, start, rows);
+            execution.logIfSlow(start);
+        }
+    }
+    
+    private final void executed(long startNanos) {
+        for (AdaptiveInClauseStrategy adaptive: config.getAdaptiveInClauseStrategy()) {
+            adaptive.executed(System.nanoTime() - startNanos);
+        }
+    }
+    
+    /**
+     * A query failing or timing out is no sample of the in-clause strategies chosen for it.
+     * Not having a single result is, since the query itself completed.
+     */
+    private final void failed(long startNanos, RuntimeException e) {
+        if (e instanceof NoResultException || e instanceof NonUniqueResultException) {
+            executed(startNanos);
+        } else {
+            discarded();
+        }
+    }
+    
+    private final void discarded() {
+        for (AdaptiveInClauseStrategy adaptive: config.getAdaptiveInClauseStrategy()) {
+            adaptive.discarded();
+        }
+    }
+    
+    /**
+     * @return fingerprint of the query string Hibernate generated from the criteria, or null if not measuring.
+     */
+    private final String fingerprint(TypedQuery<?> q) {
+        if (!metrics.isEnabled()) {
+            return null;
+        }
+        try {
+            return QueryMetrics.fingerprint(q.unwrap(Query.class).getQueryString());
+        } catch (RuntimeException e) {
+            // query string not available
+            return q.getClass().getSimpleName();
+        }
+    }
+    
+    private final String fingerprint(String query) {
+        return metrics.isEnabled() ? QueryMetrics.fingerprint(query) : null;
+    }
+    
+    /**
+     * Records a criteria query executed since <i>startNanos</i> to the slow query log, if configured and slow.
+     */
+    private final void slow(long startNanos, TypedQuery<?> q) {
+        for (SlowQueryLog log: config.getSlowQueryLog()) {
+            long duration = System.nanoTime() - startNanos;
+            if (log.isSlow(duration)) {
+                try {
+                    // includes the parameters Hibernate created for the literals of the criteria
+                    javax.persistence.Query query = q.unwrap(HibernateQuery.class);
+                    Map<String, Object> values = new LinkedHashMap<String, Object>();
+                    for (Parameter<?> p: query.getParameters()) {
+                        if (query.isBound(p)) {
+                            values.put(p.getName() != null ? p.getName() : String.valueOf(p.getPosition()), query.getParameterValue(p));
+                        }
+                    }
+                    log.record(duration, sql(q.unwrap(Query.class).getQueryString()), values);
+                } catch (RuntimeException e) {
+                    // capturing must not break the queries
+                    logger.warn("Capturing a slow query failed", e);
                 }
-                if (page.getMaxResults() != Integer.MAX_VALUE) {
-                    q.setMaxResults(originalMaxResults);
+            }
+        }
+    }
+    
+    /**
+     * Records a native or QL query executed since <i>startNanos</i> to the slow query log, if configured and slow.
+     */
+    private final void slow(long startNanos, String query, boolean ql, Map<String, Pair<?, Option<Type<?>>>> params) {
+        for (SlowQueryLog log: config.getSlowQueryLog()) {
+            long duration = System.nanoTime() - startNanos;
+            if (log.isSlow(duration)) {
+                try {
+                    Map<String, Object> values = new LinkedHashMap<String, Object>();
+                    for (Entry<String, Pair<?, Option<Type<?>>>> param: params.entrySet()) {
+                        values.put(param.getKey(), param.getValue()._1);
+                    }
+                    log.record(duration, ql ? sql(query) : query, values);
+                } catch (RuntimeException e) {
+                    logger.warn("Capturing a slow query failed", e);
                 }
             }
         }
@@ -86,47 +387,105 @@ public class HibernateQueryExecutor implements JpaCriteriaQueryExecutor, NativeQ
 
     @Override
     public int execute(NativeQuery<Void> query) {
+        long building = System.nanoTime();
+        String fingerprint = fingerprint(query.query);
         SQLQuery q = em.get().unwrap(Session.class).createSQLQuery(query.query);
         q = bindParams(q, query.params);
         q = bindReturnValues(q, query.retvals);
-        q = bindTransformer(q, query);
-        return q.executeUpdate();
+        final SQLQuery bound = bindTransformer(q, query);
+        metrics.measured(Phase.BUILD, fingerprint, building, Option.<Integer>None());
+        return measured(fingerprint, new StringExecution<Integer>(query.query, false, query.params) {
+            @Override
+            protected Integer execute() {
+                return bound.executeUpdate();
+            }
+            @Override
+            protected int rows(Integer result) {
+                return result;
+            }
+        });
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T> Option<T> find(NativeQuery<? extends T> query) {
+        long building = System.nanoTime();
+        String fingerprint = fingerprint(query.query);
         SQLQuery q = em.get().unwrap(Session.class).createSQLQuery(query.query);
         q = bindParams(q, query.params);
         q = bindReturnValues(q, query.retvals);
-        q = bindTransformer(q, query);
-        return Option.of(replaceProxy((T)q.uniqueResult()));
+        final SQLQuery bound = bindTransformer(q, query);
+        metrics.measured(Phase.BUILD, fingerprint, building, Option.<Integer>None());
+        return measured(fingerprint, new StringExecution<Option<T>>(query.query, false, query.params) {
+            @SuppressWarnings("unchecked")
+            @Override
+            protected Option<T> execute() {
+                return Option.of(replaceProxy((T)bound.uniqueResult()));
+            }
+            @Override
+            protected int rows(Option<T> result) {
+                return result.isDefined() ? 1 : 0;
+            }
+        });
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public <T> List<T> getMany(NativeQuery<? extends T> query, Page page) {
+    public <T> List<T> getMany(NativeQuery<? extends T> query, final Page page) {
+        long building = System.nanoTime();
+        String fingerprint = fingerprint(query.query);
         SQLQuery q = em.get().unwrap(Session.class).createSQLQuery(query.query);
         q = bindParams(q, query.params);
         q = bindReturnValues(q, query.retvals);
-        q = bindTransformer(q, query);
-        return newList(map(HibernateQueryExecutor_.replaceProxy(), applyPaging(q, page).list()));
+        final SQLQuery bound = bindTransformer(q, query);
+        metrics.measured(Phase.BUILD, fingerprint, building, Option.<Integer>None());
+        return measured(fingerprint, new StringExecution<List<T>>(query.query, false, query.params) {
+            @SuppressWarnings("unchecked")
+            @Override
+            protected List<T> execute() {
+                return newList(map(HibernateQueryExecutor_.replaceProxy(), applyPaging(bound, page).list()));
+            }
+            @Override
+            protected int rows(List<T> result) {
+                return result.size();
+            }
+        });
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public <T> Option<T> find(QLQuery<T> query) {
-        Query q = em.get().unwrap(Session.class).createQuery(query.query);
-        q = bindParams(q, query.params);
-        return Option.of(replaceProxy((T)q.uniqueResult()));
+        long building = System.nanoTime();
+        String fingerprint = fingerprint(query.query);
+        final Query q = bindParams(em.get().unwrap(Session.class).createQuery(query.query), query.params);
+        metrics.measured(Phase.BUILD, fingerprint, building, Option.<Integer>None());
+        return measured(fingerprint, new StringExecution<Option<T>>(query.query, true, query.params) {
+            @SuppressWarnings("unchecked")
+            @Override
+            protected Option<T> execute() {
+                return Option.of(replaceProxy((T)q.uniqueResult()));
+            }
+            @Override
+            protected int rows(Option<T> result) {
+                return result.isDefined() ? 1 : 0;
+            }
+        });
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public <T> List<T> getMany(QLQuery<T> query, Page page) {
-        Query q = em.get().unwrap(Session.class).createQuery(query.query);
-        q = bindParams(q, query.params);
-        return newList(map(HibernateQueryExecutor_.replaceProxy(), applyPaging(q, page).list()));
+    public <T> List<T> getMany(QLQuery<T> query, final Page page) {
+        long building = System.nanoTime();
+        String fingerprint = fingerprint(query.query);
+        final Query q = bindParams(em.get().unwrap(Session.class).createQuery(query.query), query.params);
+        metrics.measured(Phase.BUILD, fingerprint, building, Option.<Integer>None());
+        return measured(fingerprint, new StringExecution<List<T>>(query.query, true, query.params) {
+            @SuppressWarnings("unchecked")
+            @Override
+            protected List<T> execute() {
+                return newList(map(HibernateQueryExecutor_.replaceProxy(), applyPaging(q, page).list()));
+            }
+            @Override
+            protected int rows(List<T> result) {
+                return result.size();
+            }
+        });
     }
     
     /**
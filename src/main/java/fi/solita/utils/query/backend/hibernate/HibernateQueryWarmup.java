@@ -0,0 +1,217 @@
+package fi.solita.utils.query.backend.hibernate;
+
+import static fi.solita.utils.functional.Collections.newList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaQuery;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.solita.utils.functional.ApplyZero;
+import fi.solita.utils.functional.Function0;
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.Page;
+import fi.solita.utils.query.backend.TypeProvider;
+import fi.solita.utils.query.db.TableInClauseOptimization;
+import fi.solita.utils.query.db.oracle.OracleSupport;
+import fi.solita.utils.query.execution.JpaProjectionQueries;
+import fi.solita.utils.query.meta.MetaJpaConstructor;
+import fi.solita.utils.query.projection.ProjectionHelper;
+
+/**
+ * Compiles registered queries at startup without executing them, so that the first requests
+ * do not pay for the translation of criteria to HQL, the compilation of HQL to sql, resolving
+ * parameter types and loading the constructor classes.
+ *
+ * <pre>
+ * warmup.register(query.all(Department.class), Dto_.c1(Department_.name))
+ *       .register("from Employee e where e.department = :dep")
+ *       .warmUp(4);
+ * </pre>
+ *
+ * The queries are compiled in parallel, each thread with its own entity manager, into the query plan
+ * cache of the session factory. Only the root query of a projection is compiled, since the additional
+ * queries need the ids of the source rows.
+ */
+public class HibernateQueryWarmup {
+
+    private static final Logger logger = LoggerFactory.getLogger(HibernateQueryWarmup.class);
+
+    private static abstract class Registration {
+        final String description;
+
+        Registration(String description) {
+            this.description = description;
+        }
+
+        abstract void warm(EntityManager em);
+    }
+
+    private final ApplyZero<EntityManager> em;
+    private final TypeProvider typeProvider;
+    private final Configuration config;
+
+    private final List<Registration> registrations = Collections.synchronizedList(new ArrayList<Registration>());
+    private final List<Class<?>> parameterTypes = Collections.synchronizedList(new ArrayList<Class<?>>());
+    private volatile boolean prebuildTypes;
+
+    public HibernateQueryWarmup(ApplyZero<EntityManager> em, TypeProvider typeProvider, Configuration config) {
+        this.em = em;
+        this.typeProvider = typeProvider;
+        this.config = config;
+    }
+
+    /**
+     * Registers the projecting query executed by <i>dao.getMany(query, constructor)</i>.
+     */
+    public <E> HibernateQueryWarmup register(final CriteriaQuery<E> query, final MetaJpaConstructor<? super E,?,?> constructor) {
+        registrations.add(new Registration(MetaJpaConstructor.Helper.toString(constructor)) {
+            @Override
+            void warm(EntityManager em) {
+                ApplyZero<EntityManager> local = constant(em);
+                HibernateQueryExecutor executor = new HibernateQueryExecutor(local, typeProvider, config);
+                new JpaProjectionQueries(local, new ProjectionHelper(local, executor, config), executor, config).explain(query, constructor, Page.NoPaging, false);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Registers a criteria query executed without a projection.
+     */
+    public HibernateQueryWarmup register(final CriteriaQuery<?> query) {
+        registrations.add(new Registration(query.getResultType().getSimpleName()) {
+            @Override
+            void warm(EntityManager em) {
+                new HibernateQueryExecutor(constant(em), typeProvider, config).getSql(query);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Registers a HQL query, e.g. the query string of a {@link fi.solita.utils.query.generation.QLQuery}.
+     */
+    public HibernateQueryWarmup register(final String ql) {
+        registrations.add(new Registration(ql) {
+            @Override
+            void warm(EntityManager em) {
+                // creating compiles through the query plan cache
+                em.unwrap(Session.class).createQuery(ql);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Registers a type of parameter values bound without an explicit type, resolved by the {@link TypeProvider}.
+     */
+    public HibernateQueryWarmup registerParameterType(Class<?> type) {
+        parameterTypes.add(type);
+        return this;
+    }
+
+    /**
+     * Resolves also the types of all mapped entities and their properties, and the registered table types.
+     */
+    public HibernateQueryWarmup prebuildTypes() {
+        prebuildTypes = true;
+        return this;
+    }
+
+    /**
+     * Compiles the registered queries with <i>threads</i> threads. The parameter types are resolved in the
+     * calling thread, with the entity manager of the application, so call within a transaction.
+     *
+     * @return number of queries and types warmed up. Failures are logged, not thrown, to not prevent the startup.
+     */
+    public int warmUp(int threads) {
+        long start = System.nanoTime();
+        int warmed = 0;
+        List<Class<?>> types;
+        List<Registration> toWarm;
+        synchronized (registrations) {
+            toWarm = newList(registrations);
+        }
+        synchronized (parameterTypes) {
+            types = newList(parameterTypes);
+        }
+        if (prebuildTypes) {
+            try {
+                if (typeProvider instanceof HibernateTypeProvider) {
+                    warmed += ((HibernateTypeProvider) typeProvider).prebuild();
+                }
+                for (TableInClauseOptimization provider: config.getTableInClauseProvider()) {
+                    if (provider instanceof OracleSupport) {
+                        ((OracleSupport) provider).prebuild();
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Could not prebuild the types", e);
+            }
+        }
+        for (Class<?> type: types) {
+            try {
+                typeProvider.type(type);
+                warmed++;
+            } catch (RuntimeException e) {
+                logger.warn("Could not resolve the type of parameter " + type.getName(), e);
+            }
+        }
+
+        final EntityManagerFactory emf = em.get().getEntityManagerFactory();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<?>> futures = newList();
+            for (final Registration r: toWarm) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        EntityManager local = emf.createEntityManager();
+                        try {
+                            r.warm(local);
+                            return null;
+                        } finally {
+                            local.close();
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    futures.get(i).get();
+                    warmed++;
+                } catch (ExecutionException e) {
+                    logger.warn("Could not warm up " + toWarm.get(i).description, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.info("Warmed up {} queries and types in {} ms", warmed, (System.nanoTime() - start) / 1000000);
+        return warmed;
+    }
+
+    private static ApplyZero<EntityManager> constant(final EntityManager em) {
+        return new Function0<EntityManager>() {
+            @Override
+            public EntityManager apply() {
+                return em;
+            }
+        };
+    }
+}
@@ -13,6 +13,8 @@ import static fi.solita.utils.functional.Option.Some;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.EntityManager;
 
@@ -60,20 +62,26 @@ public class HibernateTypeProvider implements TypeProvider {
         }
     };
     
-    // cache these, since it's static data.
-    private Map<Class<?>,String> typesByUniqueReturnedClassCache;
+    // cache these, since it's static data. Computing twice concurrently is harmless, the result is the same.
+    private volatile Map<Class<?>,String> typesByUniqueReturnedClassCache;
     private Map<Class<?>,String> typesByUniqueReturnedClass() {
-        if (typesByUniqueReturnedClassCache == null) {
+        Map<Class<?>,String> ret = typesByUniqueReturnedClassCache;
+        if (ret == null) {
             Iterable<ClassMetadata>                    allClassMetadata           = em.get().unwrap(Session.class).getSessionFactory().getAllClassMetadata().values();
             Map<String, List<org.hibernate.type.Type>> allPropertyTypesByName     = groupBy(HibernateTypeProvider_.type2Name, flatMap(HibernateTypeProvider_.classMetadata2propertyTypes, allClassMetadata));
             Iterable<org.hibernate.type.Type>          allDifferentPropertyTypes  = map(head, allPropertyTypesByName.values());
             Iterable<List<org.hibernate.type.Type>>    typesByReturnedClass       = groupBy(HibernateTypeProvider_.type2ReturnedClass, allDifferentPropertyTypes).values();
             Iterable<List<org.hibernate.type.Type>>    typesUniqueByReturnedClass = filter(size.andThen(Predicates.equalTo(1l)), typesByReturnedClass);
-            typesByUniqueReturnedClassCache = newMap(map(head.andThen(HibernateTypeProvider_.type2ReturnedClassAndNamePair), typesUniqueByReturnedClass));
+            ret = newMap(map(head.andThen(HibernateTypeProvider_.type2ReturnedClassAndNamePair), typesUniqueByReturnedClass));
+            typesByUniqueReturnedClassCache = ret;
         }
-        return typesByUniqueReturnedClassCache;
+        return ret;
     }
     
+    // resolved types are static data too, so that binding a parameter is a lookup after the first time.
+    private final ConcurrentMap<Class<?>,Type<?>> typesByClass = new ConcurrentHashMap<Class<?>,Type<?>>();
+    private final ConcurrentMap<Class<?>,Type<?>> idTypesByEntityClass = new ConcurrentHashMap<Class<?>,Type<?>>();
+    
     public HibernateTypeProvider(ApplyZero<EntityManager> em) {
         this.em = em;
     }
@@ -95,9 +103,36 @@ public class HibernateTypeProvider implements TypeProvider {
         return (Pair<Class<?>,String>)(Object)Pair.of(type.getReturnedClass(), type.getName());
     }
 
+    /**
+     * Resolves eagerly the types of all mapped entities and their properties, so that the
+     * first queries binding them do not pay for scanning the metadata.
+     * 
+     * @return number of types resolved.
+     */
+    public int prebuild() {
+        int ret = 0;
+        for (ClassMetadata c: em.get().unwrap(Session.class).getSessionFactory().getAllClassMetadata().values()) {
+            for (Class<?> clazz: Functional.<Class<?>>cons(c.getMappedClass(), map(HibernateTypeProvider_.type2ReturnedClass, classMetadata2propertyTypes(c)))) {
+                try {
+                    type(clazz);
+                    ret++;
+                } catch (IllegalArgumentException e) {
+                    // not resolvable without an explicit type, fails also when used
+                }
+            }
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
     @Override
     public <ID extends Serializable, T extends Identifiable<ID>> Type<ID> idType(Class<T> entityType) {
-        return new HibernateType<ID>(em.get().unwrap(Session.class).getSessionFactory().getClassMetadata(entityType).getIdentifierType());
+        Type<ID> ret = (Type<ID>) idTypesByEntityClass.get(entityType);
+        if (ret == null) {
+            ret = new HibernateType<ID>(em.get().unwrap(Session.class).getSessionFactory().getClassMetadata(entityType).getIdentifierType());
+            idTypesByEntityClass.put(entityType, ret);
+        }
+        return ret;
     }
     
     @SuppressWarnings("unchecked")
@@ -111,8 +146,18 @@ public class HibernateTypeProvider implements TypeProvider {
         return None();
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public <T> Type<T> type(final Class<T> clazz) {
+        Type<T> ret = (Type<T>) typesByClass.get(clazz);
+        if (ret == null) {
+            ret = resolveType(clazz);
+            typesByClass.put(clazz, ret);
+        }
+        return ret;
+    }
+    
+    private <T> Type<T> resolveType(final Class<T> clazz) {
         TypeHelper typeHelper = em.get().unwrap(Session.class).getTypeHelper();
         
         // basic type?
@@ -22,6 +22,8 @@ import fi.solita.utils.functional.Apply;
 import fi.solita.utils.functional.Option;
 import fi.solita.utils.functional.Tuple3;
 import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.db.TableInClauseOptimization;
+import fi.solita.utils.query.db.TableValueBinder;
 import fi.solita.utils.query.db.oracle.OracleSupport;
 import fi.solita.utils.query.entities.Table;
 
@@ -30,6 +32,17 @@ import fi.solita.utils.query.entities.Table;
 public class OracleTableValueType implements UserType, Serializable {
     
     public static Configuration config;
+    
+    private static volatile OracleSupport oracleSupport;
+    
+    private static OracleSupport oracleSupport() {
+        OracleSupport ret = oracleSupport;
+        if (ret == null || ret.getConfig() != config) {
+            ret = new OracleSupport(config);
+            oracleSupport = ret;
+        }
+        return ret;
+    }
 
     @Override
     public int[] sqlTypes() {
@@ -46,14 +59,30 @@ public class OracleTableValueType implements UserType, Serializable {
         if (value == null) {
             throw new UnsupportedOperationException("Shouldn't be here");
         } else {
-            Connection c = st.getConnection().unwrap(OracleSupport.oracleConnectionClass);
             Collection<?> values = ((Table.Value)value).values;
             
-            Option<Tuple3<String,Option<String>,Apply<Connection,Iterable<Object>>>> sqlTypeAndValues = new OracleSupport(config).getSqlTypeAndValues(values);
+            for (TableInClauseOptimization provider: config.getTableInClauseProvider()) {
+                if (provider instanceof TableValueBinder) {
+                    // provider binds the values itself, no Oracle collection types involved
+                    Option<Tuple3<String,Option<String>,Apply<Connection,Iterable<Object>>>> sqlTypeAndValues = provider.getSqlTypeAndValues(values);
+                    if (!sqlTypeAndValues.isDefined()) {
+                        throw new UnsupportedOperationException("type not implemented: " + headOption(values).map(OracleTableValueType_.className));
+                    }
+                    ((TableValueBinder)provider).bind(st, index, sqlTypeAndValues.get()._1, sqlTypeAndValues.get()._3.apply(st.getConnection()));
+                    return;
+                }
+            }
+            
+            Connection c = st.getConnection().unwrap(OracleSupport.oracleConnectionClass);
+            
+            Option<Tuple3<String,Option<String>,Apply<Connection,Iterable<Object>>>> sqlTypeAndValues = oracleSupport().getSqlTypeAndValues(values);
             if (sqlTypeAndValues.isDefined()) {
+                // ids of an IdSet can be bound without boxing
+                Option<long[]> primitives = oracleSupport().primitiveValues(values);
                 try {
-                    Object ad = OracleSupport.arrayDescriptorMethod.invoke(null, sqlTypeAndValues.get()._1, c);
-                    OracleSupport.oraclePreparedStatementMethod.invoke(st.unwrap(OracleSupport.oraclePreparedStatementClass), index, OracleSupport.ARRAYConstructor.newInstance(ad, c, newArray(Object.class, sqlTypeAndValues.get()._3.apply(c))));
+                    OracleSupport.setArray(st, index, c, sqlTypeAndValues.get()._1, primitives.isDefined() ? primitives.get() : newArray(Object.class, sqlTypeAndValues.get()._3.apply(c)));
+                } catch (SQLException e) {
+                    throw e;
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
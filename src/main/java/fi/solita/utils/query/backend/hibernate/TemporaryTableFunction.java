@@ -0,0 +1,55 @@
+package fi.solita.utils.query.backend.hibernate;
+
+import java.util.List;
+
+import org.hibernate.QueryException;
+import org.hibernate.dialect.function.SQLFunction;
+import org.hibernate.engine.spi.Mapping;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+
+import fi.solita.utils.query.db.TemporaryTableSupport;
+
+/**
+ * "table" function for {@link TemporaryTableSupport}. The single argument is the set id bound by it.
+ */
+public final class TemporaryTableFunction implements SQLFunction {
+    private final String tableName;
+    private final String setIdColumn;
+    private final String valueColumn;
+
+    public TemporaryTableFunction() {
+        this(TemporaryTableSupport.DEFAULT_TABLE_NAME, TemporaryTableSupport.DEFAULT_SET_ID_COLUMN, TemporaryTableSupport.DEFAULT_VALUE_COLUMN);
+    }
+
+    public TemporaryTableFunction(String tableName, String setIdColumn, String valueColumn) {
+        this.tableName = tableName;
+        this.setIdColumn = setIdColumn;
+        this.valueColumn = valueColumn;
+    }
+
+    @Override
+    public boolean hasArguments() {
+        return true;
+    }
+
+    @Override
+    public boolean hasParenthesesIfNoArguments() {
+        return true;
+    }
+
+    @Override
+    public Type getReturnType(Type columnType, Mapping mapping) throws QueryException {
+        return StandardBasicTypes.INTEGER;
+    }
+
+    @Override
+    public String render(Type columnType, @SuppressWarnings("rawtypes") List args, SessionFactoryImplementor factory) throws QueryException {
+        if ( args.size()!=1 ) {
+            throw new QueryException("table requires one argument");
+        }
+
+        return "SELECT tt." + valueColumn + " FROM " + tableName + " tt WHERE tt." + setIdColumn + " = " + args.get(0);
+    }
+}
@@ -0,0 +1,168 @@
+package fi.solita.utils.query.db;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import fi.solita.utils.functional.Option;
+
+/**
+ * Chooses the {@link InClauseStrategy} of an in-restriction by the observed execution times
+ * per (target entity, size bucket, strategy). The statically configured strategy is used
+ * until it has been observed enough, and an occasional random strategy is explored to keep
+ * the statistics of the alternatives up to date.
+ *
+ * Choices made while constructing a query are attributed to the next criteria query executed
+ * in the same thread. They are discarded if that query fails to compile or is only inspected
+ * (its query string, sql or plan), and not kept in the thread after the execution.
+ */
+public class AdaptiveInClauseStrategy {
+
+    private static final class Key {
+        final Class<?> entity;
+        final int bucket;
+        final InClauseStrategy strategy;
+
+        Key(Class<?> entity, int bucket, InClauseStrategy strategy) {
+            this.entity = entity;
+            this.bucket = bucket;
+            this.strategy = strategy;
+        }
+
+        @Override
+        public int hashCode() {
+            return (entity.hashCode() * 31 + bucket) * 31 + strategy.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return entity.equals(other.entity) && bucket == other.bucket && strategy == other.strategy;
+        }
+    }
+
+    private static final class Stats {
+        private long count;
+        private double averageNanos;
+
+        synchronized void record(long nanos, double weight) {
+            averageNanos = count == 0 ? nanos : averageNanos + weight * (nanos - averageNanos);
+            count++;
+        }
+
+        synchronized long count() {
+            return count;
+        }
+
+        synchronized double averageNanos() {
+            return averageNanos;
+        }
+    }
+
+    private final double explorationRate;
+    private final int minSamples;
+    private final double weight;
+
+    private final Random random = new Random();
+    private final ConcurrentMap<Key, Stats> stats = new ConcurrentHashMap<Key, Stats>();
+    private final ThreadLocal<List<Key>> pending = new ThreadLocal<List<Key>>() {
+        @Override
+        protected List<Key> initialValue() {
+            return newList();
+        }
+    };
+
+    public AdaptiveInClauseStrategy() {
+        this(0.05, 10, 0.1);
+    }
+
+    /**
+     * @param explorationRate probability to try a random strategy instead of the fastest one.
+     * @param minSamples number of observations needed before a strategy is compared to the others.
+     * @param weight weight of a new observation in the moving average of execution times.
+     */
+    public AdaptiveInClauseStrategy(double explorationRate, int minSamples, double weight) {
+        this.explorationRate = explorationRate;
+        this.minSamples = minSamples;
+        this.weight = weight;
+    }
+
+    static int bucket(int size) {
+        return Integer.highestOneBit(size);
+    }
+
+    /**
+     * @param prior strategy given by the static configuration.
+     * @param available strategies possible for this restriction.
+     */
+    public InClauseStrategy choose(Class<?> targetEntity, int size, InClauseStrategy prior, Set<InClauseStrategy> available) {
+        if (available.size() <= 1) {
+            return prior;
+        }
+
+        int bucket = bucket(size);
+        InClauseStrategy chosen = prior;
+        if (random.nextDouble() < explorationRate) {
+            chosen = newList(available).get(random.nextInt(available.size()));
+        } else {
+            Stats priorStats = stats.get(new Key(targetEntity, bucket, prior));
+            if (priorStats != null && priorStats.count() >= minSamples) {
+                double best = priorStats.averageNanos();
+                for (InClauseStrategy s: available) {
+                    Stats st = stats.get(new Key(targetEntity, bucket, s));
+                    if (st != null && st.count() >= minSamples && st.averageNanos() < best) {
+                        chosen = s;
+                        best = st.averageNanos();
+                    }
+                }
+            }
+        }
+        pending.get().add(new Key(targetEntity, bucket, chosen));
+        return chosen;
+    }
+
+    /**
+     * Records the execution time of a successfully completed query for the choices made in this thread since the previous execution.
+     * Call {@link #discarded()} instead for a query failing or timing out, since its time tells nothing of the strategies.
+     */
+    public void executed(long elapsedNanos) {
+        List<Key> keys = pending.get();
+        for (Key key: keys) {
+            Stats s = stats.get(key);
+            if (s == null) {
+                stats.putIfAbsent(key, new Stats());
+                s = stats.get(key);
+            }
+            s.record(elapsedNanos, weight);
+        }
+        // not to keep the list in pooled threads
+        pending.remove();
+    }
+
+    /**
+     * Forgets the choices made in this thread since the previous execution, when the query they were made for is not executed.
+     */
+    public void discarded() {
+        pending.remove();
+    }
+
+    /**
+     * @return moving average of the observed execution times, or None if not yet observed.
+     */
+    public Option<Double> getAverageNanos(Class<?> targetEntity, int size, InClauseStrategy strategy) {
+        Stats s = stats.get(new Key(targetEntity, bucket(size), strategy));
+        if (s == null || s.count() == 0) {
+            return None();
+        }
+        return Some(s.averageNanos());
+    }
+}
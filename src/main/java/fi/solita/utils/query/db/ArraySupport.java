@@ -0,0 +1,109 @@
+package fi.solita.utils.query.db;
+
+import static fi.solita.utils.functional.Collections.newArray;
+import static fi.solita.utils.functional.Functional.headOption;
+import static fi.solita.utils.functional.Functional.map;
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import fi.solita.utils.functional.Apply;
+import fi.solita.utils.functional.Function;
+import fi.solita.utils.functional.Function1;
+import fi.solita.utils.functional.Function2;
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.functional.Tuple;
+import fi.solita.utils.functional.Tuple3;
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.IdSet;
+
+/**
+ * Binds the whole value set as a single JDBC array parameter with {@link Connection#createArrayOf(String, Object[])},
+ * so that an in-clause sends one parameter no matter how large the set is.
+ * 
+ * Register the function "table" to the Dialect as a matching {@link fi.solita.utils.query.backend.hibernate.ArrayTableFunction}.
+ * The registered table types (see {@link Configuration#getRegisteredTableTypes()}) name collection types, e.g. "SYS.ODCINUMBERLIST",
+ * so the array element type of each, e.g. "BIGINT", must be given separately.
+ */
+public class ArraySupport implements TableInClauseOptimization, TableValueBinder {
+    
+    private final Configuration config;
+    private final Map<String, String> elementTypesByTableType;
+    
+    public ArraySupport(Configuration config) {
+        this(config, Collections.<String,String>emptyMap());
+    }
+    
+    /**
+     * @param elementTypesByTableType array element types by the names of the registered table types.
+     */
+    public ArraySupport(Configuration config, Map<String, String> elementTypesByTableType) {
+        this.config = config;
+        this.elementTypesByTableType = elementTypesByTableType;
+    }
+    
+    public Option<Tuple3<String,Option<String>,Apply<Connection,Iterable<Object>>>> getSqlTypeAndValues(final Iterable<?> values) {
+        Option<?> h = headOption(values);
+        if (!h.isDefined()) {
+            return None();
+        }
+        
+        Option<String> o = None();
+        Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> regTypes = config.getRegisteredTableTypes();
+        for (Entry<Class<?>, Tuple3<String,Option<String>, ? extends Function2<Connection, ?, ?>>> entry: regTypes.entrySet()) {
+            if (entry.getKey().isAssignableFrom(h.get().getClass())) {
+                String elementType = elementTypesByTableType.get(entry.getValue()._1);
+                if (elementType == null) {
+                    throw new IllegalArgumentException("No array element type given for the registered table type " + entry.getValue()._1);
+                }
+                final Function2<Connection, ?, ?> converter = entry.getValue()._3;
+                Apply<Connection,Iterable<Object>> v = new Function1<Connection, Iterable<Object>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Iterable<Object> apply(Connection t) {
+                        return map((Apply<Object,Object>)converter.ap(t), (Iterable<Object>)values);
+                    }
+                };
+                return Some(Tuple.of(elementType, o, v));
+            }
+        }
+        
+        if (values instanceof IdSet) {
+            @SuppressWarnings("unchecked")
+            Iterable<Object> m = (Iterable<Object>)(Object)((IdSet<?>)values).longValues();
+            Apply<Connection,Iterable<Object>> v = Function.constant(m);
+            return Some(Tuple.of("BIGINT", o, v));
+        }
+        
+        String t;
+        if (h.get() instanceof CharSequence) {
+            t = "VARCHAR";
+        } else if (h.get() instanceof BigDecimal || h.get() instanceof BigInteger) {
+            t = "NUMERIC";
+        } else if (h.get() instanceof Number) {
+            t = "BIGINT";
+        } else {
+            return None();
+        }
+        @SuppressWarnings("unchecked")
+        Iterable<Object> m = (Iterable<Object>)values;
+        Apply<Connection,Iterable<Object>> v = Function.constant(m);
+        return Some(Tuple.of(t, o, v));
+    }
+    
+    public void bind(PreparedStatement st, int index, String sqlType, Iterable<Object> values) throws SQLException {
+        bindArray(st, index, sqlType, newArray(Object.class, values));
+    }
+    
+    protected void bindArray(PreparedStatement st, int index, String sqlType, Object[] values) throws SQLException {
+        st.setArray(index, st.getConnection().createArrayOf(sqlType, values));
+    }
+}
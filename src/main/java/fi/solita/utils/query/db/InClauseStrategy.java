@@ -0,0 +1,21 @@
+package fi.solita.utils.query.db;
+
+/**
+ * The ways an in-restriction can be rendered to sql.
+ */
+public enum InClauseStrategy {
+    /**
+     * Regular (possibly chunked) in-lists.
+     */
+    IN_LIST,
+
+    /**
+     * <i>member of</i> a collection bound as a single parameter.
+     */
+    MEMBER_OF,
+
+    /**
+     * Subselect from a collection bound as a single parameter.
+     */
+    TABLE
+}
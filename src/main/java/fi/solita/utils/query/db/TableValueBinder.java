@@ -0,0 +1,14 @@
+package fi.solita.utils.query.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A {@link TableInClauseOptimization} which binds the whole value set itself as a single
+ * statement parameter, instead of relying on Oracle collection types.
+ *
+ * Such providers are used only through the "table" function, never through member-of.
+ */
+public interface TableValueBinder {
+    public void bind(PreparedStatement st, int index, String sqlType, Iterable<Object> values) throws SQLException;
+}
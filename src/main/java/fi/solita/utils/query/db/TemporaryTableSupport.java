@@ -0,0 +1,139 @@
+package fi.solita.utils.query.db;
+
+import static fi.solita.utils.functional.Functional.headOption;
+import static fi.solita.utils.functional.Functional.map;
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.solita.utils.functional.Apply;
+import fi.solita.utils.functional.Function;
+import fi.solita.utils.functional.Function1;
+import fi.solita.utils.functional.Function2;
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.functional.Tuple;
+import fi.solita.utils.functional.Tuple3;
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.IdSet;
+
+/**
+ * Portable in-clause optimization for very large value sets. The values are JDBC-batch-inserted
+ * to a temporary table when the query parameters are bound, and the in-clause becomes a
+ * subselect against the rows of that single bind.
+ *
+ * Assumes a transaction scoped temporary table, for example:
+ * <code><pre>
+ * CREATE GLOBAL TEMPORARY TABLE query_utils_in_values (set_id NUMBER(19) NOT NULL, value NUMBER(19)) ON COMMIT DELETE ROWS
+ * </pre></code>
+ * and the function "table" registered to the Dialect as a {@link fi.solita.utils.query.backend.hibernate.TemporaryTableFunction}.
+ * The values of a registered table type (see {@link Configuration#getRegisteredTableTypes()}) are converted with its converter,
+ * the table type name is ignored. Since the value column is numeric, sets of strings are not supported, restrict them with
+ * {@link fi.solita.utils.query.generation.Restrict#in_regularForm} instead.
+ *
+ * The inserted rows are not deleted after the query, but only at the end of the transaction, so binding requires a transaction
+ * (auto-commit disabled) and a table emptied on commit.
+ */
+public class TemporaryTableSupport implements TableInClauseOptimization, TableValueBinder {
+
+    public static final String DEFAULT_TABLE_NAME = "query_utils_in_values";
+    public static final String DEFAULT_SET_ID_COLUMN = "set_id";
+    public static final String DEFAULT_VALUE_COLUMN = "value";
+
+    private static final AtomicLong setIds = new AtomicLong();
+
+    private final Configuration config;
+    private final String tableName;
+    private final String setIdColumn;
+    private final String valueColumn;
+    private final int batchSize;
+
+    public TemporaryTableSupport(Configuration config) {
+        this(config, DEFAULT_TABLE_NAME, DEFAULT_SET_ID_COLUMN, DEFAULT_VALUE_COLUMN, 1000);
+    }
+
+    public TemporaryTableSupport(Configuration config, String tableName, String setIdColumn, String valueColumn, int batchSize) {
+        this.config = config;
+        this.tableName = tableName;
+        this.setIdColumn = setIdColumn;
+        this.valueColumn = valueColumn;
+        this.batchSize = batchSize;
+    }
+
+    public Option<Tuple3<String,Option<String>,Apply<Connection,Iterable<Object>>>> getSqlTypeAndValues(final Iterable<?> values) {
+        Option<?> h = headOption(values);
+        if (!h.isDefined()) {
+            return None();
+        }
+
+        Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> regTypes = config.getRegisteredTableTypes();
+        for (Entry<Class<?>, Tuple3<String,Option<String>, ? extends Function2<Connection, ?, ?>>> entry: regTypes.entrySet()) {
+            if (entry.getKey().isAssignableFrom(h.get().getClass())) {
+                final Function2<Connection, ?, ?> converter = entry.getValue()._3;
+                Apply<Connection,Iterable<Object>> v = new Function1<Connection, Iterable<Object>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Iterable<Object> apply(Connection t) {
+                        return map((Apply<Object,Object>)converter.ap(t), (Iterable<Object>)values);
+                    }
+                };
+                Option<String> o = None();
+                return Some(Tuple.of(tableName, o, v));
+            }
+        }
+
+        if (values instanceof IdSet) {
+            @SuppressWarnings("unchecked")
+            Iterable<Object> m = (Iterable<Object>)(Object)((IdSet<?>)values).longValues();
+            Option<String> o = None();
+            Apply<Connection,Iterable<Object>> v = Function.constant(m);
+            return Some(Tuple.of(tableName, o, v));
+        }
+
+        if (h.get() instanceof Number) {
+            @SuppressWarnings("unchecked")
+            Iterable<Object> m = (Iterable<Object>)values;
+            Option<String> o = None();
+            Apply<Connection,Iterable<Object>> v = Function.constant(m);
+            return Some(Tuple.of(tableName, o, v));
+        }
+        return None();
+    }
+
+    /**
+     * Inserts the values to the temporary table with a fresh set id, and binds the set id as the parameter.
+     * 
+     * @throws SQLException if the connection is in auto-commit mode, since the rows would never be removed.
+     */
+    public void bind(PreparedStatement st, int index, String sqlType, Iterable<Object> values) throws SQLException {
+        Connection connection = st.getConnection();
+        if (connection.getAutoCommit()) {
+            throw new SQLException("Binding values to " + tableName + " requires a transaction, since the rows are removed only on commit");
+        }
+        long setId = setIds.incrementAndGet();
+        PreparedStatement insert = connection.prepareStatement("INSERT INTO " + tableName + " (" + setIdColumn + ", " + valueColumn + ") VALUES (?, ?)");
+        try {
+            int pending = 0;
+            for (Object value: values) {
+                insert.setLong(1, setId);
+                insert.setObject(2, value);
+                insert.addBatch();
+                if (++pending == batchSize) {
+                    insert.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                insert.executeBatch();
+            }
+        } finally {
+            insert.close();
+        }
+        st.setLong(index, setId);
+    }
+}
@@ -0,0 +1,29 @@
+package fi.solita.utils.query.db.h2;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.db.ArraySupport;
+
+/**
+ * H2 driver (1.3) doesn't implement createArrayOf, but binds an Object[] as an array as such.
+ * 
+ * Register the function "table" to the Dialect as <code>ArrayTableFunction.h2("BIGINT")</code> (or the type of your ids).
+ */
+public class H2Support extends ArraySupport {
+    
+    public H2Support(Configuration config) {
+        super(config);
+    }
+    
+    public H2Support(Configuration config, Map<String, String> elementTypesByTableType) {
+        super(config, elementTypesByTableType);
+    }
+    
+    @Override
+    protected void bindArray(PreparedStatement st, int index, String sqlType, Object[] values) throws SQLException {
+        st.setObject(index, values);
+    }
+}
@@ -11,6 +11,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import fi.solita.utils.functional.Apply;
 import fi.solita.utils.functional.Function;
@@ -20,42 +22,102 @@ import fi.solita.utils.functional.Option;
 import fi.solita.utils.functional.Tuple;
 import fi.solita.utils.functional.Tuple3;
 import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.IdSet;
 import fi.solita.utils.query.db.TableInClauseOptimization;
 
 public class OracleSupport implements TableInClauseOptimization {
     
     private final Configuration config;
     
+    // registered table types are static data, resolve them only once
+    private volatile Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> registeredTableTypes;
+    
+    // the registered table type of each value class seen, exact or registered for a superclass, to not scan them on every bind
+    private final ConcurrentMap<Class<?>, Option<Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>>> registeredTypeByClass = new ConcurrentHashMap<Class<?>, Option<Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>>>();
+    
     public OracleSupport(Configuration config) {
         this.config = config;
     }
     
+    public Configuration getConfig() {
+        return config;
+    }
+    
+    private Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> registeredTableTypes() {
+        Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> ret = registeredTableTypes;
+        if (ret == null) {
+            ret = config.getRegisteredTableTypes();
+            registeredTableTypes = ret;
+        }
+        return ret;
+    }
+    
+    Option<Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> registeredType(Class<?> clazz) {
+        Option<Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> ret = registeredTypeByClass.get(clazz);
+        if (ret == null) {
+            Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> regTypes = registeredTableTypes();
+            ret = Option.of(regTypes.get(clazz));
+            if (!ret.isDefined()) {
+                // if no exact type found, try some registered for a superclass
+                for (Entry<Class<?>, Tuple3<String,Option<String>, ? extends Function2<Connection, ?, ?>>> entry: regTypes.entrySet()) {
+                    if (entry.getKey().isAssignableFrom(clazz)) {
+                        ret = Option.<Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>>Some(entry.getValue());
+                        break;
+                    }
+                }
+            }
+            registeredTypeByClass.put(clazz, ret);
+        }
+        return ret;
+    }
+    
+    /**
+     * Resolves eagerly the registered table types, so that binding values of the registered classes is a lookup.
+     */
+    public void prebuild() {
+        for (Class<?> clazz: registeredTableTypes().keySet()) {
+            registeredType(clazz);
+        }
+    }
+    
+    private boolean isRegistered(Class<?> clazz) {
+        return registeredType(clazz).isDefined();
+    }
+    
+    /**
+     * @return the values of an {@link IdSet} as a primitive array, if its ids are bound as plain numbers.
+     */
+    public Option<long[]> primitiveValues(Iterable<?> values) {
+        Option<?> h = headOption(values);
+        if (values instanceof IdSet && h.isDefined() && !isRegistered(h.get().getClass())) {
+            return Some(((IdSet<?>)values).toLongArray());
+        }
+        return None();
+    }
+    
     public Option<Tuple3<String,Option<String>,Apply<Connection,Iterable<Object>>>> getSqlTypeAndValues(final Iterable<?> values) {
         Option<?> h = headOption(values);
         if (!h.isDefined()) {
             return None();
         }
         
-        Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> regTypes = config.getRegisteredTableTypes();
-        
         String t;
         Option<String> o;
         Apply<Connection,Iterable<Object>> v;
-        if (regTypes.containsKey(h.get().getClass())) {
-            final Tuple3<String,Option<String>,? extends Function2<Connection, ?, ?>> tabletypeAndConverter = regTypes.get(h.get().getClass());
-            Tuple3<String,Option<String>,Apply<Connection, Iterable<Object>>> res = foo(tabletypeAndConverter, values);
+        Option<Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> registered = registeredType(h.get().getClass());
+        if (registered.isDefined()) {
+            Tuple3<String,Option<String>,Apply<Connection, Iterable<Object>>> res = foo(registered.get(), values);
             t = res._1;
             o = res._2;
             v = res._3;
         } else {
-            // if no exact type found, try some registered for a superclass
-            for (Entry<Class<?>, Tuple3<String,Option<String>, ? extends Function2<Connection, ?, ?>>> entry: regTypes.entrySet()) {
-                if (entry.getKey().isAssignableFrom(h.get().getClass())) {
-                    return Some(foo(entry.getValue(), values));
-                }
-            }
-            
-            if (h.get() instanceof CharSequence) {
+            if (values instanceof IdSet) {
+                t = "SYS.ODCINUMBERLIST";
+                o = None();
+                @SuppressWarnings("unchecked")
+                Iterable<Object> m = (Iterable<Object>)(Object)((IdSet<?>)values).longValues();
+                v = Function.constant(m);
+            } else if (h.get() instanceof CharSequence) {
                 t = "SYS.ODCIVARCHAR2LIST";
                 o = None();
                 @SuppressWarnings("unchecked")
@@ -94,6 +156,11 @@ public class OracleSupport implements TableInClauseOptimization {
     private static Class<?> ARRAYClass;
     public static Constructor<?> ARRAYConstructor;
     public static Method arrayDescriptorMethod;
+    /** JDBC4 OracleConnection.createOracleArray, if the driver has it */
+    public static Method createOracleArrayMethod;
+    /** OracleConnection.getDescriptor and putDescriptor, the descriptor cache of the connection itself */
+    public static Method getDescriptorMethod;
+    public static Method putDescriptorMethod;
     
     static {
         try {
@@ -110,6 +177,47 @@ public class OracleSupport implements TableInClauseOptimization {
             arrayDescriptorMethod = arrayDescriptorClass.getMethod("createDescriptor", String.class, Connection.class);
         } catch (Exception e) {
         }
+        try {
+            createOracleArrayMethod = oracleConnectionClass.getMethod("createOracleArray", String.class, Object.class);
+        } catch (Exception e) {
+            // older driver, use ArrayDescriptors
+        }
+        try {
+            getDescriptorMethod = oracleConnectionClass.getMethod("getDescriptor", String.class);
+            putDescriptorMethod = oracleConnectionClass.getMethod("putDescriptor", String.class, Object.class);
+        } catch (Exception e) {
+            // rely on createDescriptor
+        }
+    }
+    
+    /**
+     * Binds <i>values</i> as an Oracle collection of type <i>sqlType</i>.
+     * Uses createOracleArray when available, otherwise ArrayDescriptors cached per connection
+     * to avoid a dictionary lookup on every bind. The descriptors are cached in the connection
+     * itself, so that they live exactly as long as it does.
+     * 
+     * @param values an Object array, or a primitive array.
+     */
+    public static void setArray(PreparedStatement st, int index, Connection oracleConnection, String sqlType, Object values) throws Exception {
+        if (createOracleArrayMethod != null) {
+            st.setArray(index, (java.sql.Array) createOracleArrayMethod.invoke(oracleConnection, sqlType, values));
+        } else {
+            Object ad = arrayDescriptor(oracleConnection, sqlType);
+            oraclePreparedStatementMethod.invoke(st.unwrap(oraclePreparedStatementClass), index, ARRAYConstructor.newInstance(ad, oracleConnection, values));
+        }
+    }
+    
+    static Object arrayDescriptor(Connection oracleConnection, String sqlType) throws Exception {
+        // A static cache would have to hold the descriptors strongly, and they refer to their connection.
+        if (getDescriptorMethod == null) {
+            return arrayDescriptorMethod.invoke(null, sqlType, oracleConnection);
+        }
+        Object ad = getDescriptorMethod.invoke(oracleConnection, sqlType);
+        if (ad == null) {
+            ad = arrayDescriptorMethod.invoke(null, sqlType, oracleConnection);
+            putDescriptorMethod.invoke(oracleConnection, sqlType, ad);
+        }
+        return ad;
     }
     
     static final String toStr(CharSequence cs) {
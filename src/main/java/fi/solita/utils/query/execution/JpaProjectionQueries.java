@@ -19,9 +19,11 @@ import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.From;
+import javax.persistence.criteria.Selection;
 
 import fi.solita.utils.functional.ApplyZero;
 import fi.solita.utils.functional.Option;
+import fi.solita.utils.functional.Pair;
 import fi.solita.utils.query.Configuration;
 import fi.solita.utils.query.JpaCriteriaCopy;
 import fi.solita.utils.query.Order;
@@ -29,8 +31,11 @@ import fi.solita.utils.query.Page;
 import fi.solita.utils.query.QueryUtils;
 import fi.solita.utils.query.QueryUtils.NoOrderingSpecifiedException;
 import fi.solita.utils.query.backend.JpaCriteriaQueryExecutor;
+import fi.solita.utils.query.backend.JpaCriteriaQueryExplainer;
 import fi.solita.utils.query.meta.MetaJpaConstructor;
+import fi.solita.utils.query.metrics.SlowQueryLog;
 import fi.solita.utils.query.projection.ProjectionHelper;
+import fi.solita.utils.query.projection.ProjectionPlan;
 import fi.solita.utils.query.projection.ProjectionUtil;
 import fi.solita.utils.query.projection.ProjectionUtil_;
 
@@ -52,11 +57,20 @@ public class JpaProjectionQueries {
         CriteriaQuery<Object> q = em.get().getCriteriaBuilder().createQuery();
         jpaCriteriaCopy.copyCriteriaWithoutSelect(query, q, em.get().getCriteriaBuilder());
         From<?,E> selection = QueryUtils.resolveSelection(query, q);
-        q.multiselect(projectionSupport.prepareProjectingQuery(constructor, selection));
+        List<Selection<?>> selections = projectionSupport.prepareProjectingQuery(constructor, selection, q);
+        Pair<List<Selection<?>>, List<Option<Integer>>> distinct = projectionSupport.distinctSelections(constructor, selections);
+        q.multiselect(distinct._1);
+        projectionSupport.applyGrouping(q, constructor, selections);
         
-        List<Iterable<Object>> res = newList();
-        res.add(ProjectionUtil.objectToObjectList(queryExecutor.get(q, lock)));
-        return head(projectionSupport.finalizeProjectingQuery(constructor, res));
+        MetaJpaConstructor<?,?,?> previous = SlowQueryLog.projecting(constructor);
+        try {
+            List<Iterable<Object>> res = newList();
+            res.add(ProjectionUtil.objectToObjectList(queryExecutor.get(q, lock)));
+            Option<CriteriaQuery<?>> noRootQuery = None();
+            return head(projectionSupport.finalizeProjectingQuery(constructor, res, noRootQuery, distinct._2));
+        } finally {
+            SlowQueryLog.projecting(previous);
+        }
     }
     
     public <E, R> Option<R> find(CriteriaQuery<E> query, MetaJpaConstructor<? super E,? extends R, ?> constructor, LockModeType lock) throws NonUniqueResultException {
@@ -91,6 +105,19 @@ public class JpaProjectionQueries {
     }
     
     public <E,R> List<R> getMany(CriteriaQuery<E> query, MetaJpaConstructor<? super E,? extends R, ?> constructor, Page page, Iterable<? extends Order<? super E,?>> ordering, LockModeType lock) {
+        return doGetMany(query, constructor, page, ordering, lock, false);
+    }
+
+    /**
+     * Like {@link #getMany(CriteriaQuery, MetaJpaConstructor, Page, Iterable, LockModeType)}, but the additional queries are restricted
+     * with a subquery of <i>query</i> instead of its resulting ids. A paged query still uses the ids, since a page cannot be
+     * expressed as a subquery.
+     */
+    public <E,R> List<R> getManyUsingSubquery(CriteriaQuery<E> query, MetaJpaConstructor<? super E,? extends R, ?> constructor, Page page, Iterable<? extends Order<? super E,?>> ordering, LockModeType lock) {
+        return doGetMany(query, constructor, page, ordering, lock, true);
+    }
+    
+    private <E,R> List<R> doGetMany(CriteriaQuery<E> query, MetaJpaConstructor<? super E,? extends R, ?> constructor, Page page, Iterable<? extends Order<? super E,?>> ordering, LockModeType lock, boolean forceSubquery) {
         CriteriaQuery<Object> q = em.get().getCriteriaBuilder().createQuery();
         jpaCriteriaCopy.copyCriteriaWithoutSelect(query, q, em.get().getCriteriaBuilder());
         From<?,E> selection = resolveSelection(query, q);
@@ -98,9 +125,47 @@ public class JpaProjectionQueries {
         @SuppressWarnings("unchecked")
         CriteriaQuery<Object> ordered = (CriteriaQuery<Object>)(Object)applyOrder((CriteriaQuery<E>)(Object)q, selection, ordering, em.get().getCriteriaBuilder());
 
-        q.multiselect(projectionSupport.prepareProjectingQuery(constructor, selection));
+        List<Selection<?>> selections = projectionSupport.prepareProjectingQuery(constructor, selection, q);
+        Pair<List<Selection<?>>, List<Option<Integer>>> distinct = projectionSupport.distinctSelections(constructor, selections);
+        q.multiselect(distinct._1);
+        projectionSupport.applyGrouping(q, constructor, selections);
         
-        List<Object> results = queryExecutor.getMany(ordered, page, lock);
-        return projectionSupport.finalizeProjectingQuery(constructor, map(ProjectionUtil_.objectToObjectList, results));
+        MetaJpaConstructor<?,?,?> previous = SlowQueryLog.projecting(constructor);
+        try {
+            List<Object> results = queryExecutor.getMany(ordered, page, lock);
+            
+            // a page cannot be re-run as a subquery of the additional queries
+            Option<CriteriaQuery<?>> rootQuery = None();
+            if (page == Page.NoPaging) {
+                rootQuery = Option.<CriteriaQuery<?>>Some(ordered);
+            }
+            return projectionSupport.finalizeProjectingQuery(constructor, map(ProjectionUtil_.objectToObjectList, results), rootQuery, forceSubquery, distinct._2);
+        } finally {
+            SlowQueryLog.projecting(previous);
+        }
+    }
+    
+    /**
+     * Builds the query of {@link #getMany(CriteriaQuery, MetaJpaConstructor, Page, Iterable, LockModeType)} without executing it.
+     */
+    public <E> ProjectionPlan explain(CriteriaQuery<E> query, MetaJpaConstructor<? super E,?,?> constructor, Page page, boolean includeDatabasePlan) {
+        CriteriaQuery<Object> q = em.get().getCriteriaBuilder().createQuery();
+        jpaCriteriaCopy.copyCriteriaWithoutSelect(query, q, em.get().getCriteriaBuilder());
+        From<?,E> selection = resolveSelection(query, q);
+
+        List<Order<? super E,?>> noOrdering = Collections.emptyList();
+        @SuppressWarnings("unchecked")
+        CriteriaQuery<Object> ordered = (CriteriaQuery<Object>)(Object)applyOrder((CriteriaQuery<E>)(Object)q, selection, noOrdering, em.get().getCriteriaBuilder());
+
+        List<Selection<?>> selections = projectionSupport.prepareProjectingQuery(constructor, selection, q);
+        Pair<List<Selection<?>>, List<Option<Integer>>> distinct = projectionSupport.distinctSelections(constructor, selections);
+        q.multiselect(distinct._1);
+        projectionSupport.applyGrouping(q, constructor, selections);
+        
+        Option<JpaCriteriaQueryExplainer> explainer = None();
+        if (queryExecutor instanceof JpaCriteriaQueryExplainer) {
+            explainer = Some((JpaCriteriaQueryExplainer) queryExecutor);
+        }
+        return projectionSupport.explain(constructor, ordered, distinct._1, distinct._2, page == Page.NoPaging, explainer, includeDatabasePlan);
     }
 }
@@ -0,0 +1,93 @@
+package fi.solita.utils.query.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends each exported trace to a file as a line containing a JSON array of spans in the
+ * Zipkin v2 format, which can be posted as such to a Zipkin compatible collector.
+ */
+public class JsonFileSpanSink implements SpanSink {
+
+    private final File file;
+    private final String serviceName;
+
+    public JsonFileSpanSink(File file) {
+        this(file, "query-utils");
+    }
+
+    public JsonFileSpanSink(File file, String serviceName) {
+        this.file = file;
+        this.serviceName = serviceName;
+    }
+
+    @Override
+    public synchronized void export(List<Span> spans) {
+        try {
+            Writer w = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+            try {
+                w.write(toJson(spans, serviceName));
+                w.write('\n');
+            } finally {
+                w.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static String toJson(List<Span> spans, String serviceName) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Span span: spans) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append("{\"traceId\":").append(quote(span.traceId))
+              .append(",\"id\":").append(quote(span.id));
+            for (String parentId: span.parentId) {
+                sb.append(",\"parentId\":").append(quote(parentId));
+            }
+            sb.append(",\"name\":").append(quote(span.name))
+              .append(",\"timestamp\":").append(span.timestampMicros)
+              .append(",\"duration\":").append(span.durationMicros)
+              .append(",\"localEndpoint\":{\"serviceName\":").append(quote(serviceName)).append('}')
+              .append(",\"tags\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> tag: span.tags.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append(quote(tag.getKey())).append(':').append(quote(tag.getValue()));
+            }
+            sb.append("}}");
+        }
+        return sb.append(']').toString();
+    }
+
+    static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
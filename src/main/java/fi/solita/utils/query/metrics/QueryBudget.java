@@ -0,0 +1,154 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Functional.mkString;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of statements executed in the current thread between {@link #start(String, int, Mode)}
+ * and {@link #close()}, to catch changes adding round trips (e.g. N+1 selects) early.
+ *
+ * <pre>
+ * QueryBudget budget = dao.budget("departments", 3);
+ * try {
+ *     dao.getMany(query, constructor);
+ * } finally {
+ *     budget.close();
+ * }
+ * </pre>
+ *
+ * Counts the queries executed by query-utils, or, if {@link fi.solita.utils.query.backend.hibernate.BudgetStatementInspector}
+ * is registered for the session factory, all statements prepared by Hibernate including lazy loading.
+ * Statements of other threads are not counted.
+ */
+public final class QueryBudget implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryBudget.class);
+
+    public enum Mode {
+        /**
+         * Throw {@link QueryBudgetExceededException} on close.
+         */
+        FAIL,
+
+        /**
+         * Log a warning on close. Suitable for production.
+         */
+        WARN
+    }
+
+    public static class QueryBudgetExceededException extends RuntimeException {
+        public final List<String> statements;
+
+        public QueryBudgetExceededException(String message, List<String> statements) {
+            super(message);
+            this.statements = statements;
+        }
+    }
+
+    private static final ThreadLocal<QueryBudget> current = new ThreadLocal<QueryBudget>();
+
+    private final String name;
+    private final int maxStatements;
+    private final Mode mode;
+    private final QueryBudget previous;
+    private final List<String> statements = newList();
+    private boolean closed;
+    
+    /**
+     * Whether the statement inspector has counted statements since the last query executed by query-utils.
+     */
+    private boolean inspected;
+
+    private QueryBudget(String name, int maxStatements, Mode mode, QueryBudget previous) {
+        this.name = name;
+        this.maxStatements = maxStatements;
+        this.mode = mode;
+        this.previous = previous;
+    }
+
+    /**
+     * Starts counting the statements of the current thread. A budget started while another is active
+     * counts in place of the outer one until closed, after which its statements are counted also to the outer one.
+     */
+    public static QueryBudget start(String name, int maxStatements, Mode mode) {
+        QueryBudget budget = new QueryBudget(name, maxStatements, mode, current.get());
+        current.set(budget);
+        return budget;
+    }
+
+    public static boolean isActive() {
+        return current.get() != null;
+    }
+
+    /**
+     * Called by the statement inspector on every statement prepared by Hibernate.
+     */
+    public static void inspected(String sql) {
+        QueryBudget budget = current.get();
+        if (budget != null) {
+            budget.statements.add(sql);
+            budget.inspected = true;
+        }
+    }
+
+    /**
+     * Called on every query executed by query-utils. Counted only if the inspector did not already count
+     * its statement, i.e. it was not registered for the session factory executing the query.
+     */
+    static void executed(String fingerprint) {
+        QueryBudget budget = current.get();
+        if (budget != null) {
+            if (!budget.inspected) {
+                budget.statements.add(fingerprint);
+            }
+            budget.inspected = false;
+        }
+    }
+
+    public int getStatementCount() {
+        return statements.size();
+    }
+
+    public List<String> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    public boolean isExceeded() {
+        return statements.size() > maxStatements;
+    }
+
+    /**
+     * Stops counting, and fails or warns if the budget was exceeded.
+     */
+    @Override
+    public void close() throws QueryBudgetExceededException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current.get() == this) {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+        if (previous != null) {
+            previous.statements.addAll(statements);
+        }
+        if (isExceeded()) {
+            String message = "Query budget '" + name + "' of " + maxStatements + " statements exceeded with " + statements.size() + ":\n" + mkString("\n", statements);
+            if (mode == Mode.FAIL) {
+                throw new QueryBudgetExceededException(message, getStatements());
+            }
+            logger.warn(message);
+        }
+    }
+}
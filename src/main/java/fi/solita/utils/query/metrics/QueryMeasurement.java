@@ -0,0 +1,64 @@
+package fi.solita.utils.query.metrics;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.db.InClauseStrategy;
+
+/**
+ * A measured phase of a query.
+ */
+public final class QueryMeasurement {
+
+    public enum Phase {
+        /**
+         * Copying the criteria and compiling the query for execution.
+         */
+        BUILD,
+
+        /**
+         * Executing the query and fetching its results.
+         */
+        EXECUTE,
+
+        /**
+         * Constructing the projection results from the fetched rows.
+         */
+        HYDRATE,
+
+        /**
+         * Completing a projection, including its additional queries.
+         */
+        FINALIZE
+    }
+
+    /**
+     * Structure of the query with the values left out, so that executions of the same query share the same fingerprint.
+     */
+    public final String fingerprint;
+    public final Phase phase;
+    public final long durationNanos;
+
+    /**
+     * Number of rows fetched or produced, if known.
+     */
+    public final Option<Integer> rows;
+
+    /**
+     * Size and strategy of the largest in-restriction of the query, if any.
+     */
+    public final Option<Integer> inListSize;
+    public final Option<InClauseStrategy> inClauseStrategy;
+
+    public QueryMeasurement(String fingerprint, Phase phase, long durationNanos, Option<Integer> rows, Option<Integer> inListSize, Option<InClauseStrategy> inClauseStrategy) {
+        this.fingerprint = fingerprint;
+        this.phase = phase;
+        this.durationNanos = durationNanos;
+        this.rows = rows;
+        this.inListSize = inListSize;
+        this.inClauseStrategy = inClauseStrategy;
+    }
+
+    @Override
+    public String toString() {
+        return phase + " " + durationNanos / 1000 + "us rows=" + rows + " in=" + inListSize + "/" + inClauseStrategy + ": " + fingerprint;
+    }
+}
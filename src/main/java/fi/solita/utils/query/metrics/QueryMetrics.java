@@ -0,0 +1,112 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
+
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.db.InClauseStrategy;
+import fi.solita.utils.query.metrics.QueryMeasurement.Phase;
+
+/**
+ * Reports measurements to the configured {@link QueryMetricsListener}, if any, and the
+ * executed statements to the active {@link QueryTrace} and {@link QueryBudget} of the thread, if any.
+ *
+ * In-restrictions created while constructing a query are attributed to the next query
+ * executed in the same thread.
+ */
+public class QueryMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryMetrics.class);
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern PARAMETER = Pattern.compile(":\\w+|\\?\\d*");
+    private static final Pattern NUMBER = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern VALUE_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final class InClause {
+        final int size;
+        final InClauseStrategy strategy;
+
+        InClause(int size, InClauseStrategy strategy) {
+            this.size = size;
+            this.strategy = strategy;
+        }
+    }
+
+    private static final ThreadLocal<InClause> pendingInClause = new ThreadLocal<InClause>();
+
+    private final Option<QueryMetricsListener> listener;
+
+    public QueryMetrics(Configuration config) {
+        this.listener = config.getQueryMetricsListener();
+    }
+
+    public final boolean isEnabled() {
+        return listener.isDefined() || QueryTrace.isActive() || QueryBudget.isActive();
+    }
+
+    /**
+     * Replaces literals and parameters with <i>?</i> and collapses value lists, so that
+     * executions differing only by their values (or in-list sizes) get the same fingerprint.
+     */
+    public static String fingerprint(String query) {
+        String ret = STRING_LITERAL.matcher(query).replaceAll("?");
+        ret = PARAMETER.matcher(ret).replaceAll("?");
+        ret = NUMBER.matcher(ret).replaceAll("?");
+        ret = VALUE_LIST.matcher(ret).replaceAll("(?)");
+        return WHITESPACE.matcher(ret).replaceAll(" ").trim();
+    }
+
+    /**
+     * Records an in-restriction of the query being constructed. Only the largest one is reported.
+     */
+    public final void inClause(int size, InClauseStrategy strategy) {
+        if (isEnabled()) {
+            InClause previous = pendingInClause.get();
+            if (previous == null || previous.size < size) {
+                pendingInClause.set(new InClause(size, strategy));
+            }
+        }
+    }
+
+    /**
+     * Reports a phase started at <i>startNanos</i>. Reporting the execution of a query completes it,
+     * so the recorded in-restrictions are not attributed to the next one.
+     */
+    public final void measured(Phase phase, String fingerprint, long startNanos, Option<Integer> rows) {
+        if (!isEnabled()) {
+            return;
+        }
+        long duration = System.nanoTime() - startNanos;
+        InClause in = pendingInClause.get();
+        if (phase == Phase.EXECUTE) {
+            pendingInClause.remove();
+        }
+        Option<Integer> inListSize = None();
+        Option<InClauseStrategy> strategy = None();
+        if (in != null && (phase == Phase.BUILD || phase == Phase.EXECUTE)) {
+            inListSize = Some(in.size);
+            strategy = Some(in.strategy);
+        }
+        QueryMeasurement measurement = new QueryMeasurement(fingerprint, phase, duration, rows, inListSize, strategy);
+        if (phase == Phase.EXECUTE) {
+            QueryTrace.statement(measurement, startNanos);
+            QueryBudget.executed(fingerprint);
+        }
+        for (QueryMetricsListener l: listener) {
+            try {
+                l.measured(measurement);
+            } catch (RuntimeException e) {
+                // metrics must not break the queries
+                logger.warn("QueryMetricsListener failed", e);
+            }
+        }
+    }
+}
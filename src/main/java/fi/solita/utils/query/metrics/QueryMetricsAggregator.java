@@ -0,0 +1,207 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Collections.newList;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import fi.solita.utils.query.metrics.QueryMeasurement.Phase;
+
+/**
+ * Aggregates the measurements in memory per (fingerprint, phase), to find the most expensive
+ * queries and projection shapes. Register as an MBean with {@link #register(MBeanServer)}.
+ *
+ * At most <i>maxFingerprints</i> pairs are tracked, measurements of further ones are only counted.
+ */
+public class QueryMetricsAggregator implements QueryMetricsListener, QueryMetricsAggregatorMBean {
+
+    public static final String OBJECT_NAME = "fi.solita.utils.query:type=QueryMetrics";
+
+    private static final class Key {
+        final String fingerprint;
+        final Phase phase;
+
+        Key(String fingerprint, Phase phase) {
+            this.fingerprint = fingerprint;
+            this.phase = phase;
+        }
+
+        @Override
+        public int hashCode() {
+            return fingerprint.hashCode() * 31 + phase.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return fingerprint.equals(other.fingerprint) && phase == other.phase;
+        }
+    }
+
+    /**
+     * Statistics of a (fingerprint, phase) pair at some point in time.
+     */
+    public static final class Statistics {
+        public final String fingerprint;
+        public final Phase phase;
+        public final long count;
+        public final long totalNanos;
+        public final long maxNanos;
+        public final long totalRows;
+        public final int maxInListSize;
+
+        Statistics(String fingerprint, Phase phase, long count, long totalNanos, long maxNanos, long totalRows, int maxInListSize) {
+            this.fingerprint = fingerprint;
+            this.phase = phase;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.totalRows = totalRows;
+            this.maxInListSize = maxInListSize;
+        }
+
+        public long getAverageNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s count=%d total=%.1fms avg=%.3fms max=%.3fms rows/exec=%.1f maxIn=%d: %s",
+                phase, count, totalNanos / 1e6, getAverageNanos() / 1e6, maxNanos / 1e6, count == 0 ? 0 : (double) totalRows / count, maxInListSize, fingerprint);
+        }
+    }
+
+    private static final class Stats {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long totalRows;
+        private int maxInListSize;
+
+        synchronized void record(QueryMeasurement m) {
+            count++;
+            totalNanos += m.durationNanos;
+            maxNanos = Math.max(maxNanos, m.durationNanos);
+            totalRows += m.rows.getOrElse(0);
+            maxInListSize = Math.max(maxInListSize, m.inListSize.getOrElse(0));
+        }
+
+        synchronized Statistics snapshot(Key key) {
+            return new Statistics(key.fingerprint, key.phase, count, totalNanos, maxNanos, totalRows, maxInListSize);
+        }
+    }
+
+    private static final Comparator<Statistics> byTotalTime = new Comparator<Statistics>() {
+        @Override
+        public int compare(Statistics o1, Statistics o2) {
+            return Long.valueOf(o2.totalNanos).compareTo(o1.totalNanos);
+        }
+    };
+
+    private static final Comparator<Statistics> byAverageTime = new Comparator<Statistics>() {
+        @Override
+        public int compare(Statistics o1, Statistics o2) {
+            return Long.valueOf(o2.getAverageNanos()).compareTo(o1.getAverageNanos());
+        }
+    };
+
+    private final int maxFingerprints;
+    private final ConcurrentMap<Key, Stats> stats = new ConcurrentHashMap<Key, Stats>();
+    private final AtomicLong measurements = new AtomicLong();
+
+    public QueryMetricsAggregator() {
+        this(1000);
+    }
+
+    public QueryMetricsAggregator(int maxFingerprints) {
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    @Override
+    public void measured(QueryMeasurement measurement) {
+        measurements.incrementAndGet();
+        Key key = new Key(measurement.fingerprint, measurement.phase);
+        Stats s = stats.get(key);
+        if (s == null) {
+            if (stats.size() >= maxFingerprints) {
+                return;
+            }
+            stats.putIfAbsent(key, new Stats());
+            s = stats.get(key);
+        }
+        s.record(measurement);
+    }
+
+    /**
+     * @return the statistics of all tracked (fingerprint, phase) pairs, slowest total first.
+     */
+    public List<Statistics> getStatistics() {
+        List<Statistics> ret = newList();
+        for (Map.Entry<Key, Stats> e: stats.entrySet()) {
+            ret.add(e.getValue().snapshot(e.getKey()));
+        }
+        Collections.sort(ret, byTotalTime);
+        return ret;
+    }
+
+    @Override
+    public long getMeasurementCount() {
+        return measurements.get();
+    }
+
+    @Override
+    public int getFingerprintCount() {
+        return stats.size();
+    }
+
+    @Override
+    public String[] getSlowestByTotalTime(int limit) {
+        return format(getStatistics(), limit);
+    }
+
+    @Override
+    public String[] getSlowestByAverageTime(int limit) {
+        List<Statistics> all = getStatistics();
+        Collections.sort(all, byAverageTime);
+        return format(all, limit);
+    }
+
+    @Override
+    public void reset() {
+        stats.clear();
+        measurements.set(0);
+    }
+
+    /**
+     * Registers this aggregator to <i>server</i> with name {@value #OBJECT_NAME}.
+     */
+    public ObjectName register(MBeanServer server) {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            server.registerMBean(this, name);
+            return name;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String[] format(List<Statistics> stats, int limit) {
+        int n = Math.max(0, Math.min(limit, stats.size()));
+        String[] ret = new String[n];
+        for (int i = 0; i < n; ++i) {
+            ret[i] = stats.get(i).toString();
+        }
+        return ret;
+    }
+}
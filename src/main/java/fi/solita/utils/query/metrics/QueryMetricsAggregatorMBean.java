@@ -0,0 +1,22 @@
+package fi.solita.utils.query.metrics;
+
+/**
+ * JMX view of {@link QueryMetricsAggregator}.
+ */
+public interface QueryMetricsAggregatorMBean {
+    long getMeasurementCount();
+
+    int getFingerprintCount();
+
+    /**
+     * @return the statistics of the (fingerprint, phase) pairs with the largest total duration, slowest first.
+     */
+    String[] getSlowestByTotalTime(int limit);
+
+    /**
+     * @return the statistics of the (fingerprint, phase) pairs with the largest average duration, slowest first.
+     */
+    String[] getSlowestByAverageTime(int limit);
+
+    void reset();
+}
@@ -0,0 +1,10 @@
+package fi.solita.utils.query.metrics;
+
+/**
+ * Receives the measurements of queries, see {@link fi.solita.utils.query.Configuration#getQueryMetricsListener()}.
+ *
+ * Called synchronously in the thread running the query, so implementations must be thread safe and fast.
+ */
+public interface QueryMetricsListener {
+    void measured(QueryMeasurement measurement);
+}
@@ -0,0 +1,321 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.db.InClauseStrategy;
+
+/**
+ * Records the tree of queries executed in the current thread between {@link #start(String)} and {@link #close()}:
+ * the projections, the additional queries of their parameters and the statements executed for each.
+ *
+ * <pre>
+ * QueryTrace trace = dao.trace("departments");
+ * try {
+ *     dao.getMany(query, constructor);
+ * } finally {
+ *     trace.close();
+ * }
+ * logger.info("{}", trace);
+ * </pre>
+ *
+ * Not thread safe. Queries executed in other threads are not recorded.
+ */
+public final class QueryTrace implements Closeable {
+
+    public enum Kind {
+        /**
+         * The traced call, the root of the tree.
+         */
+        CALL,
+
+        /**
+         * Constructing the results of a projection.
+         */
+        PROJECTION,
+
+        /**
+         * The additional queries of a projection parameter.
+         */
+        ADDITIONAL_QUERY,
+
+        /**
+         * An executed statement.
+         */
+        STATEMENT
+    }
+
+    public static final class Node {
+        public final Kind kind;
+        public final String name;
+
+        /**
+         * The projection parameter triggering an additional query.
+         */
+        public final Option<String> parameter;
+
+        /**
+         * Number of additional queries enclosing this node.
+         */
+        public final int level;
+
+        /**
+         * Number of source ids of an additional query.
+         */
+        public final Option<Integer> ids;
+
+        public final long startNanos;
+        private long durationNanos = -1;
+        private Option<Integer> rows = None();
+        private Option<Integer> inListSize = None();
+        private Option<InClauseStrategy> inClauseStrategy = None();
+        private boolean failed;
+        private final Node parent;
+        private final List<Node> children = newList();
+
+        Node(Kind kind, String name, Option<String> parameter, Option<Integer> ids, long startNanos, Node parent) {
+            this.kind = kind;
+            this.name = name;
+            this.parameter = parameter;
+            this.ids = ids;
+            this.startNanos = startNanos;
+            this.parent = parent;
+            this.level = parent == null ? 0 : parent.level + (kind == Kind.ADDITIONAL_QUERY ? 1 : 0);
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return rows fetched by a statement, or produced by a projection.
+         */
+        public Option<Integer> getRows() {
+            return rows;
+        }
+
+        public Option<Integer> getInListSize() {
+            return inListSize;
+        }
+
+        public Option<InClauseStrategy> getInClauseStrategy() {
+            return inClauseStrategy;
+        }
+
+        /**
+         * @return whether the node was left with an exception.
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public List<Node> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        public int getStatementCount() {
+            int ret = kind == Kind.STATEMENT ? 1 : 0;
+            for (Node child: children) {
+                ret += child.getStatementCount();
+            }
+            return ret;
+        }
+
+        /**
+         * @return rows fetched by all the statements of this subtree.
+         */
+        public long getStatementRows() {
+            long ret = kind == Kind.STATEMENT ? rows.getOrElse(0) : 0;
+            for (Node child: children) {
+                ret += child.getStatementRows();
+            }
+            return ret;
+        }
+
+        void appendTo(StringBuilder sb, String indent) {
+            sb.append(indent).append(kind).append(' ').append(name);
+            for (String p: parameter) {
+                sb.append(" parameter=").append(p);
+            }
+            sb.append(" level=").append(level);
+            for (Integer i: ids) {
+                sb.append(" ids=").append(i);
+            }
+            for (Integer i: inListSize) {
+                sb.append(" in=").append(i).append('/').append(inClauseStrategy.get());
+            }
+            sb.append(String.format(" %.3fms", durationNanos / 1e6));
+            for (Integer r: rows) {
+                sb.append(" rows=").append(r);
+            }
+            if (failed) {
+                sb.append(" FAILED");
+            }
+            sb.append('\n');
+            for (Node child: children) {
+                child.appendTo(sb, indent + "  ");
+            }
+        }
+    }
+
+    private static final ThreadLocal<QueryTrace> current = new ThreadLocal<QueryTrace>();
+    private static final Random random = new Random();
+
+    private final QueryTrace previous;
+    private final Node root;
+    private final long startMillis;
+    private Node open;
+    private boolean closed;
+
+    private QueryTrace(String name, QueryTrace previous) {
+        this.previous = previous;
+        this.startMillis = System.currentTimeMillis();
+        this.root = new Node(Kind.CALL, name, Option.<String>None(), Option.<Integer>None(), System.nanoTime(), null);
+        this.open = root;
+    }
+
+    /**
+     * Starts tracing the current thread. A trace started while another is active
+     * records in place of the outer one until closed.
+     */
+    public static QueryTrace start(String name) {
+        QueryTrace trace = new QueryTrace(name, current.get());
+        current.set(trace);
+        return trace;
+    }
+
+    /**
+     * Stops tracing.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        root.durationNanos = System.nanoTime() - root.startNanos;
+        if (current.get() == this) {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public static boolean isActive() {
+        return current.get() != null;
+    }
+
+    /**
+     * Opens a node under the innermost open node of the active trace, if any. Must be paired with {@link #exit(Option, boolean)}.
+     */
+    public static void enter(Kind kind, String name, Option<String> parameter, Option<Integer> ids) {
+        QueryTrace trace = current.get();
+        if (trace != null) {
+            Node node = new Node(kind, name, parameter, ids, System.nanoTime(), trace.open);
+            trace.open.children.add(node);
+            trace.open = node;
+        }
+    }
+
+    /**
+     * Closes the innermost open node of the active trace, if any.
+     */
+    public static void exit(Option<Integer> rows, boolean failed) {
+        QueryTrace trace = current.get();
+        if (trace != null && trace.open != trace.root) {
+            Node node = trace.open;
+            node.durationNanos = System.nanoTime() - node.startNanos;
+            node.rows = rows;
+            node.failed = failed;
+            trace.open = node.parent;
+        }
+    }
+
+    /**
+     * Records an executed statement under the innermost open node of the active trace, if any.
+     */
+    static void statement(QueryMeasurement measurement, long startNanos) {
+        QueryTrace trace = current.get();
+        if (trace != null) {
+            Node node = new Node(Kind.STATEMENT, measurement.fingerprint, Option.<String>None(), Option.<Integer>None(), startNanos, trace.open);
+            node.durationNanos = measurement.durationNanos;
+            node.rows = measurement.rows;
+            node.failed = !measurement.rows.isDefined();
+            node.inListSize = measurement.inListSize;
+            node.inClauseStrategy = measurement.inClauseStrategy;
+            trace.open.children.add(node);
+        }
+    }
+
+    /**
+     * @return the nodes as spans, parents first.
+     */
+    public List<Span> toSpans() {
+        List<Span> ret = newList();
+        String traceId = hex(random.nextLong());
+        addSpans(ret, traceId, root, Option.<String>None(), new long[] { random.nextLong() });
+        return ret;
+    }
+
+    public void export(SpanSink sink) {
+        sink.export(toSpans());
+    }
+
+    private void addSpans(List<Span> spans, String traceId, Node node, Option<String> parentId, long[] nextId) {
+        String id = hex(nextId[0]++);
+        Map<String, String> tags = new LinkedHashMap<String, String>();
+        tags.put("kind", node.kind.name());
+        tags.put("level", Integer.toString(node.level));
+        for (String p: node.parameter) {
+            tags.put("parameter", p);
+        }
+        for (Integer i: node.ids) {
+            tags.put("ids", i.toString());
+        }
+        for (Integer r: node.rows) {
+            tags.put("rows", r.toString());
+        }
+        for (Integer i: node.inListSize) {
+            tags.put("inListSize", i.toString());
+            tags.put("inClauseStrategy", node.inClauseStrategy.get().name());
+        }
+        if (node.failed) {
+            tags.put("error", "true");
+        }
+        long timestamp = startMillis * 1000 + (node.startNanos - root.startNanos) / 1000;
+        spans.add(new Span(traceId, id, parentId, node.name, timestamp, Math.max(0, node.durationNanos) / 1000, tags));
+        for (Node child: node.children) {
+            addSpans(spans, traceId, child, Some(id), nextId);
+        }
+    }
+
+    private static String hex(long value) {
+        String ret = Long.toHexString(value);
+        while (ret.length() < 16) {
+            ret = "0" + ret;
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        root.appendTo(sb, "");
+        return sb.toString();
+    }
+}
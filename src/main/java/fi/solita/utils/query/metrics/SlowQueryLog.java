@@ -0,0 +1,269 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Functional.mkString;
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.meta.MetaJpaConstructor;
+
+/**
+ * Keeps the latest queries whose execution took at least <i>thresholdMillis</i>, with their sql,
+ * bind values, projection and call site, in a ring buffer of <i>capacity</i> samples.
+ * Enable with {@link fi.solita.utils.query.Configuration#getSlowQueryLog()}, and register
+ * as an MBean with {@link #register(MBeanServer)}.
+ *
+ * Collections of bind values, and the bind values of a query, are truncated to <i>maxValues</i>
+ * values, since the in-lists of a slow query are often the reason it is slow.
+ *
+ * The call site of a sample starts from the first frame whose class name does not start with
+ * any of the <i>internalPrefixes</i>.
+ */
+public class SlowQueryLog implements SlowQueryLogMBean {
+
+    public static final String OBJECT_NAME = "fi.solita.utils.query:type=SlowQueries";
+
+    public static final class Sample {
+        public final long timestampMillis;
+        public final long durationNanos;
+        public final String sql;
+        public final List<String> bindValues;
+        public final Option<String> projection;
+        public final List<StackTraceElement> callSite;
+
+        Sample(long timestampMillis, long durationNanos, String sql, List<String> bindValues, Option<String> projection, List<StackTraceElement> callSite) {
+            this.timestampMillis = timestampMillis;
+            this.durationNanos = durationNanos;
+            this.sql = sql;
+            this.bindValues = Collections.unmodifiableList(bindValues);
+            this.projection = projection;
+            this.callSite = Collections.unmodifiableList(callSite);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%tF %<tT.%<tL %.3f ms", new Date(timestampMillis), durationNanos / 1000000.0));
+            for (String p: projection) {
+                sb.append(" projection ").append(p);
+            }
+            sb.append('\n').append(sql);
+            sb.append("\nbind values: [").append(mkString(", ", bindValues)).append(']');
+            for (StackTraceElement e: callSite) {
+                sb.append("\n    at ").append(e);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * This library, functional-utils and the JDK, e.g. Dao, the projection and the executor.
+     */
+    public static final List<String> DEFAULT_INTERNAL_PREFIXES = Collections.unmodifiableList(newList(
+        "java.", "javax.", "sun.", "jdk.", "fi.solita.utils.query.", "fi.solita.utils.functional."));
+
+    private static final ThreadLocal<MetaJpaConstructor<?,?,?>> projection = new ThreadLocal<MetaJpaConstructor<?,?,?>>();
+
+    private final long thresholdNanos;
+    private final int capacity;
+    private final int maxValues;
+    private final int maxStackDepth;
+    private final List<String> internalPrefixes;
+
+    private final Sample[] samples;
+    private int next;
+    private long count;
+
+    public SlowQueryLog(long thresholdMillis) {
+        this(thresholdMillis, 100, 10, 20);
+    }
+
+    public SlowQueryLog(long thresholdMillis, int capacity, int maxValues, int maxStackDepth) {
+        this(thresholdMillis, capacity, maxValues, maxStackDepth, DEFAULT_INTERNAL_PREFIXES);
+    }
+
+    public SlowQueryLog(long thresholdMillis, int capacity, int maxValues, int maxStackDepth, List<String> internalPrefixes) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.thresholdNanos = thresholdMillis * 1000000;
+        this.capacity = capacity;
+        this.maxValues = maxValues;
+        this.maxStackDepth = maxStackDepth;
+        this.internalPrefixes = newList(internalPrefixes);
+        this.samples = new Sample[capacity];
+    }
+
+    /**
+     * Attributes the queries executed in the current thread to <i>constructor</i>, until called again
+     * with the returned previous one.
+     */
+    public static MetaJpaConstructor<?,?,?> projecting(MetaJpaConstructor<?,?,?> constructor) {
+        MetaJpaConstructor<?,?,?> previous = projection.get();
+        if (constructor == null) {
+            projection.remove();
+        } else {
+            projection.set(constructor);
+        }
+        return previous;
+    }
+
+    public final boolean isSlow(long durationNanos) {
+        return durationNanos >= thresholdNanos;
+    }
+
+    /**
+     * Records a slow query executed by the current thread.
+     */
+    public void record(long durationNanos, String sql, Map<String, ?> bindValues) {
+        List<String> values = newList();
+        for (Map.Entry<String, ?> e: bindValues.entrySet()) {
+            if (values.size() == maxValues) {
+                values.add("... (" + (bindValues.size() - maxValues) + " more)");
+                break;
+            }
+            values.add(e.getKey() + "=" + describe(e.getValue()));
+        }
+        MetaJpaConstructor<?,?,?> p = projection.get();
+        Option<String> constructor = p == null ? Option.<String>None() : Some(MetaJpaConstructor.Helper.toString(p));
+        Sample sample = new Sample(System.currentTimeMillis(), durationNanos, sql, values, constructor, callSite());
+        synchronized (samples) {
+            samples[next] = sample;
+            next = (next + 1) % capacity;
+            count++;
+        }
+    }
+
+    /**
+     * The stack of the caller, excluding the frames of this log and the internal frames in between.
+     */
+    private List<StackTraceElement> callSite() {
+        List<StackTraceElement> ret = newList();
+        boolean skipping = true;
+        for (StackTraceElement e: new Throwable().getStackTrace()) {
+            skipping &= e.getClassName().equals(SlowQueryLog.class.getName()) || isInternal(e.getClassName());
+            if (!skipping) {
+                if (ret.size() == maxStackDepth) {
+                    break;
+                }
+                ret.add(e);
+            }
+        }
+        return ret;
+    }
+
+    private boolean isInternal(String className) {
+        for (String prefix: internalPrefixes) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String describe(Object value) {
+        Option<Iterator<?>> values = None();
+        int size = 0;
+        if (value instanceof Collection) {
+            values = Option.<Iterator<?>>Some(((Collection<?>) value).iterator());
+            size = ((Collection<?>) value).size();
+        } else if (value != null && value.getClass().isArray()) {
+            List<Object> elements = newList();
+            for (int i = 0; i < Array.getLength(value); ++i) {
+                elements.add(Array.get(value, i));
+            }
+            values = Option.<Iterator<?>>Some(elements.iterator());
+            size = elements.size();
+        }
+        if (!values.isDefined()) {
+            return value instanceof String ? "'" + value + "'" : String.valueOf(value);
+        }
+        List<String> ret = newList();
+        for (int i = 0; i < maxValues && values.get().hasNext(); ++i) {
+            ret.add(describe(values.get().next()));
+        }
+        if (size > maxValues) {
+            ret.add("... (" + (size - maxValues) + " more)");
+        }
+        return "[" + mkString(", ", ret) + "]";
+    }
+
+    /**
+     * @return the samples in the buffer, oldest first.
+     */
+    public List<Sample> getSamples() {
+        List<Sample> ret = newList();
+        synchronized (samples) {
+            for (int i = 0; i < capacity; ++i) {
+                Sample s = samples[(next + i) % capacity];
+                if (s != null) {
+                    ret.add(s);
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public long getThresholdMillis() {
+        return thresholdNanos / 1000000;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        synchronized (samples) {
+            return count;
+        }
+    }
+
+    @Override
+    public String[] getLatestSamples() {
+        List<Sample> s = getSamples();
+        String[] ret = new String[s.size()];
+        for (int i = 0; i < ret.length; ++i) {
+            ret[i] = s.get(s.size() - 1 - i).toString();
+        }
+        return ret;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (samples) {
+            for (int i = 0; i < capacity; ++i) {
+                samples[i] = null;
+            }
+            next = 0;
+            count = 0;
+        }
+    }
+
+    /**
+     * Registers this log to <i>server</i> with name {@value #OBJECT_NAME}.
+     */
+    public ObjectName register(MBeanServer server) {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            server.registerMBean(this, name);
+            return name;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
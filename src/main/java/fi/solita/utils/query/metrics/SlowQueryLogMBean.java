@@ -0,0 +1,22 @@
+package fi.solita.utils.query.metrics;
+
+/**
+ * JMX view of {@link SlowQueryLog}.
+ */
+public interface SlowQueryLogMBean {
+    long getThresholdMillis();
+
+    int getCapacity();
+
+    /**
+     * @return number of slow queries recorded, including those no longer in the buffer.
+     */
+    long getSlowQueryCount();
+
+    /**
+     * @return the samples in the buffer, latest first.
+     */
+    String[] getLatestSamples();
+
+    void clear();
+}
@@ -0,0 +1,34 @@
+package fi.solita.utils.query.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+import fi.solita.utils.functional.Option;
+
+/**
+ * A node of a {@link QueryTrace} in the usual distributed tracing form.
+ */
+public final class Span {
+    public final String traceId;
+    public final String id;
+    public final Option<String> parentId;
+    public final String name;
+    public final long timestampMicros;
+    public final long durationMicros;
+    public final Map<String, String> tags;
+
+    public Span(String traceId, String id, Option<String> parentId, String name, long timestampMicros, long durationMicros, Map<String, String> tags) {
+        this.traceId = traceId;
+        this.id = id;
+        this.parentId = parentId;
+        this.name = name;
+        this.timestampMicros = timestampMicros;
+        this.durationMicros = durationMicros;
+        this.tags = Collections.unmodifiableMap(tags);
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + durationMicros + "us " + tags;
+    }
+}
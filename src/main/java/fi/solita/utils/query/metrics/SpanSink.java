@@ -0,0 +1,13 @@
+package fi.solita.utils.query.metrics;
+
+import java.util.List;
+
+/**
+ * Destination of the spans of a {@link QueryTrace}, see {@link QueryTrace#export(SpanSink)}.
+ */
+public interface SpanSink {
+    /**
+     * @param spans the spans of one trace, parents before their children.
+     */
+    void export(List<Span> spans);
+}
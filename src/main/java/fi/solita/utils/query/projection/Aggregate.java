@@ -0,0 +1,35 @@
+package fi.solita.utils.query.projection;
+
+import javax.persistence.metamodel.SingularAttribute;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.attributes.AggregateAttribute;
+
+/**
+ * Aggregate functions to be used as projection parameters of a grouped query, see {@link Project#groupBy}.
+ */
+public abstract class Aggregate {
+
+    /**
+     * Number of rows in the group
+     */
+    public static <E> SingularAttribute<E, Long> count() {
+        return AggregateAttribute.Constructors.count();
+    }
+
+    public static <E, N extends Number> SingularAttribute<E, Option<N>> sum(SingularAttribute<? super E, N> attribute) {
+        return AggregateAttribute.Constructors.sum(attribute);
+    }
+
+    public static <E, N extends Number> SingularAttribute<E, Option<Double>> avg(SingularAttribute<? super E, N> attribute) {
+        return AggregateAttribute.Constructors.avg(attribute);
+    }
+
+    public static <E, N extends Number> SingularAttribute<E, Option<N>> min(SingularAttribute<? super E, N> attribute) {
+        return AggregateAttribute.Constructors.min(attribute);
+    }
+
+    public static <E, N extends Number> SingularAttribute<E, Option<N>> max(SingularAttribute<? super E, N> attribute) {
+        return AggregateAttribute.Constructors.max(attribute);
+    }
+}
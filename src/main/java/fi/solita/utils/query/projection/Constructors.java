@@ -60,6 +60,17 @@ public class Constructors {
     static <E, T extends Tuple> MetaJpaConstructor<E,T,T> tuple(Attribute<? super E,?>... attributes) {
         return new TupleProjection<E,T>(attributes);
     }
+    
+    static <E, R, P> MetaJpaConstructor<E,R,P> groupBy(MetaJpaConstructor<E,R,P> projection) {
+        return new GroupingProjection<E,R,P>(projection);
+    }
+    
+    /**
+     * @return the projection wrapped by {@link Project#groupBy}, or <i>projection</i> itself.
+     */
+    public static <E> MetaJpaConstructor<E,?,?> ungrouped(MetaJpaConstructor<E,?,?> projection) {
+        return projection instanceof GroupingProjection ? ((GroupingProjection<E,?,?>)projection).projection : projection;
+    }
 
     static final class IdProjection<E extends Identifiable<?>> extends MetaJpaConstructor.C1<E,Id<E>, Id<E>> {
         public IdProjection() {
@@ -134,6 +145,47 @@ public class Constructors {
         }
     }
     
+    /**
+     * A projection whose query is grouped by all its parameters except aggregates.
+     */
+    static final class GroupingProjection<E,R,P> implements MetaJpaConstructor<E,R,P> {
+        private final MetaJpaConstructor<E,R,P> projection;
+        
+        public GroupingProjection(MetaJpaConstructor<E,R,P> projection) {
+            this.projection = projection;
+        }
+        
+        @Override
+        public List<Attribute<?, ?>> getParameters() {
+            return projection.getParameters();
+        }
+        
+        @Override
+        public List<Integer> getIndexesOfIdWrappingParameters() {
+            return projection.getIndexesOfIdWrappingParameters();
+        }
+        
+        @Override
+        public List<Class<?>> getConstructorParameterTypes() {
+            return projection.getConstructorParameterTypes();
+        }
+        
+        @Override
+        public Constructor<R> getMember() {
+            return projection.getMember();
+        }
+        
+        @Override
+        public R apply(P t) {
+            return projection.apply(t);
+        }
+        
+        @Override
+        public String toString() {
+            return Helper.className.apply(getClass()) + "(" + projection + ")";
+        }
+    }
+    
     private static final class TupleProjection<E, T extends Tuple> implements MetaJpaConstructor<E,T,T> {
         private final List<Attribute<?, ?>> attributes;
 
@@ -0,0 +1,80 @@
+package fi.solita.utils.query.projection;
+
+import static fi.solita.utils.query.attributes.AttributeProxy.unwrap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.metamodel.Attribute;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fi.solita.utils.query.QueryUtils;
+import fi.solita.utils.query.attributes.PseudoAttribute;
+import fi.solita.utils.query.attributes.RestrictingAttribute;
+
+/**
+ * Joins made for the parameters of a single projecting query, so that the parameters
+ * joining the same attribute path with the same join type share a single join.
+ * Restricted attributes always get a join of their own.
+ */
+final class JoinRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(JoinRegistry.class);
+
+    private static final class Key {
+        final From<?,?> from;
+        final Class<?> declaringType;
+        final String name;
+        final JoinType type;
+
+        Key(From<?,?> from, Attribute<?,?> attribute, JoinType type) {
+            this.from = from;
+            this.declaringType = attribute.getDeclaringType().getJavaType();
+            this.name = attribute.getName();
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(from) * 31 + declaringType.hashCode()) * 31 + name.hashCode()) * 31 + type.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return from == other.from && declaringType.equals(other.declaringType) && name.equals(other.name) && type == other.type;
+        }
+    }
+
+    private final Map<Key, Join<?,?>> joins = new HashMap<Key, Join<?,?>>();
+
+    Join<?,?> join(From<?,?> from, Attribute<?,?> attribute, JoinType type) {
+        if (!isShareable(attribute)) {
+            return QueryUtils.join(from, attribute, type);
+        }
+        Key key = new Key(from, attribute, type);
+        Join<?,?> ret = joins.get(key);
+        if (ret == null) {
+            ret = QueryUtils.join(from, attribute, type);
+            joins.put(key, ret);
+        } else {
+            logger.debug("Reusing join {} for {}", ret, attribute);
+        }
+        return ret;
+    }
+
+    private static boolean isShareable(Attribute<?,?> attribute) {
+        return !unwrap(RestrictingAttribute.class, attribute).isDefined() &&
+               !unwrap(PseudoAttribute.class, attribute).isDefined() &&
+               attribute.getName() != null &&
+               attribute.getDeclaringType() != null;
+    }
+}
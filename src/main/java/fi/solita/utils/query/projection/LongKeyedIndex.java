@@ -0,0 +1,80 @@
+package fi.solita.utils.query.projection;
+
+import static fi.solita.utils.functional.Collections.newList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups values by primitive long keys with open addressing,
+ * to avoid a map entry and a boxed key per grouped row.
+ */
+final class LongKeyedIndex {
+    private long[] keys;
+    // index of the group + 1, zero for an empty slot
+    private int[] slots;
+    private final List<List<Object>> groups = newList();
+
+    LongKeyedIndex(int expectedKeys) {
+        int capacity = 4;
+        while (capacity < expectedKeys * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        slots = new int[capacity];
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (slots[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    void add(long key, Object value) {
+        int i = slot(key);
+        if (slots[i] == 0) {
+            if ((groups.size() + 1) * 2 > keys.length) {
+                rehash();
+                i = slot(key);
+            }
+            groups.add(new ArrayList<Object>(2));
+            keys[i] = key;
+            slots[i] = groups.size();
+        }
+        groups.get(slots[i] - 1).add(value);
+    }
+
+    /**
+     * @return values of the key, or null if none.
+     */
+    List<Object> get(long key) {
+        int i = slot(key);
+        return slots[i] == 0 ? null : groups.get(slots[i] - 1);
+    }
+
+    int size() {
+        return groups.size();
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new int[oldSlots.length * 2];
+        for (int j = 0; j < oldKeys.length; ++j) {
+            if (oldSlots[j] != 0) {
+                int i = slot(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+    }
+}
@@ -111,6 +111,15 @@ public class Project {
         return Constructors.value(attribute);
     }
     
+    /**
+     * Groups the query by the parameters of <i>projection</i>, except for aggregates from {@link Aggregate},
+     * e.g. <code>Project.groupBy(Project.pair(Related.value(Employee_.department, Department_.name), Aggregate.count()))</code>.
+     * Entities cannot be grouped by, group by their ids or attributes instead.
+     */
+    public static <E, R, P> MetaJpaConstructor<E,R,P> groupBy(MetaJpaConstructor<E,R,P> projection) {
+        return Constructors.groupBy(projection);
+    }
+    
     public static <E, LEFT, RIGHT> MetaJpaConstructor<E,Pair<LEFT,RIGHT>,Map.Entry<? extends LEFT,? extends RIGHT>> pair(Attribute<? super E, LEFT> left, Attribute<? super E, RIGHT> right) {
         checkOptionalAttributes(left);
         checkOptionalAttributes(right);
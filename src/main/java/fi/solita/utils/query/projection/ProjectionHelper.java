@@ -6,11 +6,11 @@ import static fi.solita.utils.functional.Collections.newListOfSize;
 import static fi.solita.utils.functional.Collections.newMap;
 import static fi.solita.utils.functional.Collections.newMultimap;
 import static fi.solita.utils.functional.Collections.newSet;
-import static fi.solita.utils.functional.Collections.newSortedSet;
 import static fi.solita.utils.functional.Functional.concat;
 import static fi.solita.utils.functional.Functional.cons;
 import static fi.solita.utils.functional.Functional.exists;
 import static fi.solita.utils.functional.Functional.filter;
+import static fi.solita.utils.functional.Functional.forall;
 import static fi.solita.utils.functional.Functional.flatMap;
 import static fi.solita.utils.functional.Functional.grouped;
 import static fi.solita.utils.functional.Functional.head;
@@ -18,6 +18,7 @@ import static fi.solita.utils.functional.Functional.isEmpty;
 import static fi.solita.utils.functional.Functional.last;
 import static fi.solita.utils.functional.Functional.map;
 import static fi.solita.utils.functional.Functional.max;
+import static fi.solita.utils.functional.Functional.mkString;
 import static fi.solita.utils.functional.Functional.repeat;
 import static fi.solita.utils.functional.Functional.size;
 import static fi.solita.utils.functional.Functional.tail;
@@ -25,8 +26,9 @@ import static fi.solita.utils.functional.Functional.transpose;
 import static fi.solita.utils.functional.Functional.zip;
 import static fi.solita.utils.functional.FunctionalM.find;
 import static fi.solita.utils.functional.FunctionalS.range;
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
 import static fi.solita.utils.functional.Predicates.greaterThanOrEqualTo;
-import static fi.solita.utils.functional.Predicates.lessThanOrEqualTo;
 import static fi.solita.utils.functional.Predicates.not;
 import static fi.solita.utils.query.QueryUtils.addListAttributeOrdering;
 import static fi.solita.utils.query.QueryUtils.checkOptionalAttributes;
@@ -56,13 +58,19 @@ import java.util.SortedSet;
 
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
+import javax.persistence.criteria.AbstractQuery;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
 import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
 import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Selection;
+import javax.persistence.criteria.Subquery;
 import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.Attribute.PersistentAttributeType;
 import javax.persistence.metamodel.Bindable;
@@ -73,25 +81,38 @@ import javax.persistence.metamodel.SingularAttribute;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import fi.solita.utils.functional.Apply;
 import fi.solita.utils.functional.ApplyZero;
 import fi.solita.utils.functional.Collections;
 import fi.solita.utils.functional.Either;
 import fi.solita.utils.functional.Option;
+import fi.solita.utils.functional.Pair;
 import fi.solita.utils.functional.Predicates;
 import fi.solita.utils.functional.Transformer;
+import fi.solita.utils.functional.Tuple2;
 import fi.solita.utils.functional.Tuple3;
 import fi.solita.utils.query.Configuration;
 import fi.solita.utils.query.IEntity;
 import fi.solita.utils.query.Id;
-import fi.solita.utils.query.MultiColumnId;
+import fi.solita.utils.query.JpaCriteriaCopy;
+import fi.solita.utils.query.LongValuedId;
 import fi.solita.utils.query.Page;
 import fi.solita.utils.query.QueryUtils;
 import fi.solita.utils.query.attributes.AdditionalQueryPerformingAttribute;
+import fi.solita.utils.query.attributes.AggregateAttribute;
+import fi.solita.utils.query.attributes.AggregatingAttribute;
 import fi.solita.utils.query.attributes.JoiningAttribute;
+import fi.solita.utils.query.attributes.LimitingAttribute;
+import fi.solita.utils.query.attributes.LiteralAttribute;
 import fi.solita.utils.query.attributes.PseudoAttribute;
 import fi.solita.utils.query.backend.JpaCriteriaQueryExecutor;
+import fi.solita.utils.query.backend.JpaCriteriaQueryExplainer;
 import fi.solita.utils.query.meta.MetaJpaConstructor;
+import fi.solita.utils.query.metrics.QueryMeasurement.Phase;
+import fi.solita.utils.query.metrics.QueryMetrics;
+import fi.solita.utils.query.metrics.QueryTrace;
 import fi.solita.utils.query.projection.Constructors.ExpressionProjection;
+import fi.solita.utils.query.projection.Constructors.GroupingProjection;
 import fi.solita.utils.query.projection.Constructors.IdProjection;
 
 public class ProjectionHelper {
@@ -102,28 +123,47 @@ public class ProjectionHelper {
     private final JpaCriteriaQueryExecutor queryExecutor;
     private final Configuration config;
     private final QueryUtils queryUtils;
+    private final JpaCriteriaCopy jpaCriteriaCopy;
+    private final QueryMetrics metrics;
     
     public ProjectionHelper(ApplyZero<EntityManager> em, JpaCriteriaQueryExecutor queryExecutor, Configuration config) {
         this.em = em;
         this.queryExecutor = queryExecutor;
         this.config = config;
         this.queryUtils = new QueryUtils(config);
+        this.jpaCriteriaCopy = new JpaCriteriaCopy(config);
+        this.metrics = new QueryMetrics(config);
     }
 
     public <E> List<Selection<?>> prepareProjectingQuery(MetaJpaConstructor<E,?,?> projection, From<?,? extends E> selection) {
+        Option<AbstractQuery<?>> noQuery = None();
+        return prepareProjectingQuery(projection, selection, noQuery);
+    }
+    
+    /**
+     * @param query the query of <i>selection</i>, to which the to-many restrictions of the parameters are added as exists-subqueries.
+     */
+    public <E> List<Selection<?>> prepareProjectingQuery(MetaJpaConstructor<E,?,?> projection, From<?,? extends E> selection, AbstractQuery<?> query) {
+        return prepareProjectingQuery(projection, selection, Option.<AbstractQuery<?>>Some(query));
+    }
+    
+    private <E> List<Selection<?>> prepareProjectingQuery(MetaJpaConstructor<E,?,?> projection, From<?,? extends E> selection, Option<AbstractQuery<?>> query) {
         logger.debug("prepareProjectingQuery({},{})", projection, selection);
         
+        // the grouping is applied separately, project like the grouped projection
+        projection = Constructors.ungrouped(projection);
         List<Selection<?>> ret;
         if (projection instanceof IdProjection) {
             logger.debug("IdProjection. Replacing selection {} with just Id.", selection);
             ret = Collections.<Selection<?>>newList(selection.get(QueryUtils.<E,Object>id(selection.getJavaType(), em.get())));
         } else {
             ret = newListOfSize(projection.getParameters().size());
+            JoinRegistry joins = new JoinRegistry();
             for (Tuple3<Integer, Attribute<?,?>, Class<?>> t: zip(range(0), projection.getParameters(), projection.getConstructorParameterTypes())) {
                 int index = t._1;
                 Attribute<?,?> param = t._2;
                 Class<?> constuctorParameterType = t._3;
-                ret.add(transformSelectionForQuery(param, isId(constuctorParameterType) || isWrapperOfIds(projection, index), selection, projection));
+                ret.add(transformSelectionForQuery(param, isId(constuctorParameterType) || isWrapperOfIds(projection, index), selection, projection, query, joins));
             }
         }
         
@@ -131,18 +171,238 @@ public class ProjectionHelper {
         return ret;
     }
     
-    @SuppressWarnings("unchecked")
+    /**
+     * Groups the query of a {@link Project#groupBy} projection by its selections other than aggregates and literals.
+     */
+    public void applyGrouping(CriteriaQuery<?> query, MetaJpaConstructor<?,?,?> projection, List<Selection<?>> selections) {
+        if (projection instanceof GroupingProjection) {
+            List<Expression<?>> grouping = newList();
+            if (query.getGroupList() != null) {
+                grouping.addAll(query.getGroupList());
+            }
+            for (Tuple2<Attribute<?,?>, Selection<?>> t: zip(projection.getParameters(), selections)) {
+                if (t._2 instanceof From) {
+                    // Hibernate would group only by the id while selecting all the columns of the entity
+                    throw new IllegalArgumentException("Cannot group by the entity " + t._1.getName() + ". Group by its id or attributes instead, e.g. with Related.value");
+                }
+                if (!unwrap(AggregateAttribute.class, t._1).isDefined() && t._2 instanceof Path) {
+                    grouping.add((Path<?>)t._2);
+                }
+            }
+            logger.debug("Grouping by: {}", grouping);
+            query.groupBy(grouping);
+        }
+    }
+    
+    /**
+     * Leaves out of the query the literals, which are replaced client-side, and selects each
+     * distinct selection only once. The query result is mapped back with
+     * {@link #finalizeProjectingQuery(MetaJpaConstructor, Iterable, Option, List)}.
+     * 
+     * @param selections from {@link #prepareProjectingQuery}, one per parameter.
+     * @return the selections to query, and for each parameter the index of its column in the query result (None for literals).
+     */
+    public Pair<List<Selection<?>>, List<Option<Integer>>> distinctSelections(MetaJpaConstructor<?,?,?> projection, List<Selection<?>> selections) {
+        List<Selection<?>> distinct = newList();
+        List<Option<Integer>> queryColumns = newListOfSize(selections.size());
+        Map<Object, Integer> indices = newMap();
+        for (Tuple2<Integer, Selection<?>> t: zip(range(0), selections)) {
+            if (!(Constructors.ungrouped(projection) instanceof IdProjection) && unwrap(LiteralAttribute.class, projection.getParameters().get(t._1)).isDefined()) {
+                logger.debug("Literal parameter at {}. Replacing client-side.", t._1);
+                queryColumns.add(Option.<Integer>None());
+                continue;
+            }
+            Object key = selectionKey(t._2);
+            Integer index = indices.get(key);
+            if (index == null) {
+                index = distinct.size();
+                distinct.add(t._2);
+                indices.put(key, index);
+            } else {
+                logger.debug("Selection at {} is already selected at {}", t._1, index);
+            }
+            queryColumns.add(Some(index));
+        }
+        if (distinct.isEmpty()) {
+            // only literals, but a select clause is still needed for the rows
+            distinct.add(head(selections));
+            queryColumns.set(0, Some(0));
+        }
+        return Pair.of(distinct, queryColumns);
+    }
+    
+    /**
+     * Equal for paths of the same attributes from the same From, otherwise the selection itself.
+     */
+    private static Object selectionKey(Selection<?> selection) {
+        if (selection instanceof Path && !(selection instanceof From)) {
+            Path<?> path = (Path<?>) selection;
+            if (path.getParentPath() != null && path.getModel() != null) {
+                return Pair.of(selectionKey(path.getParentPath()), path.getModel());
+            }
+        }
+        return selection;
+    }
+    
     public <R> List<R> finalizeProjectingQuery(MetaJpaConstructor<?,? extends R,?> projection, Iterable<? extends Iterable<Object>> rows) {
+        Option<CriteriaQuery<?>> noRootQuery = None();
+        return finalizeProjectingQuery(projection, rows, noRootQuery);
+    }
+    
+    /**
+     * @param rootQuery the executed unpaged projecting query, if its selections may be used as subqueries of the additional queries.
+     */
+    public <R> List<R> finalizeProjectingQuery(MetaJpaConstructor<?,? extends R,?> projection, Iterable<? extends Iterable<Object>> rows, Option<CriteriaQuery<?>> rootQuery) {
+        List<Option<Integer>> queryColumns = newListOfSize(projection.getParameters().size());
+        for (int i = 0; i < projection.getParameters().size(); ++i) {
+            queryColumns.add(Some(i));
+        }
+        return finalizeProjectingQuery(projection, rows, rootQuery, queryColumns);
+    }
+    
+    /**
+     * @param rootQuery the executed unpaged projecting query, if its selections may be used as subqueries of the additional queries.
+     * @param queryColumns from {@link #distinctSelections}, the column of each parameter in <i>rows</i>.
+     */
+    public <R> List<R> finalizeProjectingQuery(MetaJpaConstructor<?,? extends R,?> projection, Iterable<? extends Iterable<Object>> rows, Option<CriteriaQuery<?>> rootQuery, List<Option<Integer>> queryColumns) {
+        return finalizeProjectingQuery(projection, rows, rootQuery, false, queryColumns);
+    }
+    
+    /**
+     * @param rootQuery the executed unpaged projecting query, if its selections may be used as subqueries of the additional queries.
+     * @param forceSubquery whether to restrict the additional queries with a subquery of <i>rootQuery</i>, if defined,
+     *                      regardless of {@link Configuration#useSubqueryForAdditionalQueries()} and {@link fi.solita.utils.query.ProjectWithSubqueryInClause}.
+     * @param queryColumns from {@link #distinctSelections}, the column of each parameter in <i>rows</i>.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> List<R> finalizeProjectingQuery(MetaJpaConstructor<?,? extends R,?> projection, Iterable<? extends Iterable<Object>> rows, Option<CriteriaQuery<?>> rootQuery, boolean forceSubquery, List<Option<Integer>> queryColumns) {
         logger.debug("finalizeProjectingQuery({},{})", projection, rows);
-        Iterable<Iterable<Object>> columns = transpose(rows);
-        columns = newList(map(performAdditionalQueriesForPlaceholderValues.ap(this).ap(projection), zip(range(0), projection.getParameters(), columns)));
-        List<? extends R> ret = newList(transformAllRows(projection, transpose(columns)));
-        logger.debug("finalizeProjectingQuery -> {}", ret);
-        return (List<R>) ret;
+        boolean tracing = QueryTrace.isActive();
+        if (tracing) {
+            QueryTrace.enter(QueryTrace.Kind.PROJECTION, fingerprint(projection), Option.<String>None(), Option.<Integer>None());
+        }
+        Option<Integer> produced = None();
+        try {
+            long start = System.nanoTime();
+            Iterable<Iterable<Object>> columns = transpose(map(ProjectionHelper_.toParameterRow.ap(queryColumns), rows));
+            columns = newList(map(performAdditionalQueriesForPlaceholderValues.ap(this).ap(projection).ap(rootQuery).ap(forceSubquery).ap(queryColumns), zip(range(0), projection.getParameters(), columns)));
+            long hydrating = System.nanoTime();
+            List<? extends R> ret = newList(transformAllRows(projection, transpose(columns)));
+            produced = Some(ret.size());
+            if (metrics.isEnabled()) {
+                String fingerprint = fingerprint(projection);
+                metrics.measured(Phase.HYDRATE, fingerprint, hydrating, produced);
+                metrics.measured(Phase.FINALIZE, fingerprint, start, produced);
+            }
+            logger.debug("finalizeProjectingQuery -> {}", ret);
+            return (List<R>) ret;
+        } finally {
+            if (tracing) {
+                QueryTrace.exit(produced, !produced.isDefined());
+            }
+        }
+    }
+    
+    /**
+     * Describes the projecting query <i>query</i> without executing it.
+     * 
+     * @param selections the selections of <i>query</i>, from {@link #distinctSelections}.
+     * @param queryColumns from {@link #distinctSelections}, the column of each parameter.
+     * @param rootQueryAvailable whether <i>query</i> is unpaged, so that its selections may be used as subqueries of the additional queries.
+     * @param explainer to describe the sql of <i>query</i>, if the backend can.
+     */
+    public ProjectionPlan explain(MetaJpaConstructor<?,?,?> projection, CriteriaQuery<?> query, List<Selection<?>> selections, List<Option<Integer>> queryColumns, boolean rootQueryAvailable, Option<JpaCriteriaQueryExplainer> explainer, boolean includeDatabasePlan) {
+        logger.debug("explain({},{})", projection, query);
+        List<String> joins = newList();
+        for (Root<?> root: query.getRoots()) {
+            describeJoins(joins, root);
+        }
+        Option<String> rootQuery = None();
+        Option<String> rootSql = None();
+        List<String> databasePlan = newList();
+        for (JpaCriteriaQueryExplainer e: explainer) {
+            rootQuery = Some(e.getQueryString(query));
+            rootSql = Some(e.getSql(query));
+            if (includeDatabasePlan) {
+                databasePlan = e.explain(query);
+            }
+        }
+        return new ProjectionPlan(fingerprint(projection), newList(map(ProjectionHelper_.describe, selections)), joins, planParameters(projection, queryColumns, rootQueryAvailable), rootQuery, rootSql, databasePlan, queryUtils);
+    }
+    
+    /**
+     * Plans the parameters like {@link #performAdditionalQueriesForPlaceholderValues} would perform them.
+     * The entities affecting the in-restrictions are approximated by the target of the relation.
+     */
+    private List<ProjectionPlan.Parameter> planParameters(MetaJpaConstructor<?,?,?> projection, List<Option<Integer>> queryColumns, boolean rootQueryAvailable) {
+        List<ProjectionPlan.Parameter> ret = newList();
+        for (Tuple3<Integer, Attribute<?,?>, Option<Integer>> t: zip(range(0), projection.getParameters(), queryColumns)) {
+            Attribute<?,?> attr = t._2;
+            List<ProjectionPlan.Parameter> nested = emptyList();
+            if (!t._3.isDefined() || unwrap(LiteralAttribute.class, attr).isDefined()) {
+                ret.add(new ProjectionPlan.Parameter(t._1, attr.getName(), ProjectionPlan.ParameterKind.LITERAL, t._3, false, false, nested));
+            } else if (shouldPerformAdditionalQuery(attr)) {
+                Option<AggregatingAttribute> aggregate = unwrap(AggregatingAttribute.class, attr);
+                Attribute<?,?> relation = aggregate.isDefined() ? aggregate.get().getRelation() : attr;
+                List<Class<?>> entities = newList(filter(not(Predicates.isNull()), Collections.<Class<?>>newList(javaType(relation))));
+                boolean subquery = rootQueryAvailable && (config.useSubqueryForAdditionalQueries() || exists(QueryUtils.ImplementsProjectWithSubqueryInClause, entities));
+                boolean regularInClauseOnly = exists(QueryUtils.ImplementsProjectWithRegularInClause, entities);
+                for (AdditionalQueryPerformingAttribute rel: unwrap(AdditionalQueryPerformingAttribute.class, attr)) {
+                    List<Option<Integer>> columns = newList();
+                    for (int i = 0; i < rel.getConstructor().getParameters().size(); ++i) {
+                        columns.add(Some(i));
+                    }
+                    // additional queries of an additional query are restricted by the ids of its results
+                    nested = planParameters(rel.getConstructor(), columns, false);
+                }
+                ret.add(new ProjectionPlan.Parameter(t._1, attr.getName(), ProjectionPlan.ParameterKind.ADDITIONAL_QUERY, t._3, subquery, regularInClauseOnly, nested));
+            } else {
+                ret.add(new ProjectionPlan.Parameter(t._1, attr.getName(), ProjectionPlan.ParameterKind.COLUMN, t._3, false, false, nested));
+            }
+        }
+        return ret;
+    }
+    
+    private static void describeJoins(List<String> joins, From<?,?> from) {
+        for (Join<?,?> join: from.getJoins()) {
+            joins.add(describe(join) + " " + join.getJoinType());
+            describeJoins(joins, join);
+        }
+    }
+    
+    /**
+     * Path of <i>selection</i> from its root entity, e.g. <i>Department.manager.name</i>.
+     */
+    static String describe(Selection<?> selection) {
+        if (selection instanceof Join) {
+            Join<?,?> join = (Join<?,?>) selection;
+            return describe(join.getParent()) + "." + join.getAttribute().getName();
+        }
+        if (selection instanceof From) {
+            return ((From<?,?>) selection).getJavaType().getSimpleName();
+        }
+        if (selection instanceof Path) {
+            Path<?> path = (Path<?>) selection;
+            if (path.getParentPath() != null && path.getModel() instanceof Attribute) {
+                return describe(path.getParentPath()) + "." + ((Attribute<?,?>) path.getModel()).getName();
+            }
+        }
+        return selection.getAlias() != null ? selection.getAlias() : selection.getClass().getSimpleName() + "<" + selection.getJavaType().getSimpleName() + ">";
+    }
+    
+    /**
+     * Constructor and parameter names of <i>projection</i>, identifying its shape in the metrics.
+     */
+    static String fingerprint(MetaJpaConstructor<?,?,?> projection) {
+        return MetaJpaConstructor.Helper.toString(projection) + "[" + mkString(",", map(ProjectionHelper_.attributeName, projection.getParameters())) + "]";
+    }
+    
+    static String attributeName(Attribute<?,?> attr) {
+        return attr.getName();
     }
     
     @SuppressWarnings("unchecked")
-    private <T> Selection<?> transformSelectionForQuery(Attribute<?,?> param, boolean constructorExpectsId, From<?,T> selection, MetaJpaConstructor<?,?,?> projection) {
+    private <T> Selection<?> transformSelectionForQuery(Attribute<?,?> param, boolean constructorExpectsId, From<?,T> selection, MetaJpaConstructor<?,?,?> projection, Option<AbstractQuery<?>> query, JoinRegistry joins) {
         logger.debug("transformSelectionForQuery({},{})", param, selection);
         // This check should actually have already occurred, but just in case we are missing it somewhere...
         checkOptionalAttributes(param);
@@ -150,18 +410,18 @@ public class ProjectionHelper {
         for (PseudoAttribute pseudo: unwrap(PseudoAttribute.class, param)) {
             for (@SuppressWarnings("unused") JoiningAttribute a: unwrap(JoiningAttribute.class, param)) {
                 // use left join here, since were are modifying the existing selection which should still return all the rows
-                selection = (From<?, T>) doJoins(selection, param, JoinType.LEFT)._2;
+                selection = (From<?, T>) doJoins(selection, param, JoinType.LEFT, joins)._2;
             }
             
             logger.debug("PseudoAttribute detected: {}", pseudo);
             Expression<?> s = pseudo.getSelectionForQuery(em.get(), selection);
-            doRestrictions(selection, param); // to restrict e.g. SelfAttribute, if so wanted.
+            restrict(query, selection, param); // to restrict e.g. SelfAttribute, if so wanted.
             return unwrap(AdditionalQueryPerformingAttribute.class, param).isDefined() || constructorExpectsId && IEntity.class.isAssignableFrom(s.getJavaType()) ? ((Path<IEntity<?>>)s).get(id((Class<IEntity<?>>)s.getJavaType(), em.get())) : s;
         }
         
-        if (unwrap(AdditionalQueryPerformingAttribute.class, param).isDefined()) {
+        if (unwrap(AdditionalQueryPerformingAttribute.class, param).isDefined() || unwrap(AggregatingAttribute.class, param).isDefined()) {
             SingularAttribute<T,Id<T>> replacement = id(selection.getJavaType(), em.get());
-            logger.debug("AdditionalQueryPerformingAttribute detected. Replacing selection {} with source Id {}", selection.getJavaType().getSimpleName(), replacement.getName());
+            logger.debug("AdditionalQueryPerformingAttribute or AggregatingAttribute detected. Replacing selection {} with source Id {}", selection.getJavaType().getSimpleName(), replacement.getName());
             return selection.get(replacement);
         }
 
@@ -173,7 +433,7 @@ public class ProjectionHelper {
         
         for (@SuppressWarnings("unused") JoiningAttribute a: unwrap(JoiningAttribute.class, param)) {
             // use left join here, since were are modifying the existing selection which should still return all the rows
-            selection = (From<?, T>) doJoins(selection, param, JoinType.LEFT)._2;
+            selection = (From<?, T>) doJoins(selection, param, JoinType.LEFT, joins)._2;
         }
         
         for (SingularAttribute<T,?> attr: unwrap(SingularAttribute.class, param)) {
@@ -183,7 +443,7 @@ public class ProjectionHelper {
                     return selection.get(attr).get(id(attr.getBindableJavaType(), em.get()));
                 } else {
                     logger.debug("Singular Entity attribute detected. Performing left join.");
-                    return doRestrictions(selection.join(attr, JoinType.LEFT), attr);
+                    return restrict(query, joins.join(selection, attr, JoinType.LEFT), attr);
                 }
             } else if (projection instanceof ExpressionProjection) {
                 logger.debug("Expression detected. Wrapping singularattribute to the expression.");
@@ -195,9 +455,25 @@ public class ProjectionHelper {
         
         throw new IllegalArgumentException("Selection transformation for parameter type " + param.getClass().getName() + " not implemented. Should it be?");
     }
+    
+    private <A extends From<?,?>> A restrict(Option<AbstractQuery<?>> query, A from, Attribute<?,?> param) {
+        for (AbstractQuery<?> q: query) {
+            return ProjectionUtil.doRestrictions(q, em.get().getCriteriaBuilder(), from, param);
+        }
+        return doRestrictions(from, param);
+    }
+
+    static Iterable<Object> toParameterRow(List<Option<Integer>> queryColumns, Iterable<Object> row) {
+        List<Object> values = newList(row);
+        List<Object> ret = newListOfSize(queryColumns.size());
+        for (Option<Integer> column: queryColumns) {
+            ret.add(column.isDefined() ? values.get(column.get()) : PseudoAttribute.QUERY_PLACEHOLDER);
+        }
+        return ret;
+    }
 
     @SuppressWarnings("unchecked")
-    Iterable<Object> performAdditionalQueriesForPlaceholderValues(MetaJpaConstructor<?,?,?> projection, int index, Attribute<?,?> attr, Iterable<Object> values) {
+    Iterable<Object> performAdditionalQueriesForPlaceholderValues(MetaJpaConstructor<?,?,?> projection, Option<CriteriaQuery<?>> rootQuery, boolean forceSubquery, List<Option<Integer>> queryColumns, int index, Attribute<?,?> attr, Iterable<Object> values) {
         logger.debug("performAdditionalQueriesForPlaceholderValues({},{},{},{})", new Object[] {projection, index, attr, values});
         
         Iterable<Object> ret = values;
@@ -205,8 +481,30 @@ public class ProjectionHelper {
             List<Id<IEntity<?>>> ids = (List<Id<IEntity<?>>>)(Object)newList(values);
             if (!ids.isEmpty()) {
                 logger.debug("Preforming additional query for Attribute: {}", attr);
+                Option<Pair<CriteriaQuery<?>,Expression<?>>> rootIds = None();
+                if (rootQuery.isDefined()) {
+                    // the placeholder selected by the root query for this index
+                    Selection<?> selection = rootQuery.get().getSelection();
+                    Expression<?> placeholder = (Expression<?>)(selection.isCompoundSelection() ? selection.getCompoundSelectionItems().get(queryColumns.get(index).get()) : selection);
+                    rootIds = Some(Pair.<CriteriaQuery<?>,Expression<?>>of(rootQuery.get(), placeholder));
+                }
                 Class<?> projectionType = projection.getConstructorParameterTypes().get(index);
-                List<Object> r = doAdditionalQuery(projectionType, (Attribute<IEntity<?>,?>)attr, isId(projectionType), isWrapperOfIds(projection, index), isDistinctable(projection, index), ids);
+                long start = System.nanoTime();
+                boolean tracing = QueryTrace.isActive();
+                if (tracing) {
+                    QueryTrace.enter(QueryTrace.Kind.ADDITIONAL_QUERY, fingerprint(projection) + "#" + index, Some(attr.getName()), Some(ids.size()));
+                }
+                List<Object> r = null;
+                try {
+                    r = doAdditionalQuery(projectionType, (Attribute<IEntity<?>,?>)attr, isId(projectionType), isWrapperOfIds(projection, index), isDistinctable(projection, index), rootIds, forceSubquery, ids);
+                } finally {
+                    if (tracing) {
+                        QueryTrace.exit(r == null ? Option.<Integer>None() : Some(r.size()), r == null);
+                    }
+                }
+                if (metrics.isEnabled()) {
+                    metrics.measured(Phase.FINALIZE, fingerprint(projection) + "#" + index, start, Some(r.size()));
+                }
                 ret = r;
                 if (r.size() != ids.size()) {
                     throw new RuntimeException("Whoops, a bug");
@@ -218,25 +516,22 @@ public class ProjectionHelper {
         return ret;
     }
 
-    private <SOURCE extends IEntity<?>> List<Object> doAdditionalQuery(Class<?> projectionType, Attribute<SOURCE, ?> attr, boolean isId, boolean isWrapperOfIds, boolean isDistinctable, List<Id<SOURCE>> sourceIdsToQuery) {
+    private <SOURCE extends IEntity<?>> List<Object> doAdditionalQuery(Class<?> projectionType, Attribute<SOURCE, ?> attr, boolean isId, boolean isWrapperOfIds, boolean isDistinctable, Option<Pair<CriteriaQuery<?>,Expression<?>>> rootIds, boolean forceSubquery, List<Id<SOURCE>> sourceIdsToQuery) {
         logger.debug("doAdditionalQuery({},{},{},{},{},{})", new Object[] {projectionType, attr, isId, isWrapperOfIds, isDistinctable, sourceIdsToQuery});
-        final Map<?, List<Object>> targetQueryResults = queryTargetsOfSources(attr, isId, isWrapperOfIds, isDistinctable, newSet(sourceIdsToQuery));
+        Apply<Object, List<Object>> targetQueryResults = queryTargetsOfSources(attr, isId, isWrapperOfIds, isDistinctable, rootIds, forceSubquery, newSet(sourceIdsToQuery));
 
-        Iterable<List<Object>> results = map(new Transformer<Object,List<Object>>() {
-            @SuppressWarnings("unchecked")
-            @Override
-            public List<Object> transform(Object source) {
-                return find(source, (Map<Object,List<Object>>)targetQueryResults).getOrElse(emptyList());
-            }
-        }, sourceIdsToQuery);
+        Iterable<List<Object>> results = map(targetQueryResults, sourceIdsToQuery);
         List<Object>ret = newList(map(ProjectionResultUtil_.postProcessResult.ap(projectionType, attr), results));
         logger.debug("doAdditionalQuery -> {}", ret);
         return ret;
     }
     
-    private <SOURCE extends IEntity<?>> Map<Id<SOURCE>,List<Object>> queryTargetsOfSources(final Attribute<SOURCE, ?> target, boolean isId, boolean isWrapperOfIds, boolean isDistinctable, Set<Id<SOURCE>> sourceIds) {
+    /**
+     * @return the results of each source id.
+     */
+    private <SOURCE extends IEntity<?>> Apply<Object,List<Object>> queryTargetsOfSources(final Attribute<SOURCE, ?> target, boolean isId, boolean isWrapperOfIds, boolean isDistinctable, Option<Pair<CriteriaQuery<?>,Expression<?>>> rootIds, boolean forceSubquery, Set<Id<SOURCE>> sourceIds) {
         logger.debug("queryTargetsOfSources({},{},{},{},{})", new Object[] {target, isId, isWrapperOfIds, isDistinctable, sourceIds});
-        Collection<Object[]> results = queryTargets(target, isId, isWrapperOfIds, isDistinctable, sourceIds);
+        Collection<Object[]> results = queryTargets(target, isId, isWrapperOfIds, isDistinctable, rootIds, forceSubquery, sourceIds);
         
         @SuppressWarnings("unchecked")
         Iterable<Id<SOURCE>> ids = (Iterable<Id<SOURCE>>)(Object)map(new Transformer<Object[],Object>() {
@@ -252,8 +547,17 @@ public class ProjectionHelper {
             }
         }, results);
 
+        Option<AggregatingAttribute> aggregate = unwrap(AggregatingAttribute.class, target);
         Iterable<? extends Object> result;
-        if (isCollectionOfEmbeddables(target)) {
+        if (aggregate.isDefined()) {
+            logger.debug("Target is AggregatingAttribute. Picking the aggregates.");
+            result = map(new Transformer<Iterable<Object>,Object>() {
+                @Override
+                public Object transform(Iterable<Object> source) {
+                    return head(source);
+                }
+            }, actualResultRows);
+        } else if (isCollectionOfEmbeddables(target)) {
             logger.debug("Target is a collection of Embeddables. Picking embeddable parts manually.");
             result = map(EmbeddableUtil_.collectEmbeddableFromParts.ap(em.get().getMetamodel(), (Bindable<?>)target), actualResultRows);
         } else {
@@ -280,11 +584,84 @@ public class ProjectionHelper {
             }
         }
         
-        Map<Id<SOURCE>,List<Object>> ret = newMultimap(zip(ids, result));
+        Apply<Object,List<Object>> ret = groupBySource(newList(ids), result, sourceIds.size());
+        for (LimitingAttribute limiting: unwrap(LimitingAttribute.class, target)) {
+            // ties in the ordering may have let a few more rows through the query
+            ret = limitPerSource(ret, limiting.getLimit());
+        }
+        for (final AggregatingAttribute a: aggregate) {
+            // sources without related rows are missing from the grouped results
+            final Apply<Object,List<Object>> resultsOfSource = ret;
+            ret = new Transformer<Object,List<Object>>() {
+                @Override
+                public List<Object> transform(Object source) {
+                    return a.getValueToReplaceResult(resultsOfSource.apply(source));
+                }
+                @Override
+                public String toString() {
+                    return resultsOfSource.toString();
+                }
+            };
+        }
         logger.debug("queryTargetsOfSources -> {}", ret);
         return ret;
     }
     
+    /**
+     * Groups the results by their source ids. Long valued ids are grouped by their primitive values.
+     */
+    static Apply<Object,List<Object>> groupBySource(List<?> ids, Iterable<? extends Object> results, int expectedSources) {
+        if (!ids.isEmpty() && forall(ProjectionHelper_.isLongValuedId, ids)) {
+            final LongKeyedIndex index = new LongKeyedIndex(expectedSources);
+            Iterator<?> idIterator = ids.iterator();
+            for (Object r: results) {
+                index.add(((LongValuedId<?>)idIterator.next()).longValue(), r);
+            }
+            return new Transformer<Object,List<Object>>() {
+                @Override
+                public List<Object> transform(Object source) {
+                    List<Object> ret = source instanceof LongValuedId ? index.get(((LongValuedId<?>)source).longValue()) : null;
+                    return ret == null ? Collections.<Object>emptyList() : ret;
+                }
+                @Override
+                public String toString() {
+                    return index.size() + " sources";
+                }
+            };
+        }
+        
+        @SuppressWarnings("unchecked")
+        final Map<Object,List<Object>> multimap = newMultimap(zip((Iterable<Object>)ids, results));
+        return new Transformer<Object,List<Object>>() {
+            @Override
+            public List<Object> transform(Object source) {
+                return find(source, multimap).getOrElse(emptyList());
+            }
+            @Override
+            public String toString() {
+                return multimap.toString();
+            }
+        };
+    }
+    
+    static Apply<Object,List<Object>> limitPerSource(final Apply<Object,List<Object>> resultsOfSource, final int limit) {
+        return new Transformer<Object,List<Object>>() {
+            @Override
+            public List<Object> transform(Object source) {
+                List<Object> ret = resultsOfSource.apply(source);
+                return ret.size() > limit ? ret.subList(0, limit) : ret;
+            }
+            @Override
+            public String toString() {
+                return resultsOfSource.toString();
+            }
+        };
+    }
+    
+    static boolean isLongValuedId(Object id) {
+        return id instanceof LongValuedId;
+    }
+    
     public static Class<?> javaType(Attribute<?,?> a) {
         return a instanceof Bindable ? ((Bindable<?>)a).getBindableJavaType() : a.getJavaType();
     }
@@ -296,38 +673,37 @@ public class ProjectionHelper {
         };
     };
     
-    private <SOURCE extends IEntity<?>, SOURCE_ID> Collection<Object[]> queryTargets(Attribute<SOURCE, ?> target, boolean isId, boolean isWrapperOfIds, boolean isDistinctable, Set<SOURCE_ID> sourceIds) {
-        Collection<Object[]> ret = queryTargets(target, isId, isWrapperOfIds, isDistinctable, sourceIds, true);
+    private <SOURCE extends IEntity<?>, SOURCE_ID> Collection<Object[]> queryTargets(Attribute<SOURCE, ?> target, boolean isId, boolean isWrapperOfIds, boolean isDistinctable, Option<Pair<CriteriaQuery<?>,Expression<?>>> rootIds, boolean forceSubquery, Set<SOURCE_ID> sourceIds) {
+        Collection<Object[]> ret = queryTargets(target, isId, isWrapperOfIds, isDistinctable, sourceIds, rootIds, forceSubquery, true);
         if (ret == RETRY_IN_PARTS) {
-            SortedSet<Integer> amounts = config.getInClauseValuesAmounts();
-            if (head(sourceIds) instanceof MultiColumnId) {
-                // if there are multiple columns (usually just two), leave out amounts that more than half of the original max value.
-                amounts = newSortedSet(filter(lessThanOrEqualTo(amounts.last() / 2), amounts));
-            }
+            Option<Pair<CriteriaQuery<?>,Expression<?>>> noRootIds = None();
+            // multi column ids are bucketed by tuple count when row value constructors are supported
+            SortedSet<Integer> amounts = queryUtils.inClauseValuesAmounts(sourceIds);
             int maxInClauseSize = max(amounts).get();
             if (size(sourceIds) > maxInClauseSize) {
                 // more than max amount of ids
                 // -> perform multiple queries instead of or:ring to get rid of ridiculous (multi-minute) parse times
                 Iterable<Object[]> results = emptyList();
-                for (List<SOURCE_ID> grp: grouped(maxInClauseSize, sourceIds)) {
+                // sorted, so that each query targets a contiguous range of ids
+                for (List<SOURCE_ID> grp: grouped(maxInClauseSize, QueryUtils.sortedIfComparable(sourceIds))) {
                     Set<SOURCE_ID> group = newSet(grp);
                     if (group.size() < maxInClauseSize) {
                         // pad in-list to the next specified size repeating the last value, to avoid excessive hard parsing
                         int targetSize = head(filter(greaterThanOrEqualTo(group.size()), amounts));
                         group = newSet(concat(group, repeat(last(group), targetSize-group.size())));
                     }
-                    results = concat(results, queryTargets(target, isId, isWrapperOfIds, isDistinctable, group, false));
+                    results = concat(results, queryTargets(target, isId, isWrapperOfIds, isDistinctable, group, noRootIds, false, false));
                 }
                 ret = newList(results);
             } else {
-                ret = queryTargets(target, isId, isWrapperOfIds, isDistinctable, sourceIds, false);
+                ret = queryTargets(target, isId, isWrapperOfIds, isDistinctable, sourceIds, noRootIds, false, false);
             }
         }
         return ret;
     }
     
     @SuppressWarnings("unchecked")
-    private <SOURCE extends IEntity<?>, SOURCE_ID> Collection<Object[]> queryTargets(Attribute<SOURCE, ?> target, boolean isId, boolean isWrapperOfIds, boolean isDistinctable, Set<SOURCE_ID> sourceIds, boolean firstRun) {
+    private <SOURCE extends IEntity<?>, SOURCE_ID> Collection<Object[]> queryTargets(Attribute<SOURCE, ?> target, boolean isId, boolean isWrapperOfIds, boolean isDistinctable, Set<SOURCE_ID> sourceIds, Option<Pair<CriteriaQuery<?>,Expression<?>>> rootIds, boolean forceSubquery, boolean firstRun) {
         logger.debug("queryTargets({},{},{},{},{})", new Object[] {sourceIds, target, isId, isWrapperOfIds, isDistinctable});
         Class<SOURCE> sourceClass = target.getDeclaringType() != null ? target.getDeclaringType().getJavaType() : ((Id<SOURCE>)head(sourceIds)).getOwningClass();
         CriteriaQuery<Object[]> query = em.get().getCriteriaBuilder().createQuery(Object[].class);
@@ -337,9 +713,11 @@ public class ProjectionHelper {
         Either<From<SOURCE,Object>,Attribute<?,?>> relationOrAdditionalGet;
         Map<Attribute<?, ?>, From<?, ?>> actualJoins = newMap();
         From<?,?> last;
-        if (!unwrap(PseudoAttribute.class, target).isDefined()) { 
-            logger.debug("Inner joining from {} to {}", source, target);
-            Tuple3<Map<Attribute<?, ?>, From<?, ?>>, From<?, ?>, Attribute<?, ?>> joined = doJoins(source, target, JoinType.INNER);
+        Option<AggregatingAttribute> aggregate = unwrap(AggregatingAttribute.class, target);
+        Attribute<?,?> relation = aggregate.isDefined() ? aggregate.get().getRelation() : target;
+        if (!unwrap(PseudoAttribute.class, relation).isDefined()) { 
+            logger.debug("Inner joining from {} to {}", source, relation);
+            Tuple3<Map<Attribute<?, ?>, From<?, ?>>, From<?, ?>, Attribute<?, ?>> joined = doJoins(source, relation, JoinType.INNER);
             actualJoins = joined._1;
             if (joined._3.getPersistentAttributeType() != PersistentAttributeType.BASIC) {
                 From<SOURCE,Object> r = (From<SOURCE, Object>) join(joined._2, joined._3, JoinType.INNER);
@@ -352,13 +730,19 @@ public class ProjectionHelper {
             }
         } else {
             logger.debug("Query is for a PseudoAttribute");
-            actualJoins.put(target, source);
+            actualJoins.put(relation, source);
             relationOrAdditionalGet = Either.left((From<SOURCE, Object>)(Object)source);
             last = source;
         }
         
         for (From<?,?> r: relationOrAdditionalGet.left) {
-            ProjectionUtil.doRestrictions(r, target);
+            ProjectionUtil.doRestrictions(query, em.get().getCriteriaBuilder(), r, relation);
+        }
+        
+        Option<LimitingAttribute> limiting = unwrap(LimitingAttribute.class, target);
+        if (limiting.isDefined() && (relationOrAdditionalGet.isRight() || unwrap(JoiningAttribute.class, target).isDefined() || unwrap(PseudoAttribute.class, target).isDefined())) {
+            logger.debug("Cannot rank the elements of {} in the query. Limiting only the results.", target);
+            limiting = None();
         }
         
         Iterable<Class<?>> allEntities = filter(not(Predicates.isNull()), map(ProjectionHelper_.javaType, actualJoins.keySet()));
@@ -368,24 +752,53 @@ public class ProjectionHelper {
         }
         boolean enableInClauseOptimizations = !exists(QueryUtils.ImplementsProjectWithRegularInClause, allEntities);
         logger.debug("Enable in-clause optimizations: {}", enableInClauseOptimizations);
+        boolean useSubquery = rootIds.isDefined() && (forceSubquery || config.useSubqueryForAdditionalQueries() || exists(QueryUtils.ImplementsProjectWithSubqueryInClause, allEntities));
+        logger.debug("Use subquery of the root query: {}", useSubquery);
         
         // execute in parts only if optimizations are not enabled or would not be used
-        if (firstRun && (!enableInClauseOptimizations || !queryUtils.wouldUseInClauseOptimizations(sourceIds))) {
+        if (firstRun && !useSubquery && (!enableInClauseOptimizations || !queryUtils.wouldUseInClauseOptimizations(sourceIds))) {
             return RETRY_IN_PARTS;
         }
         
-        query.where(queryUtils.inExpr(sourceId, sourceIds, em.get().getCriteriaBuilder(), enableInClauseOptimizations));
+        Predicate restriction;
+        if (useSubquery) {
+            restriction = sourceId.in(rootIdsSubquery(query, rootIds.get()));
+        } else {
+            restriction = queryUtils.inExpr(sourceId, sourceIds, em.get().getCriteriaBuilder(), enableInClauseOptimizations);
+        }
+        for (LimitingAttribute l: limiting) {
+            logger.debug("Limiting to the first {} of each source by {}", l.getLimit(), l.getOrdering());
+            restriction = em.get().getCriteriaBuilder().and(restriction, rankedWithinLimit(query, source, target, relationOrAdditionalGet.left.get(), l));
+        }
+        if (query.getRestriction() != null) {
+            // exists-subqueries of the restrictions
+            restriction = em.get().getCriteriaBuilder().and(query.getRestriction(), restriction);
+        }
+        query.where(restriction);
 
         // Would this provide any benefit? Maybe only overhead...
-        if (isDistinctable && config.makeProjectionQueriesDistinct()) {
+        // Not with a limit, since the ordering column is not selected.
+        if (isDistinctable && config.makeProjectionQueriesDistinct() && !limiting.isDefined() && !aggregate.isDefined()) {
             logger.debug("Query is distinctable.");
             query.distinct(true);
         }
 
         setListAttributeOrderings(target, query, actualJoins);
+        for (LimitingAttribute l: limiting) {
+            List<Order> orders = newList(limitOrdering(relationOrAdditionalGet.left.get(), l));
+            if (query.getOrderList() != null) {
+                orders.addAll(query.getOrderList());
+            }
+            query.orderBy(orders);
+        }
         
         Option<AdditionalQueryPerformingAttribute> rel = unwrap(AdditionalQueryPerformingAttribute.class, target);
-        if (isCollectionOfEmbeddables(target)) {
+        if (aggregate.isDefined()) {
+            logger.debug("Target is AggregatingAttribute. Grouping by source.");
+            Path<?> element = (Path<?>) (relationOrAdditionalGet.isRight() ? QueryUtils.get(last, relationOrAdditionalGet.right.get()) : relationOrAdditionalGet.left.get());
+            query.multiselect(sourceId, aggregate.get().getAggregateForQuery(em.get().getCriteriaBuilder(), element));
+            query.groupBy(sourceId);
+        } else if (isCollectionOfEmbeddables(target)) {
             // Must handle collections of embeddables separately, since hibern seems to include only
             // parentid (of the embeddable) in the select clause, but tries to read
             // all fields from the resultset
@@ -393,7 +806,7 @@ public class ProjectionHelper {
             query.multiselect(newList(cons(sourceId, breakEmbeddableToParts(em.get().getMetamodel(), (Bindable<?>)target, relationOrAdditionalGet.left.get()))));
         } else if (rel.isDefined()) {
             logger.debug("Target is AdditionalQueryPerformingAttribute. Preparing.");
-            List<Selection<?>> selections = prepareProjectingQuery((MetaJpaConstructor<Object,?,?>)rel.get().getConstructor(), relationOrAdditionalGet.left.get());
+            List<Selection<?>> selections = prepareProjectingQuery((MetaJpaConstructor<Object,?,?>)rel.get().getConstructor(), relationOrAdditionalGet.left.get(), query);
             if ((isId || isWrapperOfIds) && !Id.class.isAssignableFrom(head(selections).getJavaType())) {
                 logger.debug("Constructor expects an Id (or Ids) but the query was not for Ids. Projection to Id.");
                 if (selections.size() != 1) {
@@ -414,6 +827,9 @@ public class ProjectionHelper {
             }
         }
 
+        if (useSubquery) {
+            jpaCriteriaCopy.createMissingAliasesAfter(rootIds.get()._1, query);
+        }
         Collection<Object[]> ret = queryExecutor.getMany(query, Page.NoPaging, LockModeType.NONE);
         if (logger.isDebugEnabled()) {
             logger.debug("queryTargets -> {}", newList(map(new Transformer<Object[],String>() {
@@ -426,6 +842,52 @@ public class ProjectionHelper {
         return ret;
     }
 
+    /**
+     * Re-runs the root query as a subquery selecting only the placeholder. Aliases are copied,
+     * so the restrictions of the root query apply as such.
+     */
+    @SuppressWarnings("unchecked")
+    private Subquery<Object> rootIdsSubquery(CriteriaQuery<Object[]> query, Pair<CriteriaQuery<?>,Expression<?>> rootIds) {
+        Subquery<Object> subquery = query.subquery((Class<Object>)(Object)rootIds._2.getJavaType());
+        jpaCriteriaCopy.copyCriteriaWithoutSelect(rootIds._1, subquery);
+        subquery.select((Expression<Object>)rootIds._2);
+        return subquery;
+    }
+
+    /**
+     * Restricts the elements to those having less than <i>limit</i> preceding siblings by the ordering.
+     * This is a portable variant of <i>row_number() over (partition by sourceId order by ...)</i>,
+     * which cannot be expressed with the Criteria API.
+     * <p>
+     * The subquery is evaluated for each element, counting its preceding siblings, so a parent of <i>n</i>
+     * elements costs O(n^2) comparisons, or O(n log n) with an index on the foreign key and the ordering column.
+     * Fine for the usual tens of elements per parent, slow for parents of thousands.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Predicate rankedWithinLimit(CriteriaQuery<Object[]> query, Root<?> source, Attribute<?,?> target, From<?,?> element, LimitingAttribute limiting) {
+        CriteriaBuilder cb = em.get().getCriteriaBuilder();
+        Subquery<Long> preceding = query.subquery(Long.class);
+        Root<?> sibling = preceding.from(source.getJavaType());
+        From<?,?> siblingElement = join(sibling, target, JoinType.INNER);
+        
+        SingularAttribute orderBy = limiting.getOrdering().getAttribute();
+        Expression own = element.get(orderBy);
+        Expression other = siblingElement.get(orderBy);
+        preceding.select(cb.count(siblingElement))
+                 .where(cb.equal(sibling, source),
+                        limiting.getOrdering().getDirection() == fi.solita.utils.query.Order.Direction.ASC ? cb.lessThan(other, own) : cb.greaterThan(other, own));
+        // after where, since adds exists-subqueries to it. Inner joins would multiply the count.
+        ProjectionUtil.doRestrictions(preceding, cb, siblingElement, target);
+        return cb.lessThan(preceding, Long.valueOf(limiting.getLimit()));
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Order limitOrdering(From<?,?> element, LimitingAttribute limiting) {
+        Expression<?> e = element.get((SingularAttribute)limiting.getOrdering().getAttribute());
+        CriteriaBuilder cb = em.get().getCriteriaBuilder();
+        return limiting.getOrdering().getDirection() == fi.solita.utils.query.Order.Direction.ASC ? cb.asc(e) : cb.desc(e);
+    }
+
     private void setListAttributeOrderings(Attribute<?, ?> target, CriteriaQuery<Object[]> query, Map<Attribute<?, ?>, From<?, ?>> actualJoins) {
         if (target instanceof JoiningAttribute) {
             logger.debug("Adding orderings based on ListAttributes");
@@ -0,0 +1,176 @@
+package fi.solita.utils.query.projection;
+
+import java.util.Collections;
+import java.util.List;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.QueryUtils;
+import fi.solita.utils.query.db.InClauseStrategy;
+
+/**
+ * What a projecting query would do, see {@link fi.solita.utils.query.Dao#explain}.
+ *
+ * The additional queries are planned from the metamodel, since building them needs the ids of the source rows.
+ * The in-restriction strategies are those of the static limits, an adaptive chooser may choose otherwise.
+ */
+public final class ProjectionPlan {
+
+    public enum ParameterKind {
+        /**
+         * Selected by the query.
+         */
+        COLUMN,
+
+        /**
+         * Replaced client-side.
+         */
+        LITERAL,
+
+        /**
+         * Queried separately for the ids of the source rows.
+         */
+        ADDITIONAL_QUERY
+    }
+
+    public static final class Parameter {
+        public final int index;
+        public final String attribute;
+        public final ParameterKind kind;
+
+        /**
+         * Column of the query for a {@link ParameterKind#COLUMN}.
+         */
+        public final Option<Integer> column;
+
+        /**
+         * Whether an additional query is restricted with a subquery of the root query instead of the source ids.
+         */
+        public final boolean subquery;
+
+        /**
+         * Whether an additional query is restricted only with regular in-lists, see {@link fi.solita.utils.query.ProjectWithRegularInClause}.
+         */
+        public final boolean regularInClauseOnly;
+
+        /**
+         * Parameters of the projection of an additional query.
+         */
+        public final List<Parameter> nested;
+
+        Parameter(int index, String attribute, ParameterKind kind, Option<Integer> column, boolean subquery, boolean regularInClauseOnly, List<Parameter> nested) {
+            this.index = index;
+            this.attribute = attribute;
+            this.kind = kind;
+            this.column = column;
+            this.subquery = subquery;
+            this.regularInClauseOnly = regularInClauseOnly;
+            this.nested = Collections.unmodifiableList(nested);
+        }
+    }
+
+    public final String projection;
+    public final List<String> columns;
+    public final List<String> joins;
+    public final List<Parameter> parameters;
+
+    /**
+     * The root query in the query language of the backend, and its sql, if the backend can tell.
+     */
+    public final Option<String> rootQuery;
+    public final Option<String> rootSql;
+
+    /**
+     * Output of the database for <i>EXPLAIN</i> of the root query, if requested and the database supports it.
+     */
+    public final List<String> databasePlan;
+
+    private final QueryUtils queryUtils;
+
+    ProjectionPlan(String projection, List<String> columns, List<String> joins, List<Parameter> parameters, Option<String> rootQuery, Option<String> rootSql, List<String> databasePlan, QueryUtils queryUtils) {
+        this.projection = projection;
+        this.columns = Collections.unmodifiableList(columns);
+        this.joins = Collections.unmodifiableList(joins);
+        this.parameters = Collections.unmodifiableList(parameters);
+        this.rootQuery = rootQuery;
+        this.rootSql = rootSql;
+        this.databasePlan = Collections.unmodifiableList(databasePlan);
+        this.queryUtils = queryUtils;
+    }
+
+    /**
+     * @return the expected number of statements when the root query returns <i>rootRows</i> rows,
+     *         assuming each additional query has as many source rows.
+     */
+    public int getRoundTrips(int rootRows) {
+        return 1 + (rootRows == 0 ? 0 : roundTrips(parameters, rootRows));
+    }
+
+    /**
+     * @return how the additional query of <i>parameter</i> would be restricted for <i>sourceRows</i> source rows.
+     */
+    public String getRestriction(Parameter parameter, int sourceRows) {
+        if (parameter.subquery) {
+            return "subquery of the root query";
+        }
+        InClauseStrategy strategy = queryUtils.staticInClauseStrategy(sourceRows, !parameter.regularInClauseOnly);
+        if (strategy == InClauseStrategy.IN_LIST) {
+            return strategy + " in " + queryUtils.inClauseChunks(sourceRows) + " queries";
+        }
+        return strategy.toString();
+    }
+
+    private int roundTrips(List<Parameter> params, int rows) {
+        int ret = 0;
+        for (Parameter p: params) {
+            if (p.kind == ParameterKind.ADDITIONAL_QUERY) {
+                boolean single = p.subquery || queryUtils.staticInClauseStrategy(rows, !p.regularInClauseOnly) != InClauseStrategy.IN_LIST;
+                ret += (single ? 1 : queryUtils.inClauseChunks(rows)) + roundTrips(p.nested, rows);
+            }
+        }
+        return ret;
+    }
+
+    private void appendParameters(StringBuilder sb, List<Parameter> params, String indent) {
+        for (Parameter p: params) {
+            sb.append(indent).append(p.index).append(' ').append(p.attribute).append(": ");
+            if (p.kind == ParameterKind.COLUMN) {
+                sb.append("column ").append(p.column.get());
+            } else if (p.kind == ParameterKind.LITERAL) {
+                sb.append("literal");
+            } else {
+                sb.append("additional query by ").append(getRestriction(p, 100)).append(" for 100 sources");
+            }
+            sb.append('\n');
+            appendParameters(sb, p.nested, indent + "    ");
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Projection ").append(projection).append('\n');
+        for (String q: rootQuery) {
+            sb.append("Root query: ").append(q).append('\n');
+        }
+        for (String sql: rootSql) {
+            sb.append("SQL: ").append(sql).append('\n');
+        }
+        sb.append("Columns:\n");
+        for (int i = 0; i < columns.size(); ++i) {
+            sb.append("  ").append(i).append(' ').append(columns.get(i)).append('\n');
+        }
+        sb.append("Joins:\n");
+        for (String join: joins) {
+            sb.append("  ").append(join).append('\n');
+        }
+        sb.append("Parameters:\n");
+        appendParameters(sb, parameters, "  ");
+        if (!databasePlan.isEmpty()) {
+            sb.append("Database plan:\n");
+            for (String row: databasePlan) {
+                sb.append("  ").append(row).append('\n');
+            }
+        }
+        sb.append(String.format("Round trips for 1/100/10000 root rows: %d/%d/%d", getRoundTrips(1), getRoundTrips(100), getRoundTrips(10000)));
+        return sb.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package fi.solita.utils.query.projection;
 
 import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Functional.exists;
 import static fi.solita.utils.functional.Functional.init;
 import static fi.solita.utils.functional.Functional.last;
 import static fi.solita.utils.query.attributes.AttributeProxy.unwrap;
@@ -9,8 +10,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.persistence.criteria.AbstractQuery;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
 import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
 import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.Bindable;
 import javax.persistence.metamodel.PluralAttribute;
@@ -24,6 +31,7 @@ import fi.solita.utils.query.Id;
 import fi.solita.utils.query.NotDistinctable;
 import fi.solita.utils.query.QueryUtils;
 import fi.solita.utils.query.attributes.AdditionalQueryPerformingAttribute;
+import fi.solita.utils.query.attributes.AggregatingAttribute;
 import fi.solita.utils.query.attributes.JoiningAttribute;
 import fi.solita.utils.query.attributes.PseudoAttribute;
 import fi.solita.utils.query.attributes.RestrictingAttribute;
@@ -43,6 +51,7 @@ public class ProjectionUtil {
     static boolean shouldPerformAdditionalQuery(Attribute<?, ?> param) {
         logger.debug("shouldPerformAdditionalQuery({})", param);
         boolean ret = unwrap(AdditionalQueryPerformingAttribute.class, param).isDefined() ||
+               unwrap(AggregatingAttribute.class, param).isDefined() ||
                (unwrap(PluralAttribute.class, param).isDefined() && !unwrap(PseudoAttribute.class, param).isDefined());
         logger.debug("shouldPerformAdditionalQuery -> {}", ret);
         return ret;
@@ -85,10 +94,54 @@ public class ProjectionUtil {
         }
         return from;
     }
+    
+    /**
+     * Like {@link #doRestrictions(From, Attribute)}, but a restriction chain containing a to-many attribute
+     * is added to <i>query</i> as a correlated <i>exists</i>-subquery instead, to not multiply the rows.
+     */
+    static <A extends From<?,?>> A doRestrictions(AbstractQuery<?> query, CriteriaBuilder cb, A from, Attribute<?,?> a) {
+        for (RestrictingAttribute r: unwrap(RestrictingAttribute.class, a)) {
+            if (!exists(ProjectionUtil_.isCollection, r.getRestrictionChain())) {
+                logger.debug("Adding to-one restrictions from: {}", from);
+                From<?, ?> join = from;
+                for (Attribute<?,?> rest: r.getRestrictionChain()) {
+                    logger.debug("Restricting (inner joining) to: {}", rest);
+                    join = QueryUtils.join(join, rest, JoinType.INNER);
+                    doRestrictions(query, cb, join, rest);
+                }
+            } else {
+                logger.debug("Adding to-many restrictions as exists-subquery from: {}", from);
+                Subquery<Integer> subquery = query.subquery(Integer.class);
+                From<?, ?> join = correlate(subquery, from);
+                for (Attribute<?,?> rest: r.getRestrictionChain()) {
+                    logger.debug("Restricting (inner joining in subquery) to: {}", rest);
+                    join = QueryUtils.join(join, rest, JoinType.INNER);
+                    doRestrictions(subquery, cb, join, rest);
+                }
+                subquery.select(cb.literal(1));
+                Predicate restriction = cb.exists(subquery);
+                query.where(query.getRestriction() == null ? restriction : cb.and(query.getRestriction(), restriction));
+            }
+        }
+        return from;
+    }
+    
+    static boolean isCollection(Attribute<?,?> attribute) {
+        return attribute.isCollection();
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static From<?,?> correlate(Subquery<?> subquery, From<?,?> from) {
+        return from instanceof Root ? subquery.correlate((Root)from) : subquery.correlate((Join)from);
+    }
+
+    static Tuple3<Map<Attribute<?,?>,From<?, ?>>, From<?, ?>, Attribute<?,?>> doJoins(From<?,?> root, Attribute<?,?> target, JoinType type) {
+        return doJoins(root, target, type, new JoinRegistry());
+    }
 
     // TODO: needs cleanup...
     @SuppressWarnings("unchecked")
-    static Tuple3<Map<Attribute<?,?>,From<?, ?>>, From<?, ?>, Attribute<?,?>> doJoins(From<?,?> root, Attribute<?,?> target, JoinType type) {
+    static Tuple3<Map<Attribute<?,?>,From<?, ?>>, From<?, ?>, Attribute<?,?>> doJoins(From<?,?> root, Attribute<?,?> target, JoinType type, JoinRegistry joins) {
         logger.debug("doJoins({},{},{})", new Object[] {root, target, type});
         Map<Attribute<?,?>,From<?,?>> actualJoins = new HashMap<Attribute<?, ?>, From<?, ?>>();
         actualJoins.put(target, root);
@@ -98,18 +151,18 @@ public class ProjectionUtil {
             List<? extends Attribute<?, ?>> attributes = joining.getAttributes();
             for (Attribute<?,?> join: init(attributes)) {
                 if (unwrap(JoiningAttribute.class, join).isDefined()) {
-                    Tuple3<Map<Attribute<?,?>,From<?,?>>,From<?,?>,Attribute<?,?>> res = doJoins(previous, join, type);
-                    previous = QueryUtils.join(res._2, join, type);
+                    Tuple3<Map<Attribute<?,?>,From<?,?>>,From<?,?>,Attribute<?,?>> res = doJoins(previous, join, type, joins);
+                    previous = joins.join(res._2, join, type);
                     actualJoins.putAll(res._1);
                 } else {
                     logger.debug("Joining from {} to {} with {}", new Object[]{previous, join, type});
-                    previous = QueryUtils.join(previous, join, type);
+                    previous = joins.join(previous, join, type);
                     actualJoins.put(join, previous);
                 }
             }
             for (Attribute<?,?> join: newList(last(attributes))) {
                 if (unwrap(JoiningAttribute.class, join).isDefined()) {
-                    Tuple3<Map<Attribute<?,?>,From<?,?>>,From<?,?>,Attribute<?,?>> res = doJoins(previous, join, type);
+                    Tuple3<Map<Attribute<?,?>,From<?,?>>,From<?,?>,Attribute<?,?>> res = doJoins(previous, join, type, joins);
                     previous = res._2;
                     actualJoins.putAll(res._1);
                 }
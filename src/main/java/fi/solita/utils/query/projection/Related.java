@@ -5,11 +5,16 @@ import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.Bindable;
 import javax.persistence.metamodel.CollectionAttribute;
 import javax.persistence.metamodel.ListAttribute;
+import javax.persistence.metamodel.PluralAttribute;
 import javax.persistence.metamodel.SetAttribute;
 import javax.persistence.metamodel.SingularAttribute;
 
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.Order;
 import fi.solita.utils.query.attributes.AdditionalQueryPerformingAttribute;
+import fi.solita.utils.query.attributes.AggregatingAttribute;
 import fi.solita.utils.query.attributes.JoiningAttribute;
+import fi.solita.utils.query.attributes.LimitingAttribute;
 import fi.solita.utils.query.meta.MetaJpaConstructor;
 
 public abstract class Related {
@@ -438,4 +443,66 @@ public abstract class Related {
     ListAttribute<E, R> projection(ListAttribute<? super E, E2> relation, MetaJpaConstructor<? super E2, R, ?> constructor) {
         return AdditionalQueryPerformingAttribute.Constructors.relation(relation, constructor);
     }
+    
+    /**
+     * Only the first <i>limit</i> elements of the collection by <i>ordering</i> for each parent,
+     * e.g. the latest 5 employees of each department.
+     * <p>
+     * Ranked with a correlated subquery counting the preceding elements of each element, which is quadratic
+     * in the number of elements of a parent. Index the foreign key together with the ordering column.
+     */
+    public static <E, R>
+    CollectionAttribute<E, R> limit(CollectionAttribute<E, R> relation, int limit, Order<? super R,?> ordering) {
+        return LimitingAttribute.Constructors.collection(relation, limit, ordering);
+    }
+    
+    /**
+     * Only the first <i>limit</i> elements of the set by <i>ordering</i> for each parent.
+     */
+    public static <E, R>
+    SetAttribute<E, R> limit(SetAttribute<E, R> relation, int limit, Order<? super R,?> ordering) {
+        return LimitingAttribute.Constructors.set(relation, limit, ordering);
+    }
+    
+    /**
+     * Only the first <i>limit</i> elements of the list by <i>ordering</i> for each parent.
+     */
+    public static <E, R>
+    ListAttribute<E, R> limit(ListAttribute<E, R> relation, int limit, Order<? super R,?> ordering) {
+        return LimitingAttribute.Constructors.list(relation, limit, ordering);
+    }
+    
+    /**
+     * Number of the related rows of each parent, e.g. the number of employees of each department.
+     */
+    public static <E>
+    SingularAttribute<E, Long> count(PluralAttribute<E, ?, ?> relation) {
+        return AggregatingAttribute.Constructors.count(relation);
+    }
+    
+    /**
+     * Whether each parent has any related rows.
+     */
+    public static <E>
+    SingularAttribute<E, Boolean> exists(PluralAttribute<E, ?, ?> relation) {
+        return AggregatingAttribute.Constructors.exists(relation);
+    }
+    
+    /**
+     * Sum of <i>value</i> over the related rows of each parent, None if there are none.
+     */
+    public static <E, R, N extends Number>
+    SingularAttribute<E, Option<N>> sum(PluralAttribute<E, ?, R> relation, SingularAttribute<? super R, N> value) {
+        return AggregatingAttribute.Constructors.sum(relation, value);
+    }
+    
+    public static <E, R, N extends Number>
+    SingularAttribute<E, Option<N>> min(PluralAttribute<E, ?, R> relation, SingularAttribute<? super R, N> value) {
+        return AggregatingAttribute.Constructors.min(relation, value);
+    }
+    
+    public static <E, R, N extends Number>
+    SingularAttribute<E, Option<N>> max(PluralAttribute<E, ?, R> relation, SingularAttribute<? super R, N> value) {
+        return AggregatingAttribute.Constructors.max(relation, value);
+    }
 }
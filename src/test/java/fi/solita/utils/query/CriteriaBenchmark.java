@@ -0,0 +1,95 @@
+package fi.solita.utils.query;
+
+import static fi.solita.utils.functional.Collections.newSet;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fi.solita.utils.query.benchmark.BenchmarkContext;
+
+/**
+ * Building the in-restrictions of <i>values</i> values, and copying a criteria query with <i>restrictions</i> restrictions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CriteriaBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int values;
+
+    @Param({"1", "10"})
+    public int restrictions;
+
+    private BenchmarkContext context;
+    private CriteriaBuilder cb;
+    private QueryUtils queryUtils;
+    private JpaCriteriaCopy jpaCriteriaCopy;
+    private Set<Integer> inValues;
+    private CriteriaQuery<Employee> query;
+    private Expression<Integer> number;
+
+    @Setup
+    public void setup() {
+        context = new BenchmarkContext();
+        cb = context.getEntityManagerFactory().getCriteriaBuilder();
+        Configuration config = context.getBean(Configuration.class);
+        queryUtils = new QueryUtils(config);
+        jpaCriteriaCopy = new JpaCriteriaCopy(config);
+
+        inValues = newSet();
+        for (int i = 0; i < values; ++i) {
+            inValues.add(i * 2);
+        }
+
+        query = cb.createQuery(Employee.class);
+        Root<Employee> root = query.from(Employee.class);
+        Join<Employee, Department> dep = root.join(Employee_.mandatoryDepartment);
+        number = dep.get(Department_.mandatoryNumber);
+        Predicate[] predicates = new Predicate[restrictions];
+        for (int i = 0; i < restrictions; ++i) {
+            predicates[i] = i % 2 == 0 ? cb.notEqual(dep.get(Department_.mandatoryNumber), i) : cb.like(root.get(Employee_.mandatoryName), "name" + i + "%");
+        }
+        query.where(predicates).orderBy(cb.asc(root.get(Employee_.mandatoryName)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Predicate inExpr() {
+        return queryUtils.inExpr(number, inValues, cb);
+    }
+
+    @Benchmark
+    public CriteriaQuery<Object> copyCriteriaWithoutSelect() {
+        CriteriaQuery<Object> to = cb.createQuery();
+        jpaCriteriaCopy.copyCriteriaWithoutSelect(query, to, cb);
+        return to;
+    }
+}
@@ -114,6 +114,11 @@ public class Department implements IEntity<Department>, Identifiable<Department.
         this(mandatoryName, number, new Report(0));
     }
 
+    public Department(String mandatoryName, int number, Municipality municipality) {
+        this(mandatoryName, number);
+        this.optionalDepMunicipality = municipality;
+    }
+
     public Department(String mandatoryName, int number, Report report) {
         this.mandatoryDepName = mandatoryName;
         this.mandatoryNumber = number;
@@ -0,0 +1,11 @@
+package fi.solita.utils.query;
+
+import org.hibernate.dialect.H2Dialect;
+
+import fi.solita.utils.query.backend.hibernate.TemporaryTableFunction;
+
+public class H2TestDialect extends H2Dialect {
+    public H2TestDialect() {
+        registerFunction("table", new TemporaryTableFunction());
+    }
+}
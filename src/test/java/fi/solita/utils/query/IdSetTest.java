@@ -0,0 +1,70 @@
+package fi.solita.utils.query;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Collections.newSet;
+import static fi.solita.utils.functional.Functional.map;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.functional.Function1;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.generation.Restrict;
+
+public class IdSetTest extends QueryTestBase {
+
+    @Autowired
+    private Restrict restrict;
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private Dao dao;
+
+    private static final Function1<Long, Department.ID> toId = new Function1<Long, Department.ID>() {
+        @Override
+        public Department.ID apply(Long t) {
+            return (Department.ID) new Department.ID().setId(t);
+        }
+    };
+
+    @Test
+    public void sortedAndDistinct() {
+        IdSet<Department> ids = IdSet.of(toId, 3, 1, 2, 3, 1);
+
+        assertEquals(3, ids.size());
+        assertArrayEquals(new long[] {1, 2, 3}, ids.toLongArray());
+        assertEquals(newList(toId.apply(1l), toId.apply(2l), toId.apply(3l)), newList(ids));
+        assertTrue(ids.contains(toId.apply(2l)));
+        assertFalse(ids.contains(toId.apply(4l)));
+        assertEquals(newSet(toId.apply(1l), toId.apply(2l), toId.apply(3l)), ids);
+    }
+
+    @Test
+    public void grouped() {
+        IdSet<Department> ids = IdSet.of(toId, 1, 2, 3, 4, 5);
+
+        assertEquals(3, ids.grouped(2).size());
+        assertArrayEquals(new long[] {5}, ids.grouped(2).get(2).toLongArray());
+    }
+
+    @Test
+    public void including() {
+        Department dep1 = new Department();
+        Department dep2 = new Department();
+        Department dep3 = new Department();
+        persist(dep1, dep2, dep3);
+
+        IdSet<Department> ids = IdSet.copyOf(toId, newList(dep1.getId(), dep3.getId()));
+
+        Set<Department.ID> result = newSet(map(Department_.getId, dao.getMany(restrict.including(ids, query.all(Department.class)))));
+        assertEquals(newSet(dep1.getId(), dep3.getId()), result);
+    }
+}
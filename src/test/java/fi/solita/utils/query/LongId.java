@@ -8,7 +8,7 @@ import javax.persistence.MappedSuperclass;
 
 @MappedSuperclass
 @Access(AccessType.FIELD)
-class LongId<T> implements Id<T>, Serializable {
+class LongId<T> implements LongValuedId<T>, Serializable {
 
     private long id;
 
@@ -29,6 +29,11 @@ class LongId<T> implements Id<T>, Serializable {
         this.id = id;
         return this;
     }
+    
+    @Override
+    public long longValue() {
+        return id;
+    }
 
     @Override
     public String toString() {
@@ -2,14 +2,17 @@ package fi.solita.utils.query;
 
 import static fi.solita.utils.functional.Collections.newList;
 import static fi.solita.utils.functional.Collections.newSet;
+import static fi.solita.utils.functional.Collections.newSortedSet;
 import static fi.solita.utils.query.QueryUtils.isRequiredByMetamodel;
 import static fi.solita.utils.query.QueryUtils.isRequiredByQueryAttribute;
 import static fi.solita.utils.query.QueryUtils_.isRequiredByMetamodel;
 import static fi.solita.utils.query.QueryUtils_.isRequiredByQueryAttribute;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
+import java.util.SortedSet;
 
 import javax.persistence.metamodel.Attribute;
 
@@ -256,4 +259,37 @@ public class QueryUtilsTest extends QueryTestBase {
         assertTrue("option", isRequiredByQueryAttribute(Related.projection(Employee_.mandatoryDepartment, Project.pair(Department_.mandatoryDepName, Department_.optionSize))));
         assertTrue("option", isRequiredByQueryAttribute(Related.projection(Employee_.mandatoryDepartment, Dto_.c2(Select.literal(Dto.VALUE._), Department_.optionSize))));
     }
+    
+    static class CompositeId implements MultiColumnId {
+    }
+    
+    private static QueryUtils queryUtils(final boolean rowValues) {
+        return new QueryUtils(new DefaultConfiguration() {
+            @Override
+            public SortedSet<Integer> getInClauseValuesAmounts() {
+                return newSortedSet(newList(10, 100, 1000));
+            }
+            
+            @Override
+            public boolean supportsRowValueConstructorSyntaxInInList() {
+                return rowValues;
+            }
+        });
+    }
+    
+    @Test
+    public void multiColumnIdsAreBucketedByTupleCountWithRowValues() {
+        List<CompositeId> ids = newList(new CompositeId(), new CompositeId());
+        
+        assertEquals(newSortedSet(newList(10, 100, 1000)), queryUtils(true).inClauseValuesAmounts(ids));
+        assertEquals("without row values", newSortedSet(newList(10, 100)), queryUtils(false).inClauseValuesAmounts(ids));
+        assertEquals("single column", newSortedSet(newList(10, 100, 1000)), queryUtils(false).inClauseValuesAmounts(newList(1L, 2L)));
+    }
+    
+    @Test
+    public void halvedSingleAmountIsKept() {
+        List<CompositeId> ids = newList(new CompositeId());
+        
+        assertEquals(newSortedSet(newList(500)), new QueryUtils(new DefaultConfiguration()).inClauseValuesAmounts(ids));
+    }
 }
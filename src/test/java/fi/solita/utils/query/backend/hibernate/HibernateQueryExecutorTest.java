@@ -0,0 +1,88 @@
+package fi.solita.utils.query.backend.hibernate;
+
+import static fi.solita.utils.functional.Option.Some;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.persistence.LockModeType;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.EntityManagerProvider;
+import fi.solita.utils.query.Page;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.db.AdaptiveInClauseStrategy;
+import fi.solita.utils.query.db.InClauseStrategy;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+
+public class HibernateQueryExecutorTest extends QueryTestBase {
+
+    private static final Set<InClauseStrategy> all = EnumSet.allOf(InClauseStrategy.class);
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private EntityManagerProvider emProvider;
+
+    @Autowired
+    private HibernateTypeProvider typeProvider;
+
+    @Autowired
+    private Configuration defaultConfig;
+
+    private final AdaptiveInClauseStrategy adaptive = new AdaptiveInClauseStrategy(0, 1, 0.5);
+
+    private HibernateQueryExecutor executor() {
+        return new HibernateQueryExecutor(emProvider, typeProvider, new DefaultHibernateConfiguration() {
+            @Override
+            public Option<AdaptiveInClauseStrategy> getAdaptiveInClauseStrategy() {
+                return Some(adaptive);
+            }
+        });
+    }
+
+    @After
+    public void restoreConfiguration() {
+        OracleTableValueType.config = defaultConfig;
+    }
+
+    @Test
+    public void recordsSuccessfulExecutions() {
+        adaptive.choose(Department.class, 10, InClauseStrategy.MEMBER_OF, all);
+        executor().getMany(query.all(Department.class), Page.NoPaging, LockModeType.NONE);
+
+        assertTrue(adaptive.getAverageNanos(Department.class, 10, InClauseStrategy.MEMBER_OF).isDefined());
+    }
+
+    @Test
+    public void doesNotRecordFailedExecutions() {
+        persist(new Department());
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Department> failing = cb.createQuery(Department.class);
+        failing.select(failing.from(Department.class));
+        failing.where(cb.equal(cb.quot(cb.literal(1), cb.literal(0)), 1));
+
+        adaptive.choose(Department.class, 10, InClauseStrategy.MEMBER_OF, all);
+        try {
+            executor().getMany(failing, Page.NoPaging, LockModeType.NONE);
+            fail("division by zero");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        // the choice must not be left for the next query either
+        adaptive.executed(100);
+        assertFalse(adaptive.getAverageNanos(Department.class, 10, InClauseStrategy.MEMBER_OF).isDefined());
+    }
+}
@@ -0,0 +1,80 @@
+package fi.solita.utils.query.backend.hibernate;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.engine.query.spi.QueryPlanCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.EntityManagerProvider;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.projection.Project;
+import fi.solita.utils.query.projection.Related;
+
+public class HibernateQueryWarmupTest extends QueryTestBase {
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private EntityManagerProvider emProvider;
+
+    @Autowired
+    private HibernateTypeProvider typeProvider;
+
+    @Autowired
+    private Configuration config;
+
+    @Autowired
+    private Dao dao;
+
+    private HibernateQueryWarmup warmup() {
+        return new HibernateQueryWarmup(emProvider, typeProvider, config);
+    }
+
+    /**
+     * Hibernate 5.0 has no statistic of query plan cache misses, so the compiled plans are counted from the cache.
+     */
+    private int cachedQueryPlans() throws Exception {
+        Field plans = QueryPlanCache.class.getDeclaredField("queryPlanCache");
+        plans.setAccessible(true);
+        return ((Map<?,?>) plans.get(((SessionFactoryImplementor) em.unwrap(Session.class).getSessionFactory()).getQueryPlanCache())).size();
+    }
+
+    @Test
+    public void compilesWithoutExecuting() throws Exception {
+        long queryCount = getQueryCount();
+
+        int warmed = warmup().register(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))))
+                             .register(query.all(Employee.class))
+                             .register("from Employee e where e.mandatoryName = :name")
+                             .registerParameterType(String.class)
+                             .warmUp(2);
+
+        assertEquals(4, warmed);
+        assertEquals(queryCount, getQueryCount());
+        
+        // no departments, so only the warmed root query is executed
+        int plans = cachedQueryPlans();
+        dao.getMany(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))));
+        assertEquals(queryCount + 1, getQueryCount());
+        assertEquals(plans, cachedQueryPlans());
+    }
+
+    @Test
+    public void failuresDoNotPreventStartup() {
+        assertEquals(1, warmup().register("from NoSuchEntity").register("from Department").warmUp(2));
+    }
+}
@@ -0,0 +1,32 @@
+package fi.solita.utils.query.backend.hibernate;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.EntityManagerProvider;
+import fi.solita.utils.query.Money;
+import fi.solita.utils.query.QueryTestBase;
+
+public class HibernateTypeProviderTest extends QueryTestBase {
+
+    @Autowired
+    private EntityManagerProvider emProvider;
+
+    @Test
+    public void resolvesTypesOnce() {
+        HibernateTypeProvider typeProvider = new HibernateTypeProvider(emProvider);
+        assertSame(typeProvider.type(Department.class), typeProvider.type(Department.class));
+        assertSame(typeProvider.type(Money.class), typeProvider.type(Money.class));
+        assertSame(typeProvider.idType(Department.class), typeProvider.idType(Department.class));
+    }
+
+    @Test
+    public void prebuildsMappedTypes() {
+        HibernateTypeProvider typeProvider = new HibernateTypeProvider(emProvider);
+        assertTrue(typeProvider.prebuild() > 0);
+    }
+}
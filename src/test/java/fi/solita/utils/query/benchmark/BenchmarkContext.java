@@ -0,0 +1,72 @@
+package fi.solita.utils.query.benchmark;
+
+import java.io.Closeable;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import fi.solita.utils.functional.ApplyZero;
+
+/**
+ * The application context of the tests, with the in-memory H2 database, for running benchmarks
+ * outside of the test runner.
+ */
+public class BenchmarkContext implements Closeable {
+
+    private final GenericApplicationContext context;
+
+    public BenchmarkContext() {
+        this("classpath:/testApplicationContext.xml");
+    }
+
+    public BenchmarkContext(String... configLocations) {
+        context = new GenericApplicationContext();
+        // @PersistenceContext injection, as the test runner does
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+        new XmlBeanDefinitionReader(context).loadBeanDefinitions(configLocations);
+        context.refresh();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return context.getBean(EntityManagerFactory.class);
+    }
+
+    /**
+     * The transactional EntityManager of the current thread.
+     */
+    public EntityManager getEntityManager() {
+        return EntityManagerFactoryUtils.getTransactionalEntityManager(getEntityManagerFactory());
+    }
+
+    public Statistics getStatistics() {
+        return getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    public <T> T inTransaction(final ApplyZero<T> f) {
+        return new TransactionTemplate(getBean(PlatformTransactionManager.class)).execute(new TransactionCallback<T>() {
+            @Override
+            public T doInTransaction(TransactionStatus status) {
+                return f.get();
+            }
+        });
+    }
+
+    public void close() {
+        context.close();
+    }
+}
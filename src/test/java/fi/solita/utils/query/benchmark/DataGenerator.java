@@ -0,0 +1,128 @@
+package fi.solita.utils.query.benchmark;
+
+import static fi.solita.utils.functional.Collections.newList;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.persistence.EntityManager;
+
+import fi.solita.utils.functional.Function0;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Money;
+import fi.solita.utils.query.Municipality;
+import fi.solita.utils.query.PartTimeEmployee;
+import fi.solita.utils.query.Report;
+
+/**
+ * Generates the test model at a given scale. The relation cardinalities are skewed,
+ * so that a few departments and municipalities have most of the employees and departments.
+ */
+public class DataGenerator {
+
+    /**
+     * Ids of the generated entities.
+     */
+    public static final class Dataset {
+        public final List<Municipality.ID> municipalities;
+        public final List<Department.ID> departments;
+        public final int employees;
+
+        Dataset(List<Municipality.ID> municipalities, List<Department.ID> departments, int employees) {
+            this.municipalities = Collections.unmodifiableList(municipalities);
+            this.departments = Collections.unmodifiableList(departments);
+            this.employees = employees;
+        }
+    }
+
+    private final BenchmarkContext context;
+    private final Random random;
+    private final double skew;
+    private final int batchSize;
+
+    /**
+     * @param skew 1 for uniform relation cardinalities, greater for more skewed.
+     */
+    public DataGenerator(BenchmarkContext context, long seed, double skew, int batchSize) {
+        this.context = context;
+        this.random = new Random(seed);
+        this.skew = skew;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Generates <i>employees</i> employees (every tenth a part-timer), one department per 20
+     * employees and one municipality per 10 departments. Each batch is persisted in a transaction of its own.
+     */
+    public Dataset generate(int employees) {
+        int departmentCount = Math.max(1, employees / 20);
+        int municipalityCount = Math.max(1, departmentCount / 10);
+
+        final List<Municipality.ID> municipalities = newList();
+        for (int start = 0; start < municipalityCount; start += batchSize) {
+            final int end = Math.min(municipalityCount, start + batchSize);
+            context.inTransaction(new Function0<Void>() {
+                @Override
+                public Void apply() {
+                    EntityManager em = context.getEntityManager();
+                    for (int i = municipalities.size(); i < end; ++i) {
+                        Municipality m = new Municipality(new Report(2000 + i % 20));
+                        em.persist(m);
+                        municipalities.add(m.getId());
+                    }
+                    return null;
+                }
+            });
+        }
+
+        final List<Department.ID> departments = newList();
+        for (int start = 0; start < departmentCount; start += batchSize) {
+            final int end = Math.min(departmentCount, start + batchSize);
+            context.inTransaction(new Function0<Void>() {
+                @Override
+                public Void apply() {
+                    EntityManager em = context.getEntityManager();
+                    for (int i = departments.size(); i < end; ++i) {
+                        Municipality m = em.getReference(Municipality.class, skewed(municipalities));
+                        Department d = new Department("department" + i, i % 100, m);
+                        em.persist(d);
+                        departments.add(d.getId());
+                    }
+                    return null;
+                }
+            });
+        }
+
+        for (int start = 0; start < employees; start += batchSize) {
+            final int begin = start;
+            final int end = Math.min(employees, start + batchSize);
+            context.inTransaction(new Function0<Void>() {
+                @Override
+                public Void apply() {
+                    EntityManager em = context.getEntityManager();
+                    for (int i = begin; i < end; ++i) {
+                        Department d = em.getReference(Department.class, skewed(departments));
+                        Employee e;
+                        if (i % 10 == 0) {
+                            e = new PartTimeEmployee("employee" + i, d);
+                        } else if (i % 2 == 0) {
+                            e = new Employee("employee" + i, new Money(1000 + i % 5000), d);
+                        } else {
+                            e = new Employee("employee" + i, d, em.getReference(Municipality.class, skewed(municipalities)));
+                        }
+                        em.persist(e);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        return new Dataset(municipalities, departments, employees);
+    }
+
+    private <T> T skewed(List<T> values) {
+        return values.get((int) (values.size() * Math.pow(random.nextDouble(), skew)));
+    }
+}
@@ -0,0 +1,95 @@
+package fi.solita.utils.query.benchmark;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.hibernate.stat.Statistics;
+
+import fi.solita.utils.functional.Function0;
+import fi.solita.utils.query.benchmark.DataGenerator.Dataset;
+
+/**
+ * Runs the {@link Scenario}s against a generated dataset in an embedded H2 database, and reports
+ * the statements executed, latency percentiles and rows per second of each.
+ *
+ * Configured with system properties:
+ * <ul>
+ * <li>benchmark.employees: scale of the dataset, default 10000</li>
+ * <li>benchmark.skew: skew of the relation cardinalities, default 2</li>
+ * <li>benchmark.warmup: warmup runs per scenario, default 50</li>
+ * <li>benchmark.iterations: measured runs per scenario, default 200</li>
+ * <li>benchmark.scenarios: comma separated scenario names, default all</li>
+ * </ul>
+ */
+public class EndToEndBenchmark {
+
+    public static void main(String[] args) {
+        int employees = Integer.getInteger("benchmark.employees", 10000);
+        double skew = Double.parseDouble(System.getProperty("benchmark.skew", "2"));
+        int warmup = Integer.getInteger("benchmark.warmup", 50);
+        int iterations = Integer.getInteger("benchmark.iterations", 200);
+        Set<Scenario> scenarios = parseScenarios(System.getProperty("benchmark.scenarios"));
+
+        BenchmarkContext context = new BenchmarkContext("classpath:/benchmarkApplicationContext.xml");
+        try {
+            long start = System.nanoTime();
+            Dataset data = new DataGenerator(context, 42, skew, 1000).generate(employees);
+            System.out.println(String.format("Generated %d employees, %d departments, %d municipalities in %d ms",
+                employees, data.departments.size(), data.municipalities.size(), (System.nanoTime() - start) / 1000000));
+
+            Scenario.Fixture fixture = new Scenario.Fixture(context, data, 42);
+            System.out.println(String.format("%-24s %8s %10s %10s %10s %10s %10s %12s", "scenario", "runs", "stmts/run", "p50 ms", "p90 ms", "p99 ms", "max ms", "rows/s"));
+            for (Scenario scenario: scenarios) {
+                run(context, fixture, scenario, warmup, null);
+                LatencyHistogram latencies = new LatencyHistogram();
+                Statistics stats = context.getStatistics();
+                stats.clear();
+                long rows = run(context, fixture, scenario, iterations, latencies);
+                long statements = stats.getPrepareStatementCount();
+                double seconds = latencies.getTotal() / 1e9;
+                System.out.println(String.format("%-24s %8d %10.1f %10.2f %10.2f %10.2f %10.2f %12.0f",
+                    scenario, iterations, (double) statements / iterations,
+                    millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                    millis(latencies.getValueAtPercentile(99)), millis(latencies.getMax()), rows / seconds));
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    static Set<Scenario> parseScenarios(String names) {
+        if (names == null || names.trim().isEmpty()) {
+            return EnumSet.allOf(Scenario.class);
+        }
+        Set<Scenario> ret = EnumSet.noneOf(Scenario.class);
+        for (String name: names.split(",")) {
+            ret.add(Scenario.valueOf(name.trim()));
+        }
+        return ret;
+    }
+
+    /**
+     * Runs each iteration in a transaction of its own.
+     * @return the total number of rows produced.
+     */
+    static long run(BenchmarkContext context, final Scenario.Fixture fixture, final Scenario scenario, int iterations, LatencyHistogram latencies) {
+        long rows = 0;
+        for (int i = 0; i < iterations; ++i) {
+            long start = System.nanoTime();
+            rows += context.inTransaction(new Function0<Integer>() {
+                @Override
+                public Integer apply() {
+                    return scenario.run(fixture);
+                }
+            });
+            if (latencies != null) {
+                latencies.record(System.nanoTime() - start);
+            }
+        }
+        return rows;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,53 @@
+package fi.solita.utils.query.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Recorded latencies, in nanoseconds. Not thread safe.
+ */
+public class LatencyHistogram {
+
+    private long[] values = new long[1024];
+    private int count;
+
+    public void record(long nanos) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[count++] = nanos;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < other.count; ++i) {
+            record(other.values[i]);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        long ret = 0;
+        for (int i = 0; i < count; ++i) {
+            ret += values[i];
+        }
+        return ret;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(values, 0, count);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return values[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public long getMax() {
+        return getValueAtPercentile(100);
+    }
+}
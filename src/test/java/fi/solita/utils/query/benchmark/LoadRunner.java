@@ -0,0 +1,211 @@
+package fi.solita.utils.query.benchmark;
+
+import static fi.solita.utils.functional.Collections.newList;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import fi.solita.utils.functional.Function0;
+import fi.solita.utils.query.benchmark.DataGenerator.Dataset;
+
+/**
+ * Drives a mix of {@link Scenario}s from multiple threads at a target throughput against the
+ * H2 benchmark schema, and reports per operation latency percentiles, statements and allocations.
+ *
+ * Latencies are measured from the intended start time of each operation in the fixed-rate schedule,
+ * not from the actual start, so that a stalled database does not hide the wait of the operations
+ * queued behind it (coordinated omission).
+ *
+ * Configured with system properties:
+ * <ul>
+ * <li>load.threads: number of threads, default 8</li>
+ * <li>load.rate: target operations per second of all threads, default 200</li>
+ * <li>load.warmup: seconds not measured at the start, default 10</li>
+ * <li>load.duration: seconds measured, default 30</li>
+ * <li>load.mix: weighted operations, default ENTITIES_BY_ID:4,RELATED_PROJECTION:2,ENTITIES_PAGED:2,COUNT:1,LARGE_IN:1</li>
+ * <li>benchmark.employees and benchmark.skew: dataset, as for {@link EndToEndBenchmark}</li>
+ * <li>benchmark.contexts: comma separated additional application context locations, e.g. to
+ *     replace the bean <i>query-utils_Configuration</i> to compare configurations</li>
+ * </ul>
+ */
+public class LoadRunner {
+
+    static final class OperationStats {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        long statements;
+        long allocatedBytes;
+        long errors;
+
+        void add(OperationStats other) {
+            latencies.add(other.latencies);
+            statements += other.statements;
+            allocatedBytes += other.allocatedBytes;
+            errors += other.errors;
+        }
+    }
+
+    static final class Worker extends Thread {
+        private final BenchmarkContext context;
+        private final Scenario.Fixture fixture;
+        private final List<Scenario> mix;
+        private final Random random;
+        private final long intervalNanos;
+        private final long start;
+        private final long measureFrom;
+        private final long end;
+        private final CountDownLatch done;
+        final Map<Scenario, OperationStats> stats = new EnumMap<Scenario, OperationStats>(Scenario.class);
+
+        Worker(int index, BenchmarkContext context, Dataset data, List<Scenario> mix, long intervalNanos, long start, long measureFrom, long end, CountDownLatch done) {
+            super("load-" + index);
+            this.context = context;
+            this.fixture = new Scenario.Fixture(context, data, index);
+            this.mix = mix;
+            this.random = new Random(index);
+            this.intervalNanos = intervalNanos;
+            this.start = start;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (long intended = start; intended < end; intended += intervalNanos) {
+                    long now = System.nanoTime();
+                    if (now < intended) {
+                        LockSupport.parkNanos(intended - now);
+                    }
+                    final Scenario scenario = mix.get(random.nextInt(mix.size()));
+                    long statements = StatementCounter.get();
+                    long allocated = allocatedBytes();
+                    boolean failed = false;
+                    try {
+                        context.inTransaction(new Function0<Integer>() {
+                            @Override
+                            public Integer apply() {
+                                return scenario.run(fixture);
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        failed = true;
+                    }
+                    long finished = System.nanoTime();
+                    if (intended >= measureFrom) {
+                        OperationStats s = stats.get(scenario);
+                        if (s == null) {
+                            s = new OperationStats();
+                            stats.put(scenario, s);
+                        }
+                        s.latencies.record(finished - intended);
+                        s.statements += StatementCounter.get() - statements;
+                        s.allocatedBytes += allocatedBytes() - allocated;
+                        s.errors += failed ? 1 : 0;
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * @return bytes allocated by the current thread, or 0 if not supported by the JVM.
+     */
+    static long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * @return each scenario as many times as its weight.
+     */
+    static List<Scenario> parseMix(String mix) {
+        List<Scenario> ret = newList();
+        for (String op: mix.split(",")) {
+            String[] parts = op.trim().split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            for (int i = 0; i < weight; ++i) {
+                ret.add(Scenario.valueOf(parts[0].trim()));
+            }
+        }
+        if (ret.isEmpty()) {
+            throw new IllegalArgumentException("Empty operation mix: " + mix);
+        }
+        return ret;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threadCount = Integer.getInteger("load.threads", 8);
+        double rate = Double.parseDouble(System.getProperty("load.rate", "200"));
+        int warmup = Integer.getInteger("load.warmup", 10);
+        int duration = Integer.getInteger("load.duration", 30);
+        List<Scenario> mix = parseMix(System.getProperty("load.mix", "ENTITIES_BY_ID:4,RELATED_PROJECTION:2,ENTITIES_PAGED:2,COUNT:1,LARGE_IN:1"));
+        int employees = Integer.getInteger("benchmark.employees", 10000);
+        double skew = Double.parseDouble(System.getProperty("benchmark.skew", "2"));
+
+        List<String> locations = newList("classpath:/benchmarkApplicationContext.xml");
+        String extra = System.getProperty("benchmark.contexts", "").trim();
+        if (!extra.isEmpty()) {
+            for (String location: extra.split(",")) {
+                locations.add(location.trim());
+            }
+        }
+
+        BenchmarkContext context = new BenchmarkContext(locations.toArray(new String[locations.size()]));
+        try {
+            Dataset data = new DataGenerator(context, 42, skew, 1000).generate(employees);
+
+            long intervalNanos = (long) (threadCount * 1e9 / rate);
+            long start = System.nanoTime() + 100000000;
+            long measureFrom = start + warmup * 1000000000L;
+            long end = measureFrom + duration * 1000000000L;
+            CountDownLatch done = new CountDownLatch(threadCount);
+            List<Worker> workers = newList();
+            for (int i = 0; i < threadCount; ++i) {
+                // spread the schedules of the threads evenly over the interval
+                Worker w = new Worker(i, context, data, mix, intervalNanos, start + intervalNanos * i / threadCount, measureFrom, end, done);
+                workers.add(w);
+                w.start();
+            }
+            done.await();
+
+            Map<Scenario, OperationStats> total = new EnumMap<Scenario, OperationStats>(Scenario.class);
+            for (Worker w: workers) {
+                for (Map.Entry<Scenario, OperationStats> e: w.stats.entrySet()) {
+                    if (!total.containsKey(e.getKey())) {
+                        total.put(e.getKey(), new OperationStats());
+                    }
+                    total.get(e.getKey()).add(e.getValue());
+                }
+            }
+            report(total, threadCount, rate, duration);
+        } finally {
+            context.close();
+        }
+    }
+
+    static void report(Map<Scenario, OperationStats> stats, int threadCount, double rate, int duration) {
+        System.out.println(String.format("%d threads, target %.0f ops/s, %d s measured", threadCount, rate, duration));
+        System.out.println(String.format("%-24s %8s %8s %10s %10s %10s %10s %10s %10s", "operation", "ops", "errors", "ops/s", "p50 ms", "p99 ms", "p999 ms", "stmts/op", "KB/op"));
+        for (Map.Entry<Scenario, OperationStats> e: stats.entrySet()) {
+            OperationStats s = e.getValue();
+            int count = s.latencies.getCount();
+            System.out.println(String.format("%-24s %8d %8d %10.1f %10.2f %10.2f %10.2f %10.1f %10.1f",
+                e.getKey(), count, s.errors, (double) count / duration,
+                s.latencies.getValueAtPercentile(50) / 1e6, s.latencies.getValueAtPercentile(99) / 1e6, s.latencies.getValueAtPercentile(99.9) / 1e6,
+                (double) s.statements / count, s.allocatedBytes / 1024.0 / count));
+        }
+    }
+}
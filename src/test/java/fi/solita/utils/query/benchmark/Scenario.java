@@ -0,0 +1,135 @@
+package fi.solita.utils.query.benchmark;
+
+import static fi.solita.utils.functional.Collections.newSet;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.functional.Pair;
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.Money;
+import fi.solita.utils.query.Municipality;
+import fi.solita.utils.query.Municipality_;
+import fi.solita.utils.query.Order;
+import fi.solita.utils.query.Page;
+import fi.solita.utils.query.backend.TypeProvider;
+import fi.solita.utils.query.benchmark.DataGenerator.Dataset;
+import fi.solita.utils.query.generation.Cast;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.generation.NativeQuery;
+import fi.solita.utils.query.generation.Restrict;
+import fi.solita.utils.query.projection.Project;
+import fi.solita.utils.query.projection.Related;
+
+/**
+ * The catalogue of end-to-end scenarios. Each run returns the number of rows it produced.
+ */
+public enum Scenario {
+    ENTITIES_BY_ID {
+        @Override
+        public int run(Fixture f) {
+            return f.dao.getMany(f.restrict.in(Department_.id, f.departmentIds(100), f.query.all(Department.class))).size();
+        }
+    },
+    ENTITIES_PAGED {
+        @Override
+        public int run(Fixture f) {
+            int pages = Math.max(1, f.data.employees / 100);
+            return f.dao.getMany(f.query.all(Employee.class), Page.of(f.random.nextInt(pages), 100), Order.by(Employee_.id)).size();
+        }
+    },
+    RELATED_PROJECTION {
+        @Override
+        public int run(Fixture f) {
+            List<Pair<String, List<Pair<String, Option<Money>>>>> ret = f.dao.getMany(
+                f.restrict.in(Department_.id, f.departmentIds(100), f.query.all(Department.class)),
+                Project.pair(Department_.mandatoryDepName,
+                             Related.projection(Department_.employees, Project.pair(Employee_.mandatoryName, Cast.optional(Employee_.optionalSalary)))),
+                Order.by(Department_.id));
+            int rows = 0;
+            for (Pair<String, List<Pair<String, Option<Money>>>> dep: ret) {
+                rows += 1 + dep._2.size();
+            }
+            return rows;
+        }
+    },
+    DEEP_RELATED_PROJECTION {
+        @Override
+        public int run(Fixture f) {
+            List<Pair<Municipality.ID, Set<Pair<String, List<String>>>>> ret = f.dao.getMany(
+                f.query.all(Municipality.class),
+                Project.pair(Municipality_.id,
+                             Related.projection(Municipality_.deps, Project.pair(Department_.mandatoryDepName,
+                                                                                 Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))))),
+                Page.FIRST.withSize(10),
+                Order.by(Municipality_.id));
+            int rows = 0;
+            for (Pair<Municipality.ID, Set<Pair<String, List<String>>>> mun: ret) {
+                rows++;
+                for (Pair<String, List<String>> dep: mun._2) {
+                    rows += 1 + dep._2.size();
+                }
+            }
+            return rows;
+        }
+    },
+    COUNT {
+        @Override
+        public int run(Fixture f) {
+            f.dao.count(f.restrict.greaterThanOrEqual(Department_.mandatoryNumber, f.random.nextInt(100), f.query.all(Department.class)));
+            return 1;
+        }
+    },
+    NATIVE_QUERY {
+        @Override
+        public int run(Fixture f) {
+            return f.dao.getMany(NativeQuery.of("select * from Department where mandatoryNumber = " + f.random.nextInt(100))
+                                            .returns(f.typeProvider.type(Department.class)), Page.FIRST.withSize(100)).size();
+        }
+    },
+    LARGE_IN {
+        @Override
+        public int run(Fixture f) {
+            f.dao.count(f.restrict.in(Department_.id, f.departmentIds(10000), f.query.all(Department.class)));
+            return 1;
+        }
+    };
+
+    /**
+     * Everything a scenario needs. Not thread safe, use one per thread.
+     */
+    public static final class Fixture {
+        final Dao dao;
+        final JpaCriteriaQuery query;
+        final Restrict restrict;
+        final TypeProvider typeProvider;
+        final Dataset data;
+        final Random random;
+
+        public Fixture(BenchmarkContext context, Dataset data, long seed) {
+            this.dao = context.getBean(Dao.class);
+            this.query = context.getBean(JpaCriteriaQuery.class);
+            this.restrict = context.getBean(Restrict.class);
+            this.typeProvider = context.getBean(TypeProvider.class);
+            this.data = data;
+            this.random = new Random(seed);
+        }
+
+        Set<Department.ID> departmentIds(int count) {
+            Set<Department.ID> ret = newSet();
+            int n = Math.min(count, data.departments.size());
+            while (ret.size() < n) {
+                ret.add(data.departments.get(random.nextInt(data.departments.size())));
+            }
+            return ret;
+        }
+    }
+
+    public abstract int run(Fixture f);
+}
@@ -0,0 +1,28 @@
+package fi.solita.utils.query.benchmark;
+
+import fi.solita.utils.query.backend.hibernate.BudgetStatementInspector;
+
+/**
+ * Counts the statements prepared by Hibernate in the current thread, since the
+ * Hibernate statistics cannot attribute statements to concurrent operations.
+ * Registered with <i>hibernate.session_factory.statement_inspector</i>.
+ */
+public class StatementCounter extends BudgetStatementInspector {
+
+    private static final ThreadLocal<long[]> counts = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    @Override
+    public String inspect(String sql) {
+        counts.get()[0]++;
+        return super.inspect(sql);
+    }
+
+    public static long get() {
+        return counts.get()[0];
+    }
+}
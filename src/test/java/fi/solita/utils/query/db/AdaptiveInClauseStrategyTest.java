@@ -0,0 +1,65 @@
+package fi.solita.utils.query.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fi.solita.utils.query.Department;
+
+public class AdaptiveInClauseStrategyTest {
+
+    private static final Set<InClauseStrategy> all = EnumSet.allOf(InClauseStrategy.class);
+
+    @Test
+    public void usesPriorUntilObserved() {
+        AdaptiveInClauseStrategy adaptive = new AdaptiveInClauseStrategy(0, 2, 0.5);
+
+        assertEquals(InClauseStrategy.MEMBER_OF, adaptive.choose(Department.class, 10, InClauseStrategy.MEMBER_OF, all));
+        adaptive.executed(100);
+        assertEquals(InClauseStrategy.MEMBER_OF, adaptive.choose(Department.class, 10, InClauseStrategy.MEMBER_OF, all));
+        adaptive.executed(100);
+        assertEquals(100.0, adaptive.getAverageNanos(Department.class, 10, InClauseStrategy.MEMBER_OF).get(), 0.1);
+    }
+
+    @Test
+    public void choosesFastestObserved() {
+        AdaptiveInClauseStrategy adaptive = new AdaptiveInClauseStrategy(0, 1, 0.5);
+
+        adaptive.choose(Department.class, 10, InClauseStrategy.MEMBER_OF, all);
+        adaptive.executed(100);
+        adaptive.choose(Department.class, 10, InClauseStrategy.IN_LIST, all);
+        adaptive.executed(10);
+
+        assertEquals(InClauseStrategy.IN_LIST, adaptive.choose(Department.class, 10, InClauseStrategy.MEMBER_OF, all));
+        assertEquals("same size bucket", InClauseStrategy.IN_LIST, adaptive.choose(Department.class, 15, InClauseStrategy.MEMBER_OF, all));
+        assertEquals("other size bucket", InClauseStrategy.MEMBER_OF, adaptive.choose(Department.class, 16, InClauseStrategy.MEMBER_OF, all));
+    }
+
+    @Test
+    public void forgetsDiscardedChoices() {
+        AdaptiveInClauseStrategy adaptive = new AdaptiveInClauseStrategy(0, 1, 0.5);
+
+        adaptive.choose(Department.class, 10, InClauseStrategy.MEMBER_OF, all);
+        adaptive.discarded();
+        adaptive.executed(100);
+        assertFalse(adaptive.getAverageNanos(Department.class, 10, InClauseStrategy.MEMBER_OF).isDefined());
+
+        adaptive.choose(Department.class, 10, InClauseStrategy.MEMBER_OF, all);
+        adaptive.executed(100);
+        adaptive.executed(200);
+        assertEquals("recorded only for the next execution", 100.0, adaptive.getAverageNanos(Department.class, 10, InClauseStrategy.MEMBER_OF).get(), 0.1);
+    }
+
+    @Test
+    public void choosesOnlyAvailable() {
+        AdaptiveInClauseStrategy adaptive = new AdaptiveInClauseStrategy(1, 1, 0.5);
+
+        for (int i = 0; i < 100; ++i) {
+            assertFalse(adaptive.choose(Department.class, 10, InClauseStrategy.TABLE, EnumSet.of(InClauseStrategy.IN_LIST, InClauseStrategy.TABLE)) == InClauseStrategy.MEMBER_OF);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package fi.solita.utils.query.db;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Collections.newSet;
+import static fi.solita.utils.functional.Functional.map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.EntityManagerProvider;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.backend.hibernate.DefaultHibernateConfiguration;
+import fi.solita.utils.query.backend.hibernate.OracleTableValueType;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.generation.Restrict;
+
+public class TemporaryTableSupportTest extends QueryTestBase {
+
+    @Autowired
+    private EntityManagerProvider emProvider;
+
+    @Autowired
+    private Configuration defaultConfig;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private Dao dao;
+
+    private TemporaryTableSupport support;
+
+    private final Configuration config = new DefaultHibernateConfiguration() {
+        @Override
+        public Option<TableInClauseOptimization> getTableInClauseProvider() {
+            return Option.<TableInClauseOptimization>Some(support);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        support = new TemporaryTableSupport(config);
+    }
+
+    @After
+    public void restoreConfiguration() {
+        OracleTableValueType.config = defaultConfig;
+    }
+
+    @Test
+    public void restrictsWithTemporaryTable() {
+        Set<Department.ID> expected = newSet();
+        for (int i = 1; i <= 100; ++i) {
+            Department dep = new Department("", i);
+            persist(dep);
+            if (i % 2 == 0) {
+                expected.add(dep.getId());
+            }
+        }
+        Set<Integer> evens = newSet();
+        for (int i = 2; i <= 2 * (config.getMaxValuesForMemberOfRestriction() + 11); i += 2) {
+            evens.add(i);
+        }
+
+        Restrict restrict = new Restrict(emProvider, config);
+        assertEquals(expected, newSet(map(Department_.getId, dao.getMany(restrict.in(Department_.mandatoryNumber, evens, query.all(Department.class))))));
+        assertEquals(50, dao.count(restrict.in(Department_.mandatoryNumber, evens, query.all(Department.class))));
+        assertEquals("rows remain until commit", 2 * evens.size(), ((Number)em.createNativeQuery("SELECT count(*) FROM " + TemporaryTableSupport.DEFAULT_TABLE_NAME).getSingleResult()).intValue());
+    }
+
+    @Test
+    public void doesNotSupportStrings() {
+        assertFalse(support.getSqlTypeAndValues(newList("a", "b")).isDefined());
+    }
+
+    @Test(expected = SQLException.class)
+    public void requiresTransaction() throws SQLException {
+        Connection c = dataSource.getConnection();
+        try {
+            c.setAutoCommit(true);
+            PreparedStatement st = c.prepareStatement("SELECT ?");
+            try {
+                support.bind(st, 1, TemporaryTableSupport.DEFAULT_TABLE_NAME, newList((Object)1L));
+            } finally {
+                st.close();
+            }
+        } finally {
+            c.close();
+        }
+    }
+}
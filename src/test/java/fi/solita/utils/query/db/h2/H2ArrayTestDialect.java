@@ -0,0 +1,11 @@
+package fi.solita.utils.query.db.h2;
+
+import org.hibernate.dialect.H2Dialect;
+
+import fi.solita.utils.query.backend.hibernate.ArrayTableFunction;
+
+public class H2ArrayTestDialect extends H2Dialect {
+    public H2ArrayTestDialect() {
+        registerFunction("table", ArrayTableFunction.h2("BIGINT"));
+    }
+}
@@ -0,0 +1,122 @@
+package fi.solita.utils.query.db.h2;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Collections.newMap;
+import static fi.solita.utils.functional.Collections.newSet;
+import static fi.solita.utils.functional.Functional.map;
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.criteria.CriteriaQuery;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+
+import fi.solita.utils.functional.Function2;
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.functional.Tuple;
+import fi.solita.utils.functional.Tuple3;
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.EntityManagerProvider;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.backend.hibernate.DefaultHibernateConfiguration;
+import fi.solita.utils.query.backend.hibernate.HibernateQueryExecutor;
+import fi.solita.utils.query.backend.hibernate.OracleTableValueType;
+import fi.solita.utils.query.db.TableInClauseOptimization;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.generation.Restrict;
+
+@ContextConfiguration(locations = { "classpath:/testApplicationContext_h2Array.xml" }, inheritLocations = false)
+public class H2SupportTest extends QueryTestBase {
+
+    @Autowired
+    private EntityManagerProvider emProvider;
+
+    @Autowired
+    private Configuration defaultConfig;
+
+    @Autowired
+    private HibernateQueryExecutor executor;
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private Dao dao;
+
+    private final Configuration config = new DefaultHibernateConfiguration() {
+        @Override
+        public Option<TableInClauseOptimization> getTableInClauseProvider() {
+            return Option.<TableInClauseOptimization>Some(new H2Support(this));
+        }
+    };
+
+    @After
+    public void restoreConfiguration() {
+        OracleTableValueType.config = defaultConfig;
+    }
+
+    @Test
+    public void restrictsWithSingleArrayParameter() {
+        Set<Department.ID> expected = newSet();
+        for (int i = 1; i <= 100; ++i) {
+            Department dep = new Department("", i);
+            persist(dep);
+            if (i % 2 == 0) {
+                expected.add(dep.getId());
+            }
+        }
+        Set<Integer> evens = newSet();
+        for (int i = 2; i <= 2 * 1500; i += 2) {
+            evens.add(i);
+        }
+
+        CriteriaQuery<Department> q = new Restrict(emProvider, config).in(Department_.mandatoryNumber, evens, query.all(Department.class));
+        assertEquals("a single parameter for all the values", 1, executor.getSql(q).replaceAll("[^?]", "").length());
+        assertEquals(expected, newSet(map(Department_.getId, dao.getMany(q))));
+    }
+
+    @Test
+    public void usesElementTypeOfRegisteredTableType() {
+        final Function2<Connection, Date, Long> toMillis = new Function2<Connection, Date, Long>() {
+            @Override
+            public Long apply(Connection c, Date d) {
+                return d.getTime();
+            }
+        };
+        Configuration registering = new DefaultHibernateConfiguration() {
+            @Override
+            public Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> getRegisteredTableTypes() {
+                Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> ret = newMap();
+                ret.put(Date.class, Tuple.of("SYS.ODCINUMBERLIST", Option.<String>None(), toMillis));
+                return ret;
+            }
+        };
+        H2Support support = new H2Support(registering, Collections.singletonMap("SYS.ODCINUMBERLIST", "BIGINT"));
+
+        Tuple3<String, Option<String>, ?> sqlTypeAndValues = support.getSqlTypeAndValues(newList(new Date(1), new Date(2))).get();
+        assertEquals("BIGINT", sqlTypeAndValues._1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresElementTypeOfRegisteredTableType() {
+        new H2Support(new DefaultHibernateConfiguration() {
+            @Override
+            public Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> getRegisteredTableTypes() {
+                Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> ret = newMap();
+                ret.put(Date.class, Tuple.of("SYS.ODCINUMBERLIST", Option.<String>None(), (Function2<Connection, ?, ?>)null));
+                return ret;
+            }
+        }).getSqlTypeAndValues(newList(new Date(1)));
+    }
+}
@@ -0,0 +1,150 @@
+package fi.solita.utils.query.db.oracle;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.solita.utils.functional.Function2;
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.functional.Tuple;
+import fi.solita.utils.functional.Tuple3;
+import fi.solita.utils.query.DefaultConfiguration;
+
+public class OracleSupportTest {
+
+    private static int created;
+
+    /**
+     * Stands for ArrayDescriptor.createDescriptor, a descriptor refers to its connection.
+     */
+    public static Object createDescriptor(String sqlType, Connection connection) {
+        created++;
+        return new Object[] { sqlType, connection };
+    }
+
+    /**
+     * Stands for the descriptor cache of OracleConnection.
+     */
+    public interface DescriptorCachingConnection extends Connection {
+        Object getDescriptor(String sqlName);
+        void putDescriptor(String sqlName, Object descriptor);
+    }
+
+    private static Connection stubConnection() {
+        final Map<String, Object> descriptors = new HashMap<String, Object>();
+        return (Connection) Proxy.newProxyInstance(OracleSupportTest.class.getClassLoader(), new Class<?>[] { DescriptorCachingConnection.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getDescriptor")) {
+                    return descriptors.get(args[0]);
+                } else if (method.getName().equals("putDescriptor")) {
+                    descriptors.put((String) args[0], args[1]);
+                    return null;
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private Method originalDescriptorMethod;
+    private Method originalGetDescriptorMethod;
+    private Method originalPutDescriptorMethod;
+
+    @Before
+    public void stubDescriptors() throws Exception {
+        originalDescriptorMethod = OracleSupport.arrayDescriptorMethod;
+        originalGetDescriptorMethod = OracleSupport.getDescriptorMethod;
+        originalPutDescriptorMethod = OracleSupport.putDescriptorMethod;
+        OracleSupport.arrayDescriptorMethod = OracleSupportTest.class.getMethod("createDescriptor", String.class, Connection.class);
+        OracleSupport.getDescriptorMethod = DescriptorCachingConnection.class.getMethod("getDescriptor", String.class);
+        OracleSupport.putDescriptorMethod = DescriptorCachingConnection.class.getMethod("putDescriptor", String.class, Object.class);
+        created = 0;
+    }
+
+    @After
+    public void restoreDescriptors() {
+        OracleSupport.arrayDescriptorMethod = originalDescriptorMethod;
+        OracleSupport.getDescriptorMethod = originalGetDescriptorMethod;
+        OracleSupport.putDescriptorMethod = originalPutDescriptorMethod;
+    }
+
+    @Test
+    public void cachesDescriptorsPerConnectionAndType() throws Exception {
+        Connection c1 = stubConnection();
+        Connection c2 = stubConnection();
+
+        // not held between the lookups
+        OracleSupport.arrayDescriptor(c1, "SYS.ODCINUMBERLIST");
+        for (int i = 0; i < 5; ++i) {
+            System.gc();
+        }
+        OracleSupport.arrayDescriptor(c1, "SYS.ODCINUMBERLIST");
+        assertEquals(1, created);
+
+        Object descriptor = OracleSupport.arrayDescriptor(c1, "SYS.ODCINUMBERLIST");
+        assertNotSame(descriptor, OracleSupport.arrayDescriptor(c1, "SYS.ODCIVARCHAR2LIST"));
+        assertNotSame(descriptor, OracleSupport.arrayDescriptor(c2, "SYS.ODCINUMBERLIST"));
+        assertEquals(3, created);
+    }
+
+    @Test
+    public void doesNotKeepConnectionsAlive() throws Exception {
+        Connection c = stubConnection();
+        OracleSupport.arrayDescriptor(c, "SYS.ODCINUMBERLIST");
+        WeakReference<Connection> ref = new WeakReference<Connection>(c);
+        c = null;
+
+        for (int i = 0; i < 50 && ref.get() != null; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    @Test
+    public void resolvesRegisteredTypeOnlyOnce() {
+        final int[] scans = new int[1];
+        final Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> registered = new HashMap<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>>() {
+            @Override
+            public Set<Map.Entry<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>>> entrySet() {
+                scans[0]++;
+                return super.entrySet();
+            }
+        };
+        registered.put(Number.class, Tuple.of("NUMBERS", Option.<String>None(), (Function2<Connection, ?, ?>)null));
+        OracleSupport support = new OracleSupport(new DefaultConfiguration() {
+            @Override
+            public Map<Class<?>, Tuple3<String, Option<String>, ? extends Function2<Connection, ?, ?>>> getRegisteredTableTypes() {
+                return registered;
+            }
+        });
+
+        assertEquals("registered for a superclass", "NUMBERS", support.registeredType(Long.class).get()._1);
+        assertEquals("NUMBERS", support.registeredType(Long.class).get()._1);
+        assertFalse(support.registeredType(String.class).isDefined());
+        assertFalse(support.registeredType(String.class).isDefined());
+        assertEquals(2, scans[0]);
+
+        assertEquals("NUMBERS", support.getSqlTypeAndValues(newList(1L, 2L)).get()._1);
+        assertEquals(2, scans[0]);
+    }
+}
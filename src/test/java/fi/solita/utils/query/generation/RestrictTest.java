@@ -73,6 +73,25 @@ public class RestrictTest extends QueryTestBase {
                             query.all(Department.class))).getId());
     }
     
+    @Test
+    public void attributeIn_denseNumbers() {
+        for (int i = 1; i <= 150; ++i) {
+            persist(new Department("", i));
+        }
+        persist(new Department("", 200), new Department("", 300));
+
+        Set<Integer> numbers = newSet();
+        for (int i = 1; i <= 120; ++i) {
+            numbers.add(i);
+        }
+        numbers.add(140);
+        numbers.add(300);
+        numbers.add(400);
+
+        assertEquals(122, dao.count(restrict.in(Department_.mandatoryNumber, numbers,
+                            query.all(Department.class))));
+    }
+    
     @Test
     public void attributeInIds() {
         Department dep1 = new Department("a");
@@ -0,0 +1,139 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.functional.Pair;
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.Order;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.metrics.QueryBudget.QueryBudgetExceededException;
+import fi.solita.utils.query.projection.Project;
+import fi.solita.utils.query.projection.Related;
+
+public class QueryBudgetTest extends QueryTestBase {
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private Dao dao;
+
+    private List<Pair<Integer, List<String>>> departmentsWithEmployees() {
+        return dao.getMany(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))), Order.by(Department_.id));
+    }
+
+    @Test
+    public void withinBudget() {
+        Department dep = new Department("", 42);
+        persist(dep, new Employee("a", dep));
+        em.flush();
+
+        QueryBudget budget = dao.budget("departments", 2);
+        try {
+            departmentsWithEmployees();
+        } finally {
+            budget.close();
+        }
+        assertEquals(2, budget.getStatementCount());
+        assertFalse(budget.isExceeded());
+        assertFalse(QueryBudget.isActive());
+    }
+
+    @Test
+    public void failsWhenExceeded() {
+        Department dep = new Department("", 42);
+        persist(dep, new Employee("a", dep));
+        em.flush();
+
+        QueryBudget budget = dao.budget("departments", 1);
+        try {
+            departmentsWithEmployees();
+        } finally {
+            try {
+                budget.close();
+                fail("should have failed");
+            } catch (QueryBudgetExceededException e) {
+                assertEquals(2, e.statements.size());
+                assertTrue(e.getMessage(), e.getMessage().contains("'departments' of 1 statements exceeded with 2"));
+            }
+        }
+    }
+
+    @Test
+    public void warnsWhenExceeded() {
+        persist(new Department("", 42));
+        em.flush();
+
+        QueryBudget budget = dao.budget("departments", 0, QueryBudget.Mode.WARN);
+        try {
+            departmentsWithEmployees();
+        } finally {
+            budget.close();
+        }
+        assertTrue(budget.isExceeded());
+    }
+
+    @Test
+    public void countsStatementsNotExecutedByQueryUtils() {
+        Department dep = new Department("", 42);
+        persist(dep);
+        em.flush();
+        em.clear();
+
+        QueryBudget budget = dao.budget("find", 5);
+        try {
+            dao.get(dep.getId());
+        } finally {
+            budget.close();
+        }
+        assertTrue(budget.getStatementCount() > 0);
+    }
+
+    @Test
+    public void nestedBudgetCountsToOuter() {
+        persist(new Department("", 42));
+        em.flush();
+
+        QueryBudget outer = dao.budget("outer", 10);
+        try {
+            QueryBudget inner = dao.budget("inner", 10);
+            try {
+                dao.count(query.all(Department.class));
+            } finally {
+                inner.close();
+            }
+            assertEquals(1, inner.getStatementCount());
+            dao.count(query.all(Department.class));
+        } finally {
+            outer.close();
+        }
+        assertEquals(2, outer.getStatementCount());
+    }
+
+    @Test
+    public void countsExecutedQueriesNotSeenByTheInspector() {
+        QueryBudget budget = QueryBudget.start("mixed", 10, QueryBudget.Mode.FAIL);
+        try {
+            QueryBudget.inspected("select 1");
+            QueryBudget.executed("inspected");
+            QueryBudget.executed("not inspected");
+        } finally {
+            budget.close();
+        }
+        assertEquals(newList("select 1", "not inspected"), budget.getStatements());
+    }
+}
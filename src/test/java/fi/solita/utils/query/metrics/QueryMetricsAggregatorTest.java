@@ -0,0 +1,89 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Option.Some;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.db.InClauseStrategy;
+import fi.solita.utils.query.metrics.QueryMeasurement.Phase;
+
+public class QueryMetricsAggregatorTest {
+
+    private static QueryMeasurement measurement(String fingerprint, Phase phase, long nanos, int rows) {
+        return new QueryMeasurement(fingerprint, phase, nanos, Some(rows), Option.<Integer>None(), Option.<InClauseStrategy>None());
+    }
+
+    @Test
+    public void aggregatesPerFingerprintAndPhase() {
+        QueryMetricsAggregator aggregator = new QueryMetricsAggregator();
+        aggregator.measured(measurement("a", Phase.EXECUTE, 100, 1));
+        aggregator.measured(measurement("a", Phase.EXECUTE, 300, 3));
+        aggregator.measured(measurement("a", Phase.BUILD, 10, 0));
+        aggregator.measured(measurement("b", Phase.EXECUTE, 1000, 10));
+
+        assertEquals(4, aggregator.getMeasurementCount());
+        assertEquals(3, aggregator.getFingerprintCount());
+
+        QueryMetricsAggregator.Statistics slowest = aggregator.getStatistics().get(0);
+        assertEquals("b", slowest.fingerprint);
+
+        QueryMetricsAggregator.Statistics a = aggregator.getStatistics().get(1);
+        assertEquals("a", a.fingerprint);
+        assertEquals(Phase.EXECUTE, a.phase);
+        assertEquals(2, a.count);
+        assertEquals(400, a.totalNanos);
+        assertEquals(300, a.maxNanos);
+        assertEquals(200, a.getAverageNanos());
+        assertEquals(4, a.totalRows);
+    }
+
+    @Test
+    public void boundedNumberOfFingerprints() {
+        QueryMetricsAggregator aggregator = new QueryMetricsAggregator(2);
+        aggregator.measured(measurement("a", Phase.EXECUTE, 1, 1));
+        aggregator.measured(measurement("b", Phase.EXECUTE, 1, 1));
+        aggregator.measured(measurement("c", Phase.EXECUTE, 1, 1));
+        aggregator.measured(measurement("a", Phase.EXECUTE, 1, 1));
+
+        assertEquals(4, aggregator.getMeasurementCount());
+        assertEquals(2, aggregator.getFingerprintCount());
+        assertEquals(2, aggregator.getStatistics().get(0).count);
+    }
+
+    @Test
+    public void exposedThroughJmx() throws Exception {
+        QueryMetricsAggregator aggregator = new QueryMetricsAggregator();
+        aggregator.measured(new QueryMeasurement("a", Phase.EXECUTE, 100, Some(1), Some(500), Some(InClauseStrategy.TABLE)));
+        aggregator.measured(measurement("b", Phase.EXECUTE, 10, 1));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = aggregator.register(server);
+        try {
+            assertEquals(2, server.getAttribute(name, "FingerprintCount"));
+            String[] slowest = (String[]) server.invoke(name, "getSlowestByAverageTime", new Object[] {1}, new String[] {int.class.getName()});
+            assertEquals(1, slowest.length);
+            assertTrue(slowest[0], slowest[0].endsWith(": a"));
+            assertTrue(slowest[0], slowest[0].contains("maxIn=500"));
+
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals(0, aggregator.getFingerprintCount());
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void ignoresUnknownRows() {
+        QueryMetricsAggregator aggregator = new QueryMetricsAggregator();
+        aggregator.measured(new QueryMeasurement("a", Phase.BUILD, 1, Option.<Integer>None(), Option.<Integer>None(), Option.<InClauseStrategy>None()));
+        assertEquals(0, aggregator.getStatistics().get(0).totalRows);
+    }
+}
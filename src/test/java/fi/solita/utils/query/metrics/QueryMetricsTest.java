@@ -0,0 +1,80 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Option.Some;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.DefaultConfiguration;
+import fi.solita.utils.query.db.InClauseStrategy;
+import fi.solita.utils.query.metrics.QueryMeasurement.Phase;
+
+public class QueryMetricsTest {
+
+    private static final class Recorder implements QueryMetricsListener {
+        final List<QueryMeasurement> measurements = newList();
+
+        @Override
+        public void measured(QueryMeasurement measurement) {
+            measurements.add(measurement);
+        }
+    }
+
+    private static QueryMetrics metrics(final QueryMetricsListener listener) {
+        return new QueryMetrics(new DefaultConfiguration() {
+            @Override
+            public Option<QueryMetricsListener> getQueryMetricsListener() {
+                return Some(listener);
+            }
+        });
+    }
+
+    @Test
+    public void fingerprintIgnoresValues() {
+        assertEquals("select d from Department d where d.name = ? and d.id in (?)",
+                     QueryMetrics.fingerprint("select d from Department d where d.name = 'foo''s' and d.id in (:param0, :param1,  :param2)"));
+        assertEquals(QueryMetrics.fingerprint("select * from Employee where id in (1, 2, 3) and x = 4.5"),
+                     QueryMetrics.fingerprint("select * from Employee where id in (7, 8) and x = 1"));
+        assertEquals("select generatedAlias0 from Employee as generatedAlias0", QueryMetrics.fingerprint("select generatedAlias0 from Employee as generatedAlias0"));
+    }
+
+    @Test
+    public void disabledWithoutListener() {
+        assertFalse(new QueryMetrics(new DefaultConfiguration()).isEnabled());
+    }
+
+    @Test
+    public void largestInClauseIsAttributedToNextExecution() {
+        Recorder recorder = new Recorder();
+        QueryMetrics metrics = metrics(recorder);
+
+        metrics.inClause(10, InClauseStrategy.IN_LIST);
+        metrics.inClause(1000, InClauseStrategy.TABLE);
+        metrics.inClause(20, InClauseStrategy.MEMBER_OF);
+        metrics.measured(Phase.BUILD, "q", System.nanoTime(), Option.<Integer>None());
+        metrics.measured(Phase.EXECUTE, "q", System.nanoTime(), Some(5));
+        metrics.measured(Phase.EXECUTE, "q", System.nanoTime(), Some(5));
+
+        assertEquals(3, recorder.measurements.size());
+        assertEquals(1000, recorder.measurements.get(0).inListSize.get().intValue());
+        assertEquals(InClauseStrategy.TABLE, recorder.measurements.get(1).inClauseStrategy.get());
+        assertEquals(5, recorder.measurements.get(1).rows.get().intValue());
+        assertFalse(recorder.measurements.get(2).inListSize.isDefined());
+    }
+
+    @Test
+    public void failingListenerDoesNotBreakQueries() {
+        QueryMetrics metrics = metrics(new QueryMetricsListener() {
+            @Override
+            public void measured(QueryMeasurement measurement) {
+                throw new IllegalStateException();
+            }
+        });
+        metrics.measured(Phase.EXECUTE, "q", System.nanoTime(), Some(1));
+    }
+}
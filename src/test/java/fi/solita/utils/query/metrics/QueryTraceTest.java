@@ -0,0 +1,128 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Option.Some;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.functional.Pair;
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.Order;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.metrics.QueryTrace.Kind;
+import fi.solita.utils.query.metrics.QueryTrace.Node;
+import fi.solita.utils.query.projection.Project;
+import fi.solita.utils.query.projection.Related;
+
+public class QueryTraceTest extends QueryTestBase {
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private Dao dao;
+
+    @Test
+    public void recordsAdditionalQueriesUnderTheirParameter() {
+        Department dep = new Department("", 42);
+        persist(dep, new Employee("a", dep), new Employee("b", dep));
+        long queryCount = getQueryCount();
+
+        QueryTrace trace = dao.trace("departments");
+        List<Pair<Integer, List<String>>> ret;
+        try {
+            ret = dao.getMany(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))), Order.by(Department_.id));
+        } finally {
+            trace.close();
+        }
+        assertFalse(QueryTrace.isActive());
+        assertEquals(1, ret.size());
+
+        Node root = trace.getRoot();
+        assertEquals(Kind.CALL, root.kind);
+        assertEquals(getQueryCount() - queryCount, root.getStatementCount());
+
+        assertEquals(Kind.STATEMENT, root.getChildren().get(0).kind);
+        assertEquals(1, root.getChildren().get(0).getRows().get().intValue());
+
+        Node projection = root.getChildren().get(1);
+        assertEquals(Kind.PROJECTION, projection.kind);
+        assertEquals(1, projection.getRows().get().intValue());
+
+        Node additional = projection.getChildren().get(0);
+        assertEquals(Kind.ADDITIONAL_QUERY, additional.kind);
+        assertEquals("employees", additional.parameter.get());
+        assertEquals(1, additional.level);
+        assertEquals(1, additional.ids.get().intValue());
+        assertEquals(1, additional.getStatementCount());
+        assertEquals(2, additional.getStatementRows());
+        assertTrue(additional.getDurationNanos() >= 0);
+    }
+
+    @Test
+    public void exportsSpans() throws Exception {
+        persist(new Department("", 1));
+
+        QueryTrace trace = dao.trace("count");
+        try {
+            dao.count(query.all(Department.class));
+        } finally {
+            trace.close();
+        }
+
+        List<Span> spans = trace.toSpans();
+        assertEquals(2, spans.size());
+        assertFalse(spans.get(0).parentId.isDefined());
+        assertEquals(spans.get(0).id, spans.get(1).parentId.get());
+        assertEquals(spans.get(0).traceId, spans.get(1).traceId);
+        assertEquals("STATEMENT", spans.get(1).tags.get("kind"));
+
+        File file = File.createTempFile("spans", ".json");
+        try {
+            trace.export(new JsonFileSpanSink(file));
+            BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line = r.readLine();
+                assertTrue(line, line.startsWith("[{\"traceId\":"));
+                assertTrue(line, line.contains("\"parentId\":\"" + spans.get(0).id + "\""));
+                assertTrue(line, line.contains("\"name\":\"count\""));
+            } finally {
+                r.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void nestedTraceRestoresOuter() {
+        QueryTrace outer = QueryTrace.start("outer");
+        try {
+            QueryTrace inner = QueryTrace.start("inner");
+            inner.close();
+            QueryTrace.enter(Kind.PROJECTION, "p", Option.<String>None(), Option.<Integer>None());
+            QueryTrace.exit(Some(0), false);
+        } finally {
+            outer.close();
+        }
+        assertFalse(QueryTrace.isActive());
+        assertEquals(1, outer.getRoot().getChildren().size());
+        assertSame(Kind.PROJECTION, outer.getRoot().getChildren().get(0).kind);
+    }
+}
@@ -0,0 +1,178 @@
+package fi.solita.utils.query.metrics;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Option.Some;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.LockModeType;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.Configuration;
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.EntityManagerProvider;
+import fi.solita.utils.query.Page;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.backend.hibernate.DefaultHibernateConfiguration;
+import fi.solita.utils.query.backend.hibernate.HibernateQueryExecutor;
+import fi.solita.utils.query.backend.hibernate.HibernateTypeProvider;
+import fi.solita.utils.query.execution.JpaBasicQueries;
+import fi.solita.utils.query.execution.JpaCriteriaQueries;
+import fi.solita.utils.query.execution.JpaProjectionQueries;
+import fi.solita.utils.query.execution.NativeQueries;
+import fi.solita.utils.query.execution.QLQueries;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.generation.QLQuery;
+import fi.solita.utils.query.projection.Project;
+import fi.solita.utils.query.projection.ProjectionHelper;
+import fi.solita.utils.query.projection.Related;
+
+public class SlowQueryLogTest extends QueryTestBase {
+
+    /**
+     * The library without its root and metrics packages, so that this test counts as the caller.
+     */
+    private static final List<String> internal = newList("java.", "javax.", "sun.", "jdk.", "fi.solita.utils.functional.",
+        "fi.solita.utils.query.backend.", "fi.solita.utils.query.execution.", "fi.solita.utils.query.generation.", "fi.solita.utils.query.projection.",
+        "fi.solita.utils.query.Dao");
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private EntityManagerProvider emProvider;
+
+    @Autowired
+    private HibernateTypeProvider typeProvider;
+
+    private HibernateQueryExecutor executor(final SlowQueryLog log) {
+        return new HibernateQueryExecutor(emProvider, typeProvider, config(log));
+    }
+
+    private Dao dao(SlowQueryLog log) {
+        Configuration config = config(log);
+        HibernateQueryExecutor executor = new HibernateQueryExecutor(emProvider, typeProvider, config);
+        ProjectionHelper projectionHelper = new ProjectionHelper(emProvider, executor, config);
+        return new Dao(new JpaBasicQueries(emProvider, projectionHelper, typeProvider, executor, config),
+                       new JpaCriteriaQueries(emProvider, executor, config),
+                       new JpaProjectionQueries(emProvider, projectionHelper, executor, config),
+                       new NativeQueries(executor, typeProvider),
+                       new QLQueries(executor));
+    }
+
+    private static Configuration config(final SlowQueryLog log) {
+        return new DefaultHibernateConfiguration() {
+            @Override
+            public Option<SlowQueryLog> getSlowQueryLog() {
+                return Some(log);
+            }
+        };
+    }
+
+    @Test
+    public void keepsLatestSamples() {
+        SlowQueryLog log = new SlowQueryLog(0, 2, 10, 5);
+        Map<String, Object> noValues = Collections.emptyMap();
+        log.record(1, "a", noValues);
+        log.record(2, "b", noValues);
+        log.record(3, "c", noValues);
+
+        assertEquals(3, log.getSlowQueryCount());
+        assertEquals(2, log.getSamples().size());
+        assertEquals("b", log.getSamples().get(0).sql);
+        assertEquals("c", log.getSamples().get(1).sql);
+        assertTrue(log.getLatestSamples()[0].contains("\nc\n"));
+
+        log.clear();
+        assertEquals(0, log.getSamples().size());
+    }
+
+    @Test
+    public void truncatesValueLists() {
+        SlowQueryLog log = new SlowQueryLog(0, 10, 3, 5);
+        List<Integer> ids = newList(1, 2, 3, 4, 5);
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put("ids", ids);
+        values.put("name", "foo");
+        log.record(1, "select", values);
+
+        List<String> bindValues = log.getSamples().get(0).bindValues;
+        assertTrue(bindValues.contains("ids=[1, 2, 3, ... (2 more)]"));
+        assertTrue(bindValues.contains("name='foo'"));
+    }
+
+    @Test
+    public void ignoresFastQueries() {
+        SlowQueryLog log = new SlowQueryLog(60000);
+        assertFalse(log.isSlow(1000000));
+
+        executor(log).getMany(query.all(Department.class), Page.NoPaging, LockModeType.NONE);
+        assertEquals(0, log.getSlowQueryCount());
+    }
+
+    @Test
+    public void capturesCriteriaQuery() {
+        persist(new Department("", 42));
+        SlowQueryLog log = new SlowQueryLog(0, 100, 10, 20, internal);
+
+        executor(log).getMany(query.all(Department.class), Page.NoPaging, LockModeType.NONE);
+
+        SlowQueryLog.Sample sample = log.getSamples().get(log.getSamples().size() - 1);
+        assertTrue(sample.sql, sample.sql.toLowerCase().contains("from department"));
+        assertFalse(sample.callSite.isEmpty());
+        assertEquals(SlowQueryLogTest.class.getName(), sample.callSite.get(0).getClassName());
+        assertEquals("capturesCriteriaQuery", sample.callSite.get(0).getMethodName());
+    }
+
+    @Test
+    public void capturesCallerOfProjection() {
+        Department dep = new Department("", 42);
+        persist(dep, new Employee("a", dep));
+        SlowQueryLog log = new SlowQueryLog(0, 100, 10, 20, internal);
+
+        dao(log).getMany(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))));
+
+        assertEquals(2, log.getSamples().size());
+        for (SlowQueryLog.Sample sample: log.getSamples()) {
+            assertTrue(sample.projection.isDefined());
+            assertEquals(sample.toString(), SlowQueryLogTest.class.getName(), sample.callSite.get(0).getClassName());
+            assertEquals(sample.toString(), "capturesCallerOfProjection", sample.callSite.get(0).getMethodName());
+        }
+    }
+
+    @Test
+    public void capturesBindValuesOfQLQuery() {
+        SlowQueryLog log = new SlowQueryLog(0, 10, 2, 5);
+
+        executor(log).getMany(QLQuery.<Department>of("from Department d where d.mandatoryNumber in (:numbers)").setParameter("numbers", newList(1, 2, 3)), Page.NoPaging);
+
+        SlowQueryLog.Sample sample = log.getSamples().get(log.getSamples().size() - 1);
+        assertEquals(newList("numbers=[1, 2, ... (1 more)]"), sample.bindValues);
+        assertFalse(sample.projection.isDefined());
+    }
+
+    @Test
+    public void skipsInternalFramesByDefault() {
+        SlowQueryLog log = new SlowQueryLog(0);
+
+        executor(log).getMany(query.all(Department.class), Page.NoPaging, LockModeType.NONE);
+
+        // this test is in the library, so the call site starts from the test runner
+        for (StackTraceElement e: log.getSamples().get(0).callSite) {
+            assertFalse(e.toString(), e.getClassName().startsWith("fi.solita.utils.query."));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package fi.solita.utils.query.projection;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Root;
+
+import org.junit.Test;
+
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.generation.Restrict;
+
+public class JoinRegistryTest extends QueryTestBase {
+
+    @Test
+    public void reusesJoinOfSamePathAndType() {
+        CriteriaQuery<Employee> q = em.getCriteriaBuilder().createQuery(Employee.class);
+        Root<Employee> root = q.from(Employee.class);
+        JoinRegistry joins = new JoinRegistry();
+        
+        assertSame(joins.join(root, Employee_.mandatoryDepartment, JoinType.LEFT), joins.join(root, Employee_.mandatoryDepartment, JoinType.LEFT));
+        assertNotSame(joins.join(root, Employee_.mandatoryDepartment, JoinType.LEFT), joins.join(root, Employee_.mandatoryDepartment, JoinType.INNER));
+        assertNotSame(joins.join(root, Employee_.mandatoryDepartment, JoinType.LEFT), joins.join(root, Employee_.optionalDepartment, JoinType.LEFT));
+    }
+    
+    @Test
+    public void doesNotReuseJoinOfRestrictedAttribute() {
+        CriteriaQuery<Employee> q = em.getCriteriaBuilder().createQuery(Employee.class);
+        Root<Employee> root = q.from(Employee.class);
+        JoinRegistry joins = new JoinRegistry();
+        
+        assertNotSame(joins.join(root, Employee_.mandatoryDepartment, JoinType.LEFT), joins.join(root, Restrict.innerJoin(Employee_.mandatoryDepartment, Department_.optionalManager), JoinType.LEFT));
+    }
+}
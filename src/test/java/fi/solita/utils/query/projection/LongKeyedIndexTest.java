@@ -0,0 +1,37 @@
+package fi.solita.utils.query.projection;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LongKeyedIndexTest {
+
+    @Test
+    public void groupsByKey() {
+        LongKeyedIndex index = new LongKeyedIndex(1);
+        for (long i = 0; i < 1000; ++i) {
+            index.add(i % 100, i);
+        }
+
+        assertEquals(100, index.size());
+        assertEquals(10, index.get(42).size());
+        assertEquals(newList((Object)42l, 142l), index.get(42).subList(0, 2));
+        assertNull(index.get(100));
+    }
+
+    @Test
+    public void negativeAndLargeKeys() {
+        LongKeyedIndex index = new LongKeyedIndex(4);
+        index.add(-1, "a");
+        index.add(Long.MAX_VALUE, "b");
+        index.add(Long.MIN_VALUE, "c");
+        index.add(0, "d");
+
+        assertEquals(newList((Object)"a"), index.get(-1));
+        assertEquals(newList((Object)"b"), index.get(Long.MAX_VALUE));
+        assertEquals(newList((Object)"c"), index.get(Long.MIN_VALUE));
+        assertEquals(newList((Object)"d"), index.get(0));
+    }
+}
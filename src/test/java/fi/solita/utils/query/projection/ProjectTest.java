@@ -1,10 +1,13 @@
 package fi.solita.utils.query.projection;
 
+import static fi.solita.utils.functional.Collections.newList;
 import static fi.solita.utils.functional.Collections.newSet;
 import static fi.solita.utils.functional.Option.None;
 import static fi.solita.utils.functional.Option.Some;
 import static org.junit.Assert.assertEquals;
 
+import java.util.List;
+
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
@@ -13,6 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import fi.solita.utils.functional.Option;
 import fi.solita.utils.functional.Pair;
+import fi.solita.utils.functional.Tuple;
 import fi.solita.utils.functional.Tuple3;
 import fi.solita.utils.query.Dao;
 import fi.solita.utils.query.Department;
@@ -20,6 +24,8 @@ import fi.solita.utils.query.Department_;
 import fi.solita.utils.query.Employee;
 import fi.solita.utils.query.Employee_;
 import fi.solita.utils.query.Money;
+import fi.solita.utils.query.Order;
+import fi.solita.utils.query.Page;
 import fi.solita.utils.query.QueryTestBase;
 import fi.solita.utils.query.generation.Cast;
 import fi.solita.utils.query.generation.JpaCriteriaQuery;
@@ -185,4 +191,46 @@ public class ProjectTest extends QueryTestBase {
     public void min_empty() {
         assertEquals(None(), dao.get(query.all(Department.class), Project.min(Department_.mandatoryNumber)));
     }
+    
+    @Test
+    public void groupBy() {
+        persist(new Department("a", 1), new Department("a", 2), new Department("b", 4));
+
+        List<Tuple3<String, Long, Option<Integer>>> ret = dao.getMany(query.all(Department.class), Project.groupBy(Project.tuple(Department_.mandatoryDepName, Aggregate.count(), Aggregate.sum(Department_.mandatoryNumber))), Order.by(Department_.mandatoryDepName));
+        assertEquals(newList(Tuple.of("a", 2l, Some(3)), Tuple.of("b", 1l, Some(4))), ret);
+    }
+    
+    @Test
+    public void groupBy_paged() {
+        persist(new Department("a", 1), new Department("a", 2), new Department("b", 4));
+
+        List<Pair<String, Option<Double>>> ret = dao.getMany(query.all(Department.class), Project.groupBy(Project.pair(Department_.mandatoryDepName, Aggregate.avg(Department_.mandatoryNumber))), Page.FIRST.withSize(1), Order.by(Department_.mandatoryDepName).desc);
+        assertEquals(newList(Pair.of("b", Some(4.0))), ret);
+    }
+    
+    @Test
+    public void groupBy_singleValue() {
+        persist(new Department("a", 1), new Department("a", 2), new Department("b", 4));
+
+        List<String> ret = dao.getMany(query.all(Department.class), Project.groupBy(Project.value(Department_.mandatoryDepName)), Order.by(Department_.mandatoryDepName));
+        assertEquals(newList("a", "b"), ret);
+    }
+    
+    @Test
+    public void groupBy_relatedValue() {
+        Department a = new Department("a", 1);
+        Department b = new Department("b", 2);
+        persist(a, b, new Employee("", a), new Employee("", a), new Employee("", b));
+
+        List<Pair<String, Long>> ret = dao.getMany(query.all(Employee.class), Project.groupBy(Project.pair(Related.value(Employee_.mandatoryDepartment, Department_.mandatoryDepName), Aggregate.count())));
+        assertEquals(newSet(Pair.of("a", 2l), Pair.of("b", 1l)), newSet(ret));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void groupBy_entity() {
+        Department dep = new Department();
+        persist(dep, new Employee("", dep));
+
+        dao.getMany(query.all(Employee.class), Project.groupBy(Project.pair(Employee_.mandatoryDepartment, Aggregate.count())));
+    }
 }
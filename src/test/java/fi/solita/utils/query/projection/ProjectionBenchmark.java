@@ -0,0 +1,122 @@
+package fi.solita.utils.query.projection;
+
+import static fi.solita.utils.functional.Collections.newList;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fi.solita.utils.functional.Option;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.Money;
+import fi.solita.utils.query.benchmark.BenchmarkContext;
+import fi.solita.utils.query.generation.Cast;
+import fi.solita.utils.query.meta.MetaJpaConstructor;
+
+/**
+ * Finalizing the projections of synthetic result rows of <i>width</i> columns, as if returned by the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int width;
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    private BenchmarkContext context;
+    private ProjectionHelper projectionHelper;
+    private Metamodel metamodel;
+    private MetaJpaConstructor<Employee,?,?> projection;
+    private List<Iterable<Object>> resultRows;
+    private List<Iterable<Object>> embeddableParts;
+
+    @Setup
+    public void setup() {
+        context = new BenchmarkContext();
+        projectionHelper = context.getBean(ProjectionHelper.class);
+        metamodel = context.getEntityManagerFactory().getMetamodel();
+        projection = projectionOfWidth(width);
+        resultRows = newList();
+        embeddableParts = newList();
+        for (int i = 0; i < rows; ++i) {
+            List<Object> row = newList();
+            for (Attribute<?,?> param: projection.getParameters()) {
+                row.add(param.getJavaType() == String.class ? "name" + i : i % 2 == 0 ? new Money(i) : null);
+            }
+            resultRows.add(row);
+            embeddableParts.add(newList((Object)Integer.valueOf(i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    static MetaJpaConstructor<Employee,?,?> projectionOfWidth(int width) {
+        SingularAttribute<Employee, String> n = Employee_.mandatoryName;
+        SingularAttribute<Employee, Option<Money>> s = Cast.optional(Employee_.optionalSalary);
+        switch (width) {
+            case 1: return Project.value(n);
+            case 4: return Project.tuple(n, s, n, s);
+            case 16: return Project.tuple(n, s, n, s, n, s, n, s, n, s, n, s, n, s, n, s);
+        }
+        throw new IllegalArgumentException("Unsupported width: " + width);
+    }
+
+    @Benchmark
+    public List<?> finalizeProjectingQuery() {
+        return projectionHelper.finalizeProjectingQuery(projection, resultRows);
+    }
+
+    @Benchmark
+    public void transformRow(Blackhole bh) {
+        for (Iterable<Object> row: resultRows) {
+            bh.consume(ProjectionResultUtil.transformRow(projection, row));
+        }
+    }
+
+    @Benchmark
+    public void postProcessValue(Blackhole bh) {
+        List<Attribute<?,?>> params = projection.getParameters();
+        for (Iterable<Object> row: resultRows) {
+            int i = 0;
+            for (Object value: row) {
+                bh.consume(ProjectionResultUtil.postProcessValue(params.get(i++), value));
+            }
+        }
+    }
+
+    @Benchmark
+    public void collectEmbeddableFromParts(Blackhole bh) {
+        for (Iterable<Object> parts: embeddableParts) {
+            bh.consume(EmbeddableUtil.collectEmbeddableFromParts(metamodel, Department_.mandatoryReport, parts));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fi.solita.utils.query.projection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.Page;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.projection.ProjectionPlan.ParameterKind;
+
+public class ProjectionPlanTest extends QueryTestBase {
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private Dao dao;
+
+    @Test
+    public void describesParametersWithoutExecuting() {
+        Department dep = new Department("", 42);
+        persist(dep, new Employee("a", dep));
+        em.flush();
+        long queryCount = getQueryCount();
+
+        ProjectionPlan plan = dao.explain(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))), Page.NoPaging);
+
+        assertEquals(queryCount, getQueryCount());
+        assertEquals(2, plan.parameters.size());
+        assertEquals(ParameterKind.COLUMN, plan.parameters.get(0).kind);
+        assertEquals(ParameterKind.ADDITIONAL_QUERY, plan.parameters.get(1).kind);
+        assertEquals("employees", plan.parameters.get(1).attribute);
+        assertEquals(ParameterKind.COLUMN, plan.parameters.get(1).nested.get(0).kind);
+        assertEquals(1, plan.getRoundTrips(0));
+        assertEquals(2, plan.getRoundTrips(1));
+        assertTrue(plan.rootSql.isDefined());
+        assertTrue(plan.databasePlan.isEmpty());
+        assertTrue(plan.toString(), plan.toString().contains("Department.mandatoryNumber"));
+    }
+
+    @Test
+    public void describesLiterals() {
+        ProjectionPlan plan = dao.explain(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Select.literal(42)), Page.FIRST);
+        assertEquals(1, plan.columns.size());
+        assertEquals(ParameterKind.LITERAL, plan.parameters.get(1).kind);
+        assertFalse(plan.parameters.get(1).column.isDefined());
+    }
+
+    @Test
+    public void includesDatabasePlan() {
+        ProjectionPlan plan = dao.explain(query.all(Department.class), Project.value(Department_.mandatoryNumber), Page.NoPaging, true);
+        assertFalse(plan.databasePlan.isEmpty());
+        assertEquals(1, plan.getRoundTrips(1000));
+    }
+}
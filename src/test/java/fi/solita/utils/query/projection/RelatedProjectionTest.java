@@ -5,6 +5,8 @@ import static fi.solita.utils.functional.Collections.emptySet;
 import static fi.solita.utils.functional.Collections.newList;
 import static fi.solita.utils.functional.Collections.newSet;
 import static fi.solita.utils.functional.Functional.map;
+import static fi.solita.utils.functional.Option.None;
+import static fi.solita.utils.functional.Option.Some;
 import static fi.solita.utils.query.projection.Select.literal;
 import static org.junit.Assert.assertEquals;
 
@@ -29,6 +31,7 @@ import fi.solita.utils.query.Employee_;
 import fi.solita.utils.query.Id;
 import fi.solita.utils.query.Municipality;
 import fi.solita.utils.query.Municipality_;
+import fi.solita.utils.query.Order;
 import fi.solita.utils.query.QueryTestBase;
 import fi.solita.utils.query.execution.JpaProjectionQueries;
 import fi.solita.utils.query.generation.Cast;
@@ -150,6 +153,106 @@ public class RelatedProjectionTest extends QueryTestBase {
         assertEquals(2, getQueryCount() - queryCount);
     }
     
+    @Test
+    public void getRelatedProjection_list_limited() {
+        Department dep = new Department();
+        Department otherDep = new Department();
+        Employee emp1 = new Employee("a", dep);
+        Employee emp2 = new Employee("c", dep);
+        Employee emp3 = new Employee("b", dep);
+        Employee otherEmp = new Employee("d", otherDep);
+        persist(dep, otherDep, emp1, emp2, emp3, otherEmp);
+        long queryCount = getQueryCount();
+        
+        Dto dto = dao.get(query.single(dep.getId()), Dto_.c17(literal(LIST_OF_IDS._), Related.projection(Related.limit(Department_.employees, 2, Order.by(Employee_.mandatoryName).desc), Project.id())));
+        assertEquals(newList(emp2.getId(), emp3.getId()), dto.value);
+        
+        assertEquals(2, getQueryCount() - queryCount);
+    }
+    
+    @Test
+    public void getRelatedProjection_set_limited() {
+        Department dep = new Department();
+        Municipality mun = new Municipality();
+        Employee emp1 = new Employee("a", dep, mun);
+        Employee emp2 = new Employee("b", dep, mun);
+        persist(dep, mun, emp1, emp2);
+        long queryCount = getQueryCount();
+        
+        Dto dto = dao.get(query.all(Municipality.class), Dto_.c13(literal(SET_OF_IDS._), Related.projection(Related.limit(Municipality_.emps, 1, Order.by(Employee_.mandatoryName)), Project.id())));
+        assertEquals(newSet(emp1.getId()), dto.value);
+        
+        assertEquals(2, getQueryCount() - queryCount);
+    }
+    
+    @Test
+    public void getRelatedProjection_limited_perParent() {
+        Department dep = new Department();
+        Department smallDep = new Department();
+        Department emptyDep = new Department();
+        Department tiedDep = new Department();
+        Employee emp1 = new Employee("b", dep);
+        Employee emp2 = new Employee("a", dep);
+        Employee emp3 = new Employee("c", dep);
+        Employee emp4 = new Employee("b", dep);
+        Employee smallEmp = new Employee("x", smallDep);
+        Employee tiedEmp1 = new Employee("a", tiedDep);
+        Employee tiedEmp2 = new Employee("c", tiedDep);
+        Employee tiedEmp3 = new Employee("a", tiedDep);
+        persist(dep, smallDep, emptyDep, tiedDep, emp1, emp2, emp3, emp4, smallEmp, tiedEmp1, tiedEmp2, tiedEmp3);
+        long queryCount = getQueryCount();
+        
+        List<List<String>> names = dao.getMany(query.all(Department.class), Project.value(Related.projection(Related.limit(Department_.employees, 2, Order.by(Employee_.mandatoryName)), Project.value(Employee_.mandatoryName))), Order.by(Department_.id));
+        // a tie on the limit lets only one of the tied through
+        assertEquals(newList(newList("a", "b"), newList("x"), emptyList(), newList("a", "a")), names);
+        
+        assertEquals(2, getQueryCount() - queryCount);
+    }
+    
+    @Test
+    public void getRelatedAggregate_count() {
+        Department dep = new Department();
+        Department emptyDep = new Department();
+        Employee emp1 = new Employee("", dep);
+        Employee emp2 = new Employee("", dep);
+        persist(dep, emptyDep, emp1, emp2);
+        long queryCount = getQueryCount();
+        
+        List<Long> counts = dao.getMany(query.all(Department.class), Project.value(Related.count(Department_.employees)), Order.by(Department_.id));
+        assertEquals(newList(2l, 0l), counts);
+        
+        assertEquals(2, getQueryCount() - queryCount);
+    }
+    
+    @Test
+    public void getRelatedAggregate_exists() {
+        Department dep = new Department();
+        Department emptyDep = new Department();
+        Employee emp = new Employee("", dep);
+        persist(dep, emptyDep, emp);
+        long queryCount = getQueryCount();
+        
+        List<Boolean> exists = dao.getMany(query.all(Department.class), Project.value(Related.exists(Department_.employees)), Order.by(Department_.id));
+        assertEquals(newList(true, false), exists);
+        
+        assertEquals(2, getQueryCount() - queryCount);
+    }
+    
+    @Test
+    public void getRelatedAggregate_sumAndMax() {
+        Municipality mun = new Municipality();
+        Municipality emptyMun = new Municipality();
+        Department dep1 = new Department("", 3, mun);
+        Department dep2 = new Department("", 4, mun);
+        persist(mun, emptyMun, dep1, dep2);
+        
+        List<Option<Integer>> sums = dao.getMany(query.all(Municipality.class), Project.value(Related.sum(Municipality_.deps, Department_.mandatoryNumber)), Order.by(Municipality_.id));
+        assertEquals(newList(Some(7), None()), sums);
+        
+        List<Option<Integer>> maxs = dao.getMany(query.all(Municipality.class), Project.value(Related.max(Municipality_.deps, Department_.mandatoryNumber)), Order.by(Municipality_.id));
+        assertEquals(newList(Some(4), None()), maxs);
+    }
+    
     @Test
     public void getRelatedProjection_list_empty() {
         Department dep = new Department();
@@ -13,10 +13,12 @@ import static fi.solita.utils.query.projection.Select.literal;
 import static org.junit.Assert.assertEquals;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import fi.solita.utils.functional.Pair;
 import fi.solita.utils.query.Dao;
 import fi.solita.utils.query.Department;
 import fi.solita.utils.query.Department_;
@@ -44,6 +46,7 @@ import fi.solita.utils.query.Money;
 import fi.solita.utils.query.Municipality;
 import fi.solita.utils.query.Municipality_;
 import fi.solita.utils.query.Order;
+import fi.solita.utils.query.Page;
 import fi.solita.utils.query.QueryTestBase;
 import fi.solita.utils.query.Report;
 import fi.solita.utils.query.execution.JpaProjectionQueries;
@@ -71,6 +74,27 @@ public class RelatedValueTest extends QueryTestBase {
         assertEquals(1, getQueryCount() - queryCount);
     }
     
+    @Test
+    public void getRelatedValue_sharingJoin() {
+        Department dep = new Department("foo", 42);
+        Employee emp = new Employee("", dep);
+        persist(dep, emp);
+        long queryCount = getQueryCount();
+
+        Pair<String,Integer> ret = dao.get(query.all(Employee.class), Project.pair(Related.value(Employee_.mandatoryDepartment, Department_.mandatoryDepName), Related.value(Employee_.mandatoryDepartment, Department_.mandatoryNumber)));
+        assertEquals(Pair.of("foo", 42), ret);
+        
+        assertEquals(1, getQueryCount() - queryCount);
+        
+        ProjectionPlan plan = dao.explain(query.all(Employee.class), Project.pair(Related.value(Employee_.mandatoryDepartment, Department_.mandatoryDepName), Related.value(Employee_.mandatoryDepartment, Department_.mandatoryNumber)), Page.NoPaging);
+        assertEquals(plan.rootQuery.get(), 1, occurrences(".mandatoryDepartment", plan.rootQuery.get()));
+        assertEquals(plan.rootSql.get(), 1, occurrences(" join ", plan.rootSql.get().toLowerCase()));
+    }
+    
+    private static int occurrences(String part, String str) {
+        return str.split(Pattern.quote(part), -1).length - 1;
+    }
+    
     @Test
     public void getRelatedValue_id_some_mandatory() {
         Department dep = new Department();
@@ -3,6 +3,7 @@ package fi.solita.utils.query.projection;
 import static fi.solita.utils.functional.Functional.head;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -43,6 +44,22 @@ public class RestrictTest extends QueryTestBase {
         assertEquals(1, getQueryCount() - queryCount);
     }
     
+    @Test
+    public void toManyRestrictionDoesNotMultiplyRows() {
+        Department dep = new Department();
+        Employee emp = new Employee("emp", dep);
+        Employee emp2 = new Employee("emp2", dep);
+        Department emptyDep = new Department();
+        persist(dep, emp, emp2, emptyDep);
+        long queryCount = getQueryCount();
+        
+        Collection<Department> departments = dao.getMany(query.all(Department.class), Project.value(Restrict.innerJoin(Select.<Department>self(), Department_.employees)));
+        assertEquals(1, departments.size());
+        assertEquals(dep.getId(), head(departments).getId());
+        
+        assertEquals(1, getQueryCount() - queryCount);
+    }
+    
     @Test
     public void basic() {
         Department dep = new Department();
@@ -3,6 +3,7 @@ package fi.solita.utils.query.projection;
 import static fi.solita.utils.functional.Collections.newList;
 import static fi.solita.utils.functional.Collections.newSet;
 import static fi.solita.utils.functional.Functional.head;
+import static fi.solita.utils.functional.Option.Some;
 import static org.junit.Assert.assertEquals;
 
 import java.util.Collection;
@@ -16,6 +17,7 @@ import fi.solita.utils.functional.Pair;
 import fi.solita.utils.query.Dao;
 import fi.solita.utils.query.Department;
 import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Page;
 import fi.solita.utils.query.QueryTestBase;
 import fi.solita.utils.query.generation.JpaCriteriaQuery;
 
@@ -53,6 +55,38 @@ public class SelectTest extends QueryTestBase {
         List<Integer> value = dao.get(query.all(Department.class), Project.value(Select.literal(newList(42))));
         assertEquals(newList(42), value);
     }
+    
+    @Test
+    public void literal_withValues() {
+        Department dep = new Department("foo");
+        persist(dep);
+
+        Pair<Integer, String> value = dao.get(query.all(Department.class), Project.pair(Select.literal(42), Department_.mandatoryDepName));
+        assertEquals(Pair.of(42, "foo"), value);
+    }
+    
+    @Test
+    public void sameAttributeTwice() {
+        Department dep = new Department("foo");
+        persist(dep);
+
+        Pair<String, String> value = dao.get(query.all(Department.class), Project.pair(Department_.mandatoryDepName, Department_.mandatoryDepName));
+        assertEquals(Pair.of("foo", "foo"), value);
+        
+        ProjectionPlan plan = dao.explain(query.all(Department.class), Project.pair(Department_.mandatoryDepName, Department_.mandatoryDepName), Page.NoPaging);
+        assertEquals(1, plan.columns.size());
+        assertEquals(Some(0), plan.parameters.get(0).column);
+        assertEquals(Some(0), plan.parameters.get(1).column);
+    }
+    
+    @Test
+    public void literal_only() {
+        Department dep = new Department();
+        persist(dep);
+
+        Pair<Integer, String> value = dao.get(query.all(Department.class), Project.pair(Select.literal(42), Select.literal("foo")));
+        assertEquals(Pair.of(42, "foo"), value);
+    }
 
     @Test
     public void self() {
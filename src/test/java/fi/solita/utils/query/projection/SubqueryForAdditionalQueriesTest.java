@@ -0,0 +1,134 @@
+package fi.solita.utils.query.projection;
+
+import static fi.solita.utils.functional.Collections.newList;
+import static fi.solita.utils.functional.Collections.newSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import fi.solita.utils.functional.Pair;
+import fi.solita.utils.query.Dao;
+import fi.solita.utils.query.Department;
+import fi.solita.utils.query.Department_;
+import fi.solita.utils.query.Employee;
+import fi.solita.utils.query.Employee_;
+import fi.solita.utils.query.Order;
+import fi.solita.utils.query.Page;
+import fi.solita.utils.query.QueryTestBase;
+import fi.solita.utils.query.generation.JpaCriteriaQuery;
+import fi.solita.utils.query.generation.Restrict;
+import fi.solita.utils.query.metrics.QueryTrace;
+import fi.solita.utils.query.metrics.QueryTrace.Kind;
+import fi.solita.utils.query.metrics.QueryTrace.Node;
+
+public class SubqueryForAdditionalQueriesTest extends QueryTestBase {
+
+    @Autowired
+    private JpaCriteriaQuery query;
+
+    @Autowired
+    private Restrict restrict;
+
+    @Autowired
+    private Dao dao;
+
+    private static List<Node> additionalStatements(Node node) {
+        List<Node> ret = newList();
+        for (Node child: node.getChildren()) {
+            if (child.kind == Kind.STATEMENT && child.level > 0) {
+                ret.add(child);
+            }
+            ret.addAll(additionalStatements(child));
+        }
+        return ret;
+    }
+
+    private static boolean selectsFromSubquery(Node statement) {
+        String q = statement.name.toLowerCase();
+        return q.indexOf("select") != q.lastIndexOf("select");
+    }
+
+    @Test
+    public void restrictedRootQuery() {
+        Department dep1 = new Department("", 1);
+        Department dep2 = new Department("", 2);
+        Department dep3 = new Department("", 3);
+        persist(dep1, dep2, dep3, new Employee("a", dep1), new Employee("b", dep1), new Employee("c", dep2), new Employee("d", dep3));
+        long queryCount = getQueryCount();
+
+        QueryTrace trace = dao.trace("subquery");
+        List<Pair<Integer, List<String>>> ret;
+        try {
+            ret = dao.getManyUsingSubquery(restrict.in(Department_.mandatoryNumber, newSet(1, 2), query.all(Department.class)), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))), Page.NoPaging, Order.by(Department_.mandatoryNumber));
+        } finally {
+            trace.close();
+        }
+
+        assertEquals(2, ret.size());
+        assertEquals(1, ret.get(0)._1.intValue());
+        assertEquals(newSet("a", "b"), newSet(ret.get(0)._2));
+        assertEquals(2, ret.get(1)._1.intValue());
+        assertEquals(newList("c"), ret.get(1)._2);
+
+        assertEquals(2, getQueryCount() - queryCount);
+        List<Node> additional = additionalStatements(trace.getRoot());
+        assertEquals(1, additional.size());
+        assertTrue(selectsFromSubquery(additional.get(0)));
+    }
+
+    @Test
+    public void nestedRelatedProjection() {
+        Department dep1 = new Department("", 1);
+        Department dep2 = new Department("", 2);
+        persist(dep1, dep2, new Employee("a", dep1), new Employee("b", dep2));
+        long queryCount = getQueryCount();
+
+        QueryTrace trace = dao.trace("subquery");
+        List<Pair<Integer, List<Pair<String, Integer>>>> ret;
+        try {
+            ret = dao.getManyUsingSubquery(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.pair(Employee_.mandatoryName, Related.projection(Employee_.mandatoryDepartment, Project.value(Department_.mandatoryNumber))))), Page.NoPaging, Order.by(Department_.mandatoryNumber));
+        } finally {
+            trace.close();
+        }
+
+        assertEquals(2, ret.size());
+        assertEquals(Pair.of("a", 1), ret.get(0)._2.get(0));
+        assertEquals(Pair.of("b", 2), ret.get(1)._2.get(0));
+
+        assertEquals(3, getQueryCount() - queryCount);
+        List<Node> additional = additionalStatements(trace.getRoot());
+        assertEquals(2, additional.size());
+        assertTrue("first level uses the root query", selectsFromSubquery(additional.get(0)));
+        assertFalse("nested level uses the ids", selectsFromSubquery(additional.get(1)));
+    }
+
+    @Test
+    public void pagedRootQueryFallsBackToIds() {
+        Department dep1 = new Department("", 1);
+        Department dep2 = new Department("", 2);
+        persist(dep1, dep2, new Employee("a", dep1), new Employee("b", dep2));
+        long queryCount = getQueryCount();
+
+        QueryTrace trace = dao.trace("subquery");
+        List<Pair<Integer, List<String>>> ret;
+        try {
+            ret = dao.getManyUsingSubquery(query.all(Department.class), Project.pair(Department_.mandatoryNumber, Related.projection(Department_.employees, Project.value(Employee_.mandatoryName))), Page.FIRST.withSize(1), Order.by(Department_.mandatoryNumber));
+        } finally {
+            trace.close();
+        }
+
+        assertEquals(1, ret.size());
+        assertEquals(1, ret.get(0)._1.intValue());
+        assertEquals(newList("a"), ret.get(0)._2);
+
+        assertEquals(2, getQueryCount() - queryCount);
+        List<Node> additional = additionalStatements(trace.getRoot());
+        assertEquals(1, additional.size());
+        assertFalse(selectsFromSubquery(additional.get(0)));
+    }
+}
@@ -0,0 +1 @@
+CREATE GLOBAL TEMPORARY TABLE query_utils_in_values (set_id BIGINT NOT NULL, value BIGINT) ON COMMIT DELETE ROWS